@@ -0,0 +1,68 @@
+package dima;
+
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import sensim.EncodeVector;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CosineDistancePigFunction#exec} on pairs of sparse vectors with the
+ * given number of non-zero entries, configured as in compute_distance_matrix.pig,
+ * as bags or encoded with the given precision.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class CosineDistancePigFunctionBenchmark {
+
+    @Param({"100000"})
+    public int cardinality;
+
+    @Param({"10", "100", "1000"})
+    public int numNonZeros;
+
+    @Param({"bag", "double", "8"})
+    public String precision;
+
+    private CosineDistancePigFunction function;
+    private Tuple input;
+
+    @Setup
+    public void setUp() throws IOException {
+        function = new CosineDistancePigFunction("-skipValue 1 -offset 0");
+        Random random = new Random(42);
+        input = TupleFactory.getInstance().newTuple(Arrays.<Object>asList(
+                vector(random), vector(random)));
+    }
+
+    private Tuple vector(Random random) throws IOException {
+        Tuple vector = VectorFixtures.sparseVector(random, cardinality, numNonZeros);
+        if (!"bag".equals(precision)) {
+            vector.set(1, new EncodeVector(precision).exec(TupleFactory.getInstance().newTuple(vector.get(1))));
+        }
+        return vector;
+    }
+
+    @Benchmark
+    public Double exec() throws Exception {
+        return function.exec(input);
+    }
+}
@@ -0,0 +1,51 @@
+package dima;
+
+import org.apache.mahout.math.Vector;
+import org.apache.pig.data.Tuple;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MahoutVectorConverter#toVector} on sparse vectors with the given number
+ * of non-zero entries. Lives in package dima because toVector is protected.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class MahoutVectorConverterBenchmark {
+
+    @Param({"100000"})
+    public int cardinality;
+
+    @Param({"10", "100", "1000"})
+    public int numNonZeros;
+
+    private MahoutVectorConverter converter;
+    private Tuple input;
+
+    @Setup
+    public void setUp() throws Exception {
+        converter = new MahoutVectorConverter();
+        input = VectorFixtures.sparseVector(new Random(42), cardinality, numNonZeros);
+    }
+
+    @Benchmark
+    public Vector toVector() throws Exception {
+        return converter.toVector(input);
+    }
+}
@@ -0,0 +1,71 @@
+package dima;
+
+import com.google.common.base.Charsets;
+import org.apache.commons.io.IOUtils;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.jcas.JCas;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import sensim.Fixtures;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link UIMAXMLConverterHelper#serialize} and {@link UIMAXMLConverterHelper#deserialize}
+ * of parsed fixture sentences, ie. the ( de )serialization every UDF does per record.
+ * One operation handles all fixture sentences of the given length.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class UIMAXMLConverterHelperBenchmark {
+
+    @Param({"short", "medium", "long"})
+    public String length;
+
+    private UIMAXMLConverterHelper converter;
+    private List<String> parses;
+    private JCas[] jCases;
+    private JCas target;
+
+    @Setup
+    public void setUp() throws Exception {
+        converter = new UIMAXMLConverterHelper(false);
+        parses = Fixtures.parses(Fixtures.pukwacSentences(length));
+        jCases = new JCas[parses.size()];
+        for (int i = 0; i < jCases.length; i++) {
+            jCases[i] = JCasFactory.createJCas();
+            converter.deserialize(IOUtils.toInputStream(parses.get(i), Charsets.UTF_8.name()), jCases[i]);
+        }
+        target = JCasFactory.createJCas();
+    }
+
+    @Benchmark
+    public void serialize(Blackhole blackhole) throws Exception {
+        for (JCas jCas : jCases) {
+            blackhole.consume(converter.serialize(jCas));
+        }
+    }
+
+    @Benchmark
+    public void deserialize(Blackhole blackhole) throws Exception {
+        for (String parse : parses) {
+            blackhole.consume(converter.deserialize(
+                    IOUtils.toInputStream(parse, Charsets.UTF_8.name()), target));
+        }
+    }
+}
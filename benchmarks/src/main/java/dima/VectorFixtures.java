@@ -0,0 +1,57 @@
+package dima;
+
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.data.BagFactory;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Random sparse vectors in the tuple format used by compute_distance_matrix.pig:
+ * (cardinality: int, entries: {entry: (index: int, value: double)})
+ */
+public final class VectorFixtures {
+
+    private VectorFixtures() {
+    }
+
+    public static Tuple sparseVector(Random random, int cardinality, int numNonZeros) {
+        TupleFactory tupleFactory = TupleFactory.getInstance();
+
+        // distinct, ascending indices as produced by FeatureVectorBuilder
+        int[] indices = new int[numNonZeros];
+        for (int i = 0; i < numNonZeros; i++) {
+            indices[i] = random.nextInt(cardinality);
+        }
+        Arrays.sort(indices);
+
+        DataBag entries = BagFactory.getInstance().newDefaultBag();
+        int previous = -1;
+        for (int index : indices) {
+            if (index == previous) {
+                continue;
+            }
+            Tuple entry = tupleFactory.newTuple(2);
+            try {
+                entry.set(0, index);
+                entry.set(1, 1.0 + random.nextInt(100));
+            } catch (ExecException e) {
+                throw new IllegalStateException(e);
+            }
+            entries.add(entry);
+            previous = index;
+        }
+
+        Tuple vector = tupleFactory.newTuple(2);
+        try {
+            vector.set(0, cardinality);
+            vector.set(1, entries);
+        } catch (ExecException e) {
+            throw new IllegalStateException(e);
+        }
+        return vector;
+    }
+}
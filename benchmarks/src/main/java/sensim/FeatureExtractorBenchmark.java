@@ -0,0 +1,107 @@
+package sensim;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import dima.UIMAXMLConverterHelper;
+import org.apache.commons.io.IOUtils;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.jgrapht.UndirectedGraph;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link FeatureExtractor#getAllSubtrees} across sentence lengths and maximum
+ * subtree sizes. One operation extracts the features of one noun pair ( the
+ * first two nouns with distinct lemmas ) from each fixture sentence of the
+ * given length; deserialization and graph construction happen in the setup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FeatureExtractorBenchmark {
+
+	@Param({"short", "medium", "long"})
+	public String length;
+
+	@Param({"3", "6"})
+	public String numMaxHops;
+
+	private FeatureExtractor extractor;
+	private List<Sentence> sentences = Lists.newArrayList();
+	private List<ArrayList<String>> pairs = Lists.newArrayList();
+	@SuppressWarnings("rawtypes")
+	private List<UndirectedGraph> graphs = Lists.newArrayList();
+
+	@Setup
+	public void setUp() throws Exception {
+
+		extractor = new FeatureExtractor("COMMONNOUN", numMaxHops, "0");
+		UIMAXMLConverterHelper converter = new UIMAXMLConverterHelper(false);
+
+		for (String parse : Fixtures.parses(Fixtures.pukwacSentences(length))) {
+			// one JCas per sentence, so all of them stay alive during the benchmark
+			JCas jCas = JCasFactory.createJCas();
+			converter.deserialize(IOUtils.toInputStream(parse, Charsets.UTF_8.name()), jCas);
+			Sentence sentence = JCasUtil.selectSingle(jCas, Sentence.class);
+
+			ArrayList<String> pair = firstNounPair(sentence);
+			UndirectedGraph<Token, ?> graph = extractor.makeDependencyGraph(sentence);
+			if (pair != null && graph != null) {
+				sentences.add(sentence);
+				pairs.add(pair);
+				graphs.add(graph);
+			}
+		}
+	}
+
+	private static ArrayList<String> firstNounPair(Sentence sentence) {
+
+		Set<String> seen = Sets.newHashSet();
+		Set<String> duplicates = Sets.newHashSet();
+		List<String> nouns = Lists.newArrayList();
+		for (Token token : JCasUtil.selectCovered(Token.class, sentence)) {
+			String pos = token.getPos().getPosValue();
+			if (pos.equals("NN") || pos.equals("NNS")) {
+				String lemma = token.getLemma().getValue();
+				if (!seen.add(lemma)) {
+					duplicates.add(lemma);
+				}
+				nouns.add(lemma);
+			}
+		}
+		nouns.removeAll(duplicates);
+		return nouns.size() < 2 ? null : Lists.newArrayList(nouns.get(0), nouns.get(1));
+	}
+
+	@Benchmark
+	@SuppressWarnings("unchecked")
+	public void getAllSubtrees(Blackhole blackhole) {
+
+		for (int i = 0; i < sentences.size(); i++) {
+			blackhole.consume(extractor.getAllSubtrees(sentences.get(i), pairs.get(i), graphs.get(i)));
+		}
+	}
+}
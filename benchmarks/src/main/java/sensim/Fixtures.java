@@ -0,0 +1,96 @@
+package sensim;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.Resources;
+import org.apache.pig.data.TupleFactory;
+import org.apache.uima.UIMAException;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Checked-in fixture sentences for the benchmarks: pre-parsed PukWaC sentences
+ * ( one per line, tokens separated by "\t:::::\t", s. prepare_pukwac.py ) and
+ * their JCas serializations as produced by {@link PukwacReader}.
+ */
+public final class Fixtures {
+
+	public static final String PUKWAC_SENTENCES = "fixtures/pukwac_sentences.txt";
+
+	private static final String TOKEN_SEPARATOR = "\t:::::\t";
+
+	private Fixtures() {
+	}
+
+	/**
+	 * @return all fixture sentences in PukWaC format
+	 */
+	public static List<String> pukwacSentences() throws IOException {
+
+		List<String> sentences = Lists.newArrayList();
+		for (String line : Resources.readLines(Resources.getResource(PUKWAC_SENTENCES), Charsets.UTF_8)) {
+			if (!line.isEmpty()) {
+				sentences.add(line);
+			}
+		}
+		return sentences;
+	}
+
+	/**
+	 * @return the fixture sentences with a number of tokens within [minTokens, maxTokens]
+	 */
+	public static List<String> pukwacSentences(int minTokens, int maxTokens) throws IOException {
+
+		List<String> sentences = Lists.newArrayList();
+		for (String sentence : pukwacSentences()) {
+			int numTokens = numTokens(sentence);
+			if (numTokens >= minTokens && numTokens <= maxTokens) {
+				sentences.add(sentence);
+			}
+		}
+		return sentences;
+	}
+
+	/**
+	 * Sentence lengths as used by the benchmark parameters.
+	 */
+	public static List<String> pukwacSentences(String length) throws IOException {
+
+		if ("short".equals(length)) {
+			return pukwacSentences(0, 10);
+		} else if ("medium".equals(length)) {
+			return pukwacSentences(11, 20);
+		} else if ("long".equals(length)) {
+			return pukwacSentences(21, Integer.MAX_VALUE);
+		}
+		throw new IllegalArgumentException("Unknown sentence length: " + length);
+	}
+
+	public static int numTokens(String pukwacSentence) {
+
+		return pukwacSentence.split(TOKEN_SEPARATOR).length;
+	}
+
+	/**
+	 * @return the JCas serializations of the given sentences
+	 */
+	public static List<String> parses(List<String> pukwacSentences) throws IOException {
+
+		PukwacReader reader;
+		try {
+			reader = new PukwacReader("en");
+		} catch (UIMAException e) {
+			throw new IOException(e);
+		}
+		List<String> parses = Lists.newArrayList();
+		for (String sentence : pukwacSentences) {
+			String parse = reader.exec(TupleFactory.getInstance().newTuple(sentence));
+			if (parse == null) {
+				throw new IllegalStateException("Invalid fixture sentence: " + sentence);
+			}
+			parses.add(parse);
+		}
+		return parses;
+	}
+}
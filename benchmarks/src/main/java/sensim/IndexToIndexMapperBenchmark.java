@@ -0,0 +1,97 @@
+package sensim;
+
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading of the index map of {@link IndexToIndexMapper} ( on the first call
+ * of exec ) and lookups in it, for maps of the given size.
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IndexToIndexMapperBenchmark {
+
+	private static final int NUM_LOOKUPS = 1024;
+
+	@Param({"10000", "1000000"})
+	public int size;
+
+	private File idxMap;
+	private IndexToIndexMapper mapper;
+	private Tuple first;
+	private Tuple[] lookups;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+
+		// format: previous id \t new id, as read by IndexToIndexMapper( path )
+		idxMap = File.createTempFile("idxmap-", ".tsv");
+		Random random = new Random(42);
+		Writer out = new BufferedWriter(new FileWriter(idxMap));
+		try {
+			for (int i = 1; i <= size; i++) {
+				out.write(i + "\t" + (1 + random.nextInt(size)) + "\n");
+			}
+		} finally {
+			out.close();
+		}
+
+		TupleFactory tupleFactory = TupleFactory.getInstance();
+		first = tupleFactory.newTuple((Object) Integer.valueOf(1));
+		lookups = new Tuple[NUM_LOOKUPS];
+		for (int i = 0; i < lookups.length; i++) {
+			lookups[i] = tupleFactory.newTuple((Object) Integer.valueOf(1 + random.nextInt(size)));
+		}
+
+		mapper = new IndexToIndexMapper(idxMap.getPath());
+		mapper.exec(first);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+
+		idxMap.delete();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public Integer load() throws IOException {
+
+		return new IndexToIndexMapper(idxMap.getPath()).exec(first);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public void lookup(Blackhole blackhole) throws IOException {
+
+		for (Tuple lookup : lookups) {
+			blackhole.consume(mapper.exec(lookup));
+		}
+	}
+}
@@ -0,0 +1,335 @@
+package sensim;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.beust.jcommander.ParametersDelegate;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.mapred.Counters;
+import org.apache.pig.ExecType;
+import org.apache.pig.PigServer;
+import org.apache.pig.backend.executionengine.ExecJob;
+import org.apache.pig.tools.pigstats.InputStats;
+import org.apache.pig.tools.pigstats.JobStats;
+import org.apache.pig.tools.pigstats.OutputStats;
+import org.apache.pig.tools.pigstats.PigStats;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * End-to-end throughput of the Pig macros of pipeline.pig, steps (02 alt) to
+ * (11a), in Pig local mode on a corpus generated by {@link SyntheticCorpus}.
+ * <p/>
+ * Every stage reads the output of the previous ones and is run as a batch of
+ * its own. Per stage, one JSON object is appended to the report ( one per line ):
+ * wall time, records and bytes read and written, records spilled by the map
+ * tasks, Pig's own spill counts, and all Hadoop counters of its jobs, which
+ * include {@link FeatureExtractor.Counters}. Runs can be told apart by -label,
+ * eg. the commit id, and compared with any JSON tool. With -storage
+ * sensim.BlockStorage, the intermediates from step (05) on are binary.
+ * <p/>
+ * Usage:
+ * <pre>
+ * java -cp target/benchmarks.jar sensim.PipelineBenchmark -output /tmp/synthetic \
+ *     [-sentences 10000] [-vocabulary 5000] [-zipf 1.0] [-nounsPerSentence 3.0] \
+ *     [-pig ../src/main/pig] [-report pipeline.json] [-label `git rev-parse --short HEAD`] \
+ *     [-storage sensim.BlockStorage] [-precision 16] [-distances tiled [-targetCost 1e8]]
+ * </pre>
+ */
+public class PipelineBenchmark {
+
+	private static final Log log = LogFactory.getLog(PipelineBenchmark.class);
+
+	private static final String SPILLED_RECORDS = "SPILLED_RECORDS";
+
+	@ParametersDelegate
+	SyntheticCorpus corpus = new SyntheticCorpus();
+
+	@Parameter(names = {"-pig"}, description = "Directory of the Pig macros", required = false)
+	String pigDir = "../src/main/pig";
+
+	@Parameter(names = {"-report"}, description = "Report to append to, one JSON object per stage", required = false)
+	String report = "pipeline.json";
+
+	@Parameter(names = {"-label"}, description = "Label of this run in the report, eg. the commit id", required = false)
+	String label = "";
+
+	@Parameter(names = {"-topX"}, description = "Number of most similar expansions per target", required = false)
+	int topX = 50;
+
+	@Parameter(names = {"-numCtx"}, description = "Number of contexts to keep per jo", required = false)
+	int numCtx = 1000;
+
+	@Parameter(names = {"-storage"}, description = "Load and store function of the intermediates, PigStorage or sensim.BlockStorage", required = false)
+	String storage = "PigStorage";
+
+	@Parameter(names = {"-precision"}, description = "Precision of the vectors joined in the distance matrix, double, float, 16 or 8", required = false)
+	String precision = "double";
+
+	@Parameter(names = {"-distances"}, description = "Distance matrix by shared feature, joined, or by tiles, tiled", required = false)
+	String distances = "joined";
+
+	@Parameter(names = {"-targetCost"}, description = "Multiply-adds per task of the tiled distance matrix", required = false)
+	String targetCost = "1e8";
+
+	/**
+	 * A batch of Pig Latin statements and the directories it writes.
+	 */
+	private static final class Stage {
+
+		private final String name;
+		private final List<String> outputs;
+		private final List<String> statements;
+
+		Stage(String name, List<String> outputs, String... statements) {
+
+			this.name = name;
+			this.outputs = outputs;
+			this.statements = Arrays.asList(statements);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+
+		PipelineBenchmark benchmark = new PipelineBenchmark();
+		JCommander jCommander = new JCommander(benchmark);
+		try {
+			jCommander.parse(args);
+		} catch (ParameterException e) {
+			System.err.println(e.getMessage());
+			jCommander.setProgramName(PipelineBenchmark.class.getSimpleName());
+			jCommander.usage();
+			System.exit(1);
+		}
+		benchmark.run();
+	}
+
+	public void run() throws IOException {
+
+		File dir = new File(corpus.output).getAbsoluteFile();
+		log.info("Generating " + corpus.numSentences + " sentences in " + dir);
+		corpus.write(dir);
+
+		Writer out = new OutputStreamWriter(new FileOutputStream(report, true), Charsets.UTF_8);
+		try {
+			for (Stage stage : stages(dir.getPath(), new File(pigDir).getAbsolutePath())) {
+				for (String output : stage.outputs) {
+					FileUtil.fullyDelete(new File(output));
+				}
+				Map<String, Object> record = run(stage);
+				out.write(toJson(record));
+				out.write('\n');
+				out.flush();
+				if (!Boolean.TRUE.equals(record.get("successful"))) {
+					throw new IOException("Stage " + stage.name + " failed: " + record.get("error"));
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	private List<Stage> stages(String dir, String pig) {
+
+		String corpusDir = dir + "/corpus";
+		String annotated = dir + "/annotated";
+		String tePairs = dir + "/target_expansions_pruned";
+		String subcorpus = dir + "/subcorpus";
+		String features = dir + "/features";
+		String pairs = dir + "/pairs";
+		String patterns = dir + "/patterns";
+		String jobim = dir + "/jobim_feats";
+		String jobimFlipped = dir + "/jobim_feats_flipped";
+		String ctxLmi = dir + "/ctx_lmi";
+		String ctxPruned = dir + "/ctx_lmi_pruned";
+		String vectors = dir + "/vectors_lmi";
+		String dmatrix = dir + "/dmatrix";
+
+		List<Stage> stages = Lists.newArrayList();
+		stages.add(new Stage("02alt_transform_pukwac_to_cas", Arrays.asList(annotated),
+				"import '" + pig + "/transform_pukwac_to_cas.pig' ;",
+				"parses = transform_pukwac_to_cas( '" + corpusDir + "', 'en' ) ;",
+				"STORE parses INTO '" + annotated + "' USING PigStorage('\\t') ;"));
+		stages.add(new Stage("03_filter_target_expansion_pairs", Arrays.asList(tePairs),
+				"import '" + pig + "/filter_target_expansion_pairs.pig' ;",
+				"te_pairs_pruned = filter_target_expansion_pairs( '" + dir + "/dt', " + topX + " ) ;",
+				"STORE te_pairs_pruned INTO '" + tePairs + "' USING PigStorage('\\t') ;"));
+		stages.add(new Stage("04_generate_subcorpus", Arrays.asList(subcorpus),
+				"import '" + pig + "/generate_subcorpus.pig' ;",
+				"subcorpus = generate_subcorpus( '" + annotated + "', '" + tePairs + "', 'en', 1 ) ;",
+				"STORE subcorpus INTO '" + subcorpus + "' USING PigStorage('\\t') ;"));
+		stages.add(new Stage("05_extract_features", Arrays.asList(features),
+				"import '" + pig + "/extract_features.pig' ;",
+				"features = extract_features( '" + subcorpus + "', 'COMMONNOUN', '6', '0' ) ;",
+				"STORE features INTO '" + features + "' USING " + storage + "() ;"));
+		stages.add(new Stage("06_get_pruned_pair_and_pattern_dicts", Arrays.asList(pairs, patterns),
+				"import '" + pig + "/get_pruned_pair_and_pattern_dicts.pig' ;",
+				"pairs, patterns = get_pruned_pair_and_pattern_dicts( '" + features + "', 0, 0, 2, 3, '" + storage + "' ) ;",
+				"STORE pairs INTO '" + pairs + "' USING PigStorage() ;",
+				"STORE patterns INTO '" + patterns + "' USING PigStorage() ;"));
+		stages.add(new Stage("08a_rewrite_features_as_jobim", Arrays.asList(jobim, jobimFlipped),
+				"import '" + pig + "/rewrite_features_as_jobim.pig' ;",
+				"jobim, jobim_flipped = rewrite_features_as_jobim( '" + features + "', '" + storage + "' ) ;",
+				"STORE jobim INTO '" + jobim + "' USING " + storage + "() ;",
+				"STORE jobim_flipped INTO '" + jobimFlipped + "' USING " + storage + "() ;"));
+		stages.add(new Stage("09a_compute_mutual_information", Arrays.asList(ctxLmi),
+				"import '" + pig + "/compute_mutual_information.pig' ;",
+				"ctx_lmi = compute_mutual_information( '" + jobim + "', '" + storage + "' ) ;",
+				"STORE ctx_lmi INTO '" + ctxLmi + "' USING " + storage + "() ;"));
+		stages.add(new Stage("09a_prune_ctxs", Arrays.asList(ctxPruned),
+				"import '" + pig + "/prune_ctxs.pig' ;",
+				"prune_ctxs( '" + ctxLmi + "', '" + ctxPruned + "', " + numCtx + ", '" + storage + "' ) ;"));
+		stages.add(new Stage("10a_make_vectors_from_ctxs", Arrays.asList(vectors),
+				"import '" + pig + "/make_vectors_from_ctxs.pig' ;",
+				"nvectors = make_vectors_from_ctxs( '" + ctxPruned + "', '" + storage + "' ) ;",
+				"STORE nvectors INTO '" + vectors + "' USING " + storage + "() ;"));
+		// the same stage for both, the report tells them apart by "distances"
+		String macro = "compute_distance_matrix";
+		String arguments = "'" + vectors + "', '" + storage + "', '" + precision + "'";
+		if ("tiled".equals(distances)) {
+			macro = "compute_distance_matrix_tiled";
+			arguments += ", 0.1, '" + targetCost + "'";
+		}
+		stages.add(new Stage("11a_compute_distance_matrix", Arrays.asList(dmatrix),
+				"import '" + pig + "/" + macro + ".pig' ;",
+				"dmatrix = " + macro + "( " + arguments + " ) ;",
+				"STORE dmatrix INTO '" + dmatrix + "' USING dima.MatrixMarketStorageWithCounts() ;"));
+		return stages;
+	}
+
+	/**
+	 * Runs one stage in a fresh PigServer, so neither plans nor stats carry over.
+	 */
+	private Map<String, Object> run(Stage stage) throws IOException {
+
+		log.info("Running " + stage.name);
+		Properties properties = new Properties();
+		// the macros import each other, eg. dense_ids.pig, so look them up in the pig directory
+		properties.setProperty("pig.import.search.path", new File(pigDir).getAbsolutePath());
+		PigServer pigServer = new PigServer(ExecType.LOCAL, properties);
+		List<ExecJob> jobs;
+		long start = System.nanoTime();
+		try {
+			pigServer.setBatchOn();
+			for (String statement : stage.statements) {
+				pigServer.registerQuery(statement);
+			}
+			jobs = pigServer.executeBatch();
+		} finally {
+			pigServer.shutdown();
+		}
+		long wallTime = (System.nanoTime() - start) / 1000000;
+
+		Map<String, Object> record = Maps.newLinkedHashMap();
+		record.put("label", label);
+		record.put("storage", storage);
+		record.put("precision", precision);
+		record.put("distances", distances);
+		record.put("stage", stage.name);
+		record.put("sentences", corpus.numSentences);
+		record.put("vocabulary", corpus.vocabularySize);
+		record.put("zipf", corpus.zipfExponent);
+		record.put("nounsPerSentence", corpus.nounsPerSentence);
+		record.put("seed", corpus.seed);
+		record.put("wallTimeMs", wallTime);
+
+		PigStats stats = jobs.isEmpty() ? PigStats.get() : jobs.get(0).getStatistics();
+		record.put("successful", stats.isSuccessful());
+
+		long recordsIn = 0;
+		long bytesIn = 0;
+		for (InputStats input : stats.getInputStats()) {
+			recordsIn += Math.max(0, input.getNumberRecords());
+			bytesIn += Math.max(0, input.getBytes());
+		}
+		long recordsOut = 0;
+		long bytesOut = 0;
+		for (OutputStats output : stats.getOutputStats()) {
+			recordsOut += Math.max(0, output.getNumberRecords());
+			bytesOut += Math.max(0, output.getBytes());
+		}
+		record.put("recordsIn", recordsIn);
+		record.put("bytesIn", bytesIn);
+		record.put("recordsOut", recordsOut);
+		record.put("bytesOut", bytesOut);
+
+		// MapReduce only counts spilled records, not bytes; bytes written to local
+		// disk, spills included, are in FileSystemCounters.FILE_BYTES_WRITTEN
+		int numJobs = 0;
+		long spilledRecords = 0;
+		long pigSpilledBags = 0;
+		long pigSpilledRecords = 0;
+		Map<String, Long> counters = Maps.newTreeMap();
+		for (JobStats job : stats.getJobGraph()) {
+			numJobs++;
+			pigSpilledBags += job.getProactiveSpillCountObjects();
+			pigSpilledRecords += job.getProactiveSpillCountRecs();
+			Counters hadoopCounters = job.getHadoopCounters();
+			if (hadoopCounters == null) {
+				continue;
+			}
+			for (Counters.Group group : hadoopCounters) {
+				for (Counters.Counter counter : group) {
+					String name = group.getName() + "." + counter.getName();
+					Long value = counters.get(name);
+					counters.put(name, (value == null ? 0 : value) + counter.getValue());
+					if (SPILLED_RECORDS.equals(counter.getName())) {
+						spilledRecords += counter.getValue();
+					}
+				}
+			}
+		}
+		record.put("jobs", numJobs);
+		record.put("spilledRecords", spilledRecords);
+		record.put("pigSpilledBags", pigSpilledBags);
+		record.put("pigSpilledRecords", pigSpilledRecords);
+		record.put("features", counters.get(FeatureExtractor.Counters.class.getName() + "." + FeatureExtractor.Counters.FEATURES.name()));
+		record.put("counters", counters);
+		if (!stats.isSuccessful()) {
+			record.put("error", stats.getErrorMessage());
+		}
+		return record;
+	}
+
+	private static String toJson(Object value) {
+
+		if (value == null) {
+			return "null";
+		} else if (value instanceof Number || value instanceof Boolean) {
+			return value.toString();
+		} else if (value instanceof Map) {
+			StringBuilder json = new StringBuilder("{");
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				if (json.length() > 1) {
+					json.append(", ");
+				}
+				json.append(toJson(entry.getKey().toString())).append(": ").append(toJson(entry.getValue()));
+			}
+			return json.append('}').toString();
+		}
+		StringBuilder json = new StringBuilder("\"");
+		for (char c : value.toString().toCharArray()) {
+			if (c == '"' || c == '\\') {
+				json.append('\\').append(c);
+			} else if (c < 0x20) {
+				json.append(String.format("\\u%04x", (int) c));
+			} else {
+				json.append(c);
+			}
+		}
+		return json.append('"').toString();
+	}
+}
@@ -0,0 +1,57 @@
+package sensim;
+
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PukwacReader#exec}, ie. conversion of a pre-parsed sentence to a serialized JCas.
+ * One operation converts all fixture sentences of the given length.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class PukwacReaderBenchmark {
+
+	@Param({"short", "medium", "long"})
+	public String length;
+
+	private PukwacReader reader;
+	private Tuple[] inputs;
+
+	@Setup
+	public void setUp() throws Exception {
+
+		reader = new PukwacReader("en");
+		List<String> sentences = Fixtures.pukwacSentences(length);
+		inputs = new Tuple[sentences.size()];
+		for (int i = 0; i < inputs.length; i++) {
+			inputs[i] = TupleFactory.getInstance().newTuple(sentences.get(i));
+		}
+	}
+
+	@Benchmark
+	public void exec(Blackhole blackhole) throws Exception {
+
+		for (Tuple input : inputs) {
+			blackhole.consume(reader.exec(input));
+		}
+	}
+}
@@ -0,0 +1,260 @@
+package sensim;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates a synthetic, pre-parsed corpus in the PukWaC format read by
+ * transform_pukwac_to_cas.pig ( one sentence per line, tokens separated by
+ * "\t:::::\t", each token as: token \t lemma \t POS \t id \t head \t dependency ),
+ * plus a matching distributional thesaurus for filter_target_expansion_pairs.pig.
+ * <p/>
+ * Nouns, verbs and adjectives are drawn from Zipf-distributed vocabularies of
+ * pseudo words. Sentences are simple transitive clauses whose nouns get extended
+ * by prepositional phrases and coordinations; the number of nouns per sentence
+ * controls the density of noun pairs.
+ */
+public class SyntheticCorpus {
+
+	private static final String TOKEN_SEPARATOR = "\t:::::\t";
+	private static final String[] SYLLABLES = {"ka", "lo", "mi", "ra", "te", "su", "no", "vi", "de", "ba", "po", "gu"};
+	private static final String[] PREPOSITIONS = {"of", "in", "with", "on", "for", "near"};
+
+	@Parameter(names = {"-sentences"}, description = "Number of sentences", required = false)
+	int numSentences = 10000;
+
+	@Parameter(names = {"-vocabulary"}, description = "Number of distinct nouns", required = false)
+	int vocabularySize = 5000;
+
+	@Parameter(names = {"-zipf"}, description = "Exponent of the Zipf distribution of words", required = false)
+	double zipfExponent = 1.0;
+
+	@Parameter(names = {"-nounsPerSentence"}, description = "Average number of nouns per sentence ( >= 2 )", required = false)
+	double nounsPerSentence = 3.0;
+
+	@Parameter(names = {"-expansions"}, description = "Number of expansions per target in the thesaurus", required = false)
+	int numExpansions = 50;
+
+	@Parameter(names = {"-seed"}, description = "Seed of the random number generator", required = false)
+	long seed = 42;
+
+	@Parameter(names = {"-output"}, description = "Output directory", required = true)
+	String output;
+
+	private Random random;
+	private double[] nounCdf;
+	private double[] verbCdf;
+	private double[] adjectiveCdf;
+
+	public static void main(String[] args) throws IOException {
+
+		SyntheticCorpus corpus = new SyntheticCorpus();
+		JCommander jCommander = new JCommander(corpus);
+		try {
+			jCommander.parse(args);
+		} catch (ParameterException e) {
+			System.err.println(e.getMessage());
+			jCommander.setProgramName(SyntheticCorpus.class.getSimpleName());
+			jCommander.usage();
+			System.exit(1);
+		}
+		corpus.write(new File(corpus.output));
+	}
+
+	/**
+	 * Writes corpus/part-00000 and dt/part-00000 into the given directory.
+	 */
+	public void write(File dir) throws IOException {
+
+		random = new Random(seed);
+		nounCdf = zipfCdf(vocabularySize, zipfExponent);
+		verbCdf = zipfCdf(Math.max(1, vocabularySize / 10), zipfExponent);
+		adjectiveCdf = zipfCdf(Math.max(1, vocabularySize / 5), zipfExponent);
+
+		Writer corpus = newWriter(new File(dir, "corpus/part-00000"));
+		try {
+			for (int i = 0; i < numSentences; i++) {
+				corpus.write(sentence());
+				corpus.write('\n');
+			}
+		} finally {
+			corpus.close();
+		}
+
+		Writer dt = newWriter(new File(dir, "dt/part-00000"));
+		try {
+			writeThesaurus(dt);
+		} finally {
+			dt.close();
+		}
+	}
+
+	private static Writer newWriter(File file) throws IOException {
+
+		if (!file.getParentFile().isDirectory() && !file.getParentFile().mkdirs()) {
+			throw new IOException("Can't create " + file.getParent());
+		}
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), Charsets.UTF_8));
+	}
+
+	private static final class Word {
+
+		private final String token;
+		private final String lemma;
+		private final String pos;
+		private final String dependency;
+		private final Word head;
+
+		Word(String token, String lemma, String pos, Word head, String dependency) {
+
+			this.token = token;
+			this.lemma = lemma;
+			this.pos = pos;
+			this.head = head;
+			this.dependency = dependency;
+		}
+	}
+
+	/**
+	 * subject verb object ( preposition noun ( and noun )? )* .
+	 */
+	String sentence() {
+
+		List<Word> words = Lists.newArrayList();
+
+		String verbLemma = pseudoWord(sample(verbCdf)) + "e";
+		Word verb = new Word(verbLemma + "s", verbLemma, "VVZ", null, "ROOT");
+		words.addAll(nounPhrase(verb, "SBJ", "the"));
+		words.add(verb);
+
+		List<Word> object = nounPhrase(verb, "OBJ", "a");
+		words.addAll(object);
+		Word lastNoun = object.get(object.size() - 1);
+
+		// on average, nounsPerSentence - 2 more nouns, geometrically distributed
+		double more = Math.max(0, nounsPerSentence - 2);
+		double p = more / (1 + more);
+		while (random.nextDouble() < p) {
+			boolean attachToNoun = random.nextBoolean();
+			Word preposition = new Word(PREPOSITIONS[random.nextInt(PREPOSITIONS.length)], null, "IN",
+					attachToNoun ? lastNoun : verb, attachToNoun ? "NMOD" : "ADV");
+			words.add(preposition);
+			List<Word> phrase = nounPhrase(preposition, "PMOD", "the");
+			words.addAll(phrase);
+			lastNoun = phrase.get(phrase.size() - 1);
+
+			if (random.nextDouble() < 0.2 && random.nextDouble() < p) {
+				Word and = new Word("and", "and", "CC", lastNoun, "COORD");
+				words.add(and);
+				Word conjunct = noun(and, "CONJ");
+				words.add(conjunct);
+			}
+		}
+		words.add(new Word(".", ".", "SENT", verb, "P"));
+
+		StringBuilder line = new StringBuilder();
+		for (int i = 0; i < words.size(); i++) {
+			Word w = words.get(i);
+			if (i > 0) {
+				line.append(TOKEN_SEPARATOR);
+			}
+			String lemma = w.lemma != null ? w.lemma : w.token;
+			int head = w.head == null ? 0 : words.indexOf(w.head) + 1;
+			line.append(w.token).append('\t').append(lemma).append('\t').append(w.pos).append('\t')
+					.append(i + 1).append('\t').append(head).append('\t').append(w.dependency);
+		}
+		return line.toString();
+	}
+
+	/**
+	 * determiner ( adjective )? noun, with the noun as the head of the phrase
+	 */
+	private List<Word> nounPhrase(Word head, String dependency, String determiner) {
+
+		Word noun = noun(head, dependency);
+		List<Word> phrase = Lists.newArrayList();
+		phrase.add(new Word(determiner, determiner, "DT", noun, "NMOD"));
+		if (random.nextDouble() < 0.3) {
+			String adjective = pseudoWord(sample(adjectiveCdf)) + "ic";
+			phrase.add(new Word(adjective, adjective, "JJ", noun, "NMOD"));
+		}
+		phrase.add(noun);
+		return phrase;
+	}
+
+	private Word noun(Word head, String dependency) {
+
+		String lemma = pseudoWord(sample(nounCdf));
+		if (random.nextDouble() < 0.3) {
+			return new Word(lemma + "s", lemma, "NNS", head, dependency);
+		}
+		return new Word(lemma, lemma, "NN", head, dependency);
+	}
+
+	/**
+	 * The most frequent nouns with numExpansions expansions each, drawn from the
+	 * same distribution: target#NN \t expansion#NN \t similarity
+	 */
+	private void writeThesaurus(Writer out) throws IOException {
+
+		int numTargets = Math.min(vocabularySize, 1000);
+		for (int target = 0; target < numTargets; target++) {
+			double similarity = 1000;
+			for (int i = 0; i < numExpansions; i++) {
+				int expansion = sample(nounCdf);
+				if (expansion == target) {
+					continue;
+				}
+				similarity -= 1 + random.nextInt(10);
+				out.write(pseudoWord(target) + "#NN\t" + pseudoWord(expansion) + "#NN\t" + similarity + "\n");
+			}
+		}
+	}
+
+	static double[] zipfCdf(int size, double exponent) {
+
+		double[] cdf = new double[size];
+		double sum = 0;
+		for (int rank = 1; rank <= size; rank++) {
+			sum += 1.0 / Math.pow(rank, exponent);
+			cdf[rank - 1] = sum;
+		}
+		for (int i = 0; i < size; i++) {
+			cdf[i] /= sum;
+		}
+		return cdf;
+	}
+
+	private int sample(double[] cdf) {
+
+		int i = Arrays.binarySearch(cdf, random.nextDouble());
+		return Math.min(i >= 0 ? i : -i - 1, cdf.length - 1);
+	}
+
+	/**
+	 * A pronounceable word for each rank, at least two syllables long.
+	 */
+	static String pseudoWord(int rank) {
+
+		StringBuilder word = new StringBuilder();
+		int n = rank + SYLLABLES.length;
+		while (n > 0) {
+			word.append(SYLLABLES[n % SYLLABLES.length]);
+			n /= SYLLABLES.length;
+		}
+		return word.toString();
+	}
+}
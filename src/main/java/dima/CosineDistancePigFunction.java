@@ -13,6 +13,8 @@ import org.apache.pig.FuncSpec;
 import org.apache.pig.builtin.OutputSchema;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.impl.logicalLayer.FrontendException;
+import sensim.UdfMetrics;
+import sensim.VectorCodec;
 
 import java.io.IOException;
 import java.util.List;
@@ -28,6 +30,10 @@ public class CosineDistancePigFunction extends EvalFunc<Double> {
 
     private final MahoutVectorConverter vectorConverter;
     CosineDistanceMeasure cosineDistanceMeasure = new CosineDistanceMeasure();
+    private final UdfMetrics metrics = new UdfMetrics(CosineDistancePigFunction.class);
+    // decoded entries of encoded vectors, reused from call to call
+    private final VectorCodec.SparseVector entries1 = new VectorCodec.SparseVector();
+    private final VectorCodec.SparseVector entries2 = new VectorCodec.SparseVector();
 
     boolean skip = false;
 
@@ -65,9 +71,28 @@ public class CosineDistancePigFunction extends EvalFunc<Double> {
 
     @Override
     public Double exec(Tuple input) throws IOException {
+        metrics.begin();
+        Double distance = null;
+        try {
+            distance = distance(input);
+            return distance;
+        } catch (RuntimeException e) {
+            metrics.error(e);
+            throw e;
+        } finally {
+            metrics.end(input, distance == null ? 0 : 1);
+        }
+    }
+
+    @Override
+    public void finish() {
+        metrics.finish();
+    }
+
+    private Double distance(Tuple input) throws IOException {
         // we want something like this
         // (cardinality: int, entries: {entry: (index: int, value: double)})
-        // for each vector
+        // for each vector, or (cardinality: int, entries: bytearray) encoded by sensim.EncodeVector
         Preconditions.checkArgument(input.size() == 2, "We need 2 arguments, not " + input.size());
 
         Tuple tuple1 = (Tuple) input.get(0);
@@ -78,13 +103,20 @@ public class CosineDistancePigFunction extends EvalFunc<Double> {
         Preconditions.checkArgument(Ints.compare(sizeV1, sizeV2) == 0,
                 "Vector sizes are different " + sizeV1 + " != " + sizeV1);
 
-        Vector vector = vectorConverter.toVector(tuple1);
-        Vector vector2 = vectorConverter.toVector(tuple2);
-
-        double distance = cosineDistanceMeasure.distance(vector, vector2) + offset;
+        double distance;
+        if (MahoutVectorConverter.isEncodedVectorData(tuple1) && MahoutVectorConverter.isEncodedVectorData(tuple2)) {
+            // straight from the bytes into primitive arrays, no Mahout vectors
+            distance = VectorCodec.cosineDistance(vectorConverter.toSparseVector(tuple1, entries1),
+                    vectorConverter.toSparseVector(tuple2, entries2)) + offset;
+        } else {
+            Vector vector = vectorConverter.toVector(tuple1);
+            Vector vector2 = vectorConverter.toVector(tuple2);
+            distance = cosineDistanceMeasure.distance(vector, vector2) + offset;
+        }
         // shortcut evaluation should prevent NPE
         if(skip && distance == skipValue) {
             // ignore
+            metrics.skip("SKIP_VALUE");
             return null;
         }
         return distance;
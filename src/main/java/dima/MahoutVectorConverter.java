@@ -16,9 +16,11 @@ import org.apache.mahout.math.Vector.Element;
 import org.apache.pig.ResourceSchema.ResourceFieldSchema;
 import org.apache.pig.data.BagFactory;
 import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DataByteArray;
 import org.apache.pig.data.DataType;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.data.TupleFactory;
+import sensim.VectorCodec;
 
 import java.io.IOException;
 import java.util.List;
@@ -53,6 +55,13 @@ import java.util.List;
  * (entries: {entry: (index: int, value: double)})
  * </pre>
  *
+ * If option {@code -encode} is specified, the entries of sparse vectors are a single
+ * {@link VectorCodec} encoded bytearray instead of a bag:
+ *
+ * <pre>
+ * (cardinality: int, entries: bytearray)
+ * </pre>
+ *
  * Otherwise, no schema is assumed, and organization of vector Tuple data is inspected at runtime.
  *
  * <p>
@@ -128,6 +137,7 @@ public class MahoutVectorConverter {
     private static final String SPARSE_PARAM = "sparse";
     private static final String SEQUENTIAL_PARAM = "sequential";
     private static final String FLOAT_PRECISION_PARAM = "floatPrecision";
+    private static final String ENCODE_PARAM = "encode";
     private final TupleFactory tupleFactory = TupleFactory.getInstance();
     private final BagFactory bagFactory = BagFactory.getInstance();
     private final boolean dense;
@@ -135,6 +145,7 @@ public class MahoutVectorConverter {
     private final Integer cardinality;
     private final boolean sequential;
     private final boolean floatPrecision;
+    private final VectorCodec.Precision encoding;
 
     /**
      * Default options used.
@@ -162,6 +173,9 @@ public class MahoutVectorConverter {
      * and option {@code -dense} are mutually exclusive.</dd>
      * <dt>{@code -floatPrecision}</dt>
      * <dd>Vector data should be loaded/stored using float precision.</dd>
+     * <dt>{@code -encode precision}</dt>
+     * <dd>Sparse vector entries should be stored encoded by {@link VectorCodec}, with precision
+     * {@code double}, {@code float}, {@code 16} or {@code 8} (bits).</dd>
      * </dl>
      *
      * @param args options passed in from {@link SequenceFileLoader}.
@@ -182,6 +196,9 @@ public class MahoutVectorConverter {
         Preconditions.checkState(!(dense && sparse),
                 "Options '-dense' and '-sparse' are mutually exclusive");
         floatPrecision = cmdline.hasOption(FLOAT_PRECISION_PARAM);
+        encoding =
+                cmdline.hasOption(ENCODE_PARAM) ? VectorCodec.Precision.of(
+                        cmdline.getOptionValue(ENCODE_PARAM)) : null;
     }
 
     private CommandLine parseArguments(String[] args) throws ParseException {
@@ -213,6 +230,10 @@ public class MahoutVectorConverter {
         options.addOption(OptionBuilder.withLongOpt(FLOAT_PRECISION_PARAM)
                 .withDescription("If specified, float precision will be used when writing output data.")
                 .create());
+        options.addOption(OptionBuilder.withLongOpt(ENCODE_PARAM).hasArg().withArgName("precision")
+                .withDescription("If specified, sparse vector entries will be written as a single"
+                        + " bytearray encoded with the given precision (double, float, 16 or 8).")
+                .create());
         return options;
     }
 
@@ -258,6 +279,9 @@ public class MahoutVectorConverter {
     }
 
     protected Tuple toSparseVectorTuple(Vector v) {
+        if (encoding != null) {
+            return toEncodedVectorTuple(v);
+        }
         DataBag bag = bagFactory.newDefaultBag();
 
         for (Element e : v.nonZeroes()) {
@@ -269,12 +293,25 @@ public class MahoutVectorConverter {
                         bag));
     }
 
-
+    protected Tuple toEncodedVectorTuple(Vector v) {
+        VectorCodec.SparseVector entries = new VectorCodec.SparseVector(v.getNumNonZeroElements());
+        for (Element e : v.nonZeroes()) {
+            entries.ensureCapacity(entries.size + 1);
+            entries.indices[entries.size] = e.index();
+            entries.values[entries.size] = e.get();
+            entries.size++;
+        }
+        DataByteArray bytes = new DataByteArray(VectorCodec.encode(entries, encoding));
+        return cardinality != null ? tupleFactory.newTupleNoCopy(ImmutableList.of(bytes)) : tupleFactory
+                .newTupleNoCopy(ImmutableList.of(v.size(), bytes));
+    }
 
     protected Vector toVector(Tuple value) throws IOException {
         Preconditions.checkNotNull(value, "Tuple is null");
         Vector v = null;
-        if (isSparseVectorData(value)) {
+        if (isEncodedVectorData(value)) {
+            v = convertEncodedVectorDataToVector(value);
+        } else if (isSparseVectorData(value)) {
             v = convertSparseVectorDataToVector(value);
         } else {
             validateDenseVectorData(value);
@@ -292,6 +329,59 @@ public class MahoutVectorConverter {
         return false;
     }
 
+    /**
+     * Decodes the entries of {@link VectorCodec} encoded vector data into primitive arrays, without
+     * building a Mahout vector.
+     *
+     * @param into reused from call to call
+     */
+    protected VectorCodec.SparseVector toSparseVector(Tuple value, VectorCodec.SparseVector into)
+            throws IOException {
+        Preconditions.checkArgument(hasEncodedVectorFields(value), "Not encoded vector data");
+        return VectorCodec.decode(((DataByteArray) value.get(value.size() - 1)).get(), into);
+    }
+
+    /**
+     * Untyped dense vector data of width 1 or 2 comes as bytearrays, too, so besides the field
+     * types the bytes must have the layout of {@link VectorCodec} encoded vector data.
+     */
+    static boolean isEncodedVectorData(Tuple value) throws IOException {
+        return hasEncodedVectorFields(value)
+                && VectorCodec.isEncoded(((DataByteArray) value.get(value.size() - 1)).get());
+    }
+
+    private static boolean hasEncodedVectorFields(Tuple value) throws IOException {
+        assertNotNull(value, "Tuple is null");
+        return (1 == value.size() && DataType.BYTEARRAY == value.getType(0))
+                || (2 == value.size() && DataType.INTEGER == value.getType(0) && DataType.BYTEARRAY == value
+                .getType(1));
+    }
+
+    private Vector convertEncodedVectorDataToVector(Tuple value) throws IOException {
+        int size;
+        if (value.size() == 2 && cardinality == null) {
+            size = (Integer) value.get(0);
+        } else {
+            Preconditions.checkNotNull(cardinality, "Cardinality is undefined");
+            size = cardinality;
+        }
+        VectorCodec.SparseVector entries = toSparseVector(value, new VectorCodec.SparseVector(0));
+
+        Vector v = dense ? new DenseVector(size) : new RandomAccessSparseVector(size, entries.size);
+        for (int k = 0; k < entries.size; k++) {
+            int i = entries.indices[k];
+            // check index bounds
+            if (i < 0 || i >= size) {
+                continue;
+            }
+            v.setQuick(i, entries.values[k]);
+        }
+        if (sequential) {
+            v = new SequentialAccessSparseVector(v);
+        }
+        return v;
+    }
+
     private Vector convertSparseVectorDataToVector(Tuple value) throws IOException {
         Vector v;
 
@@ -4,6 +4,7 @@ import org.apache.commons.io.IOUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.uima.UIMAException;
+import org.apache.uima.cas.TypeSystem;
 import org.apache.uima.cas.impl.XCASDeserializer;
 import org.apache.uima.cas.impl.XCASSerializer;
 import org.apache.uima.fit.factory.JCasFactory;
@@ -38,9 +39,19 @@ public class UIMAXMLConverterHelper extends UIMAConverterHelper<String> {
 	 * @throws UIMAException in case of errors
 	 */
 	public UIMAXMLConverterHelper(boolean formattedOutput) throws UIMAException {
+		this(formattedOutput, JCasFactory.createJCas().getTypeSystem());
+	}
+
+	/**
+	 * Creates a new instance of the XML serializer for an existing type system,
+	 * which saves building one, eg. with the type system shared by sensim.UimaResources.
+	 *
+	 * @param formattedOutput if true the output will be XML pretty printed, otherwise it will be just on one line
+	 * @param typeSystem      type system of the serialized Cas
+	 */
+	public UIMAXMLConverterHelper(boolean formattedOutput, TypeSystem typeSystem) {
 		this.formattedOutput = formattedOutput;
-		JCas jCas = JCasFactory.createJCas();
-		ser = new XCASSerializer(jCas.getTypeSystem());
+		ser = new XCASSerializer(typeSystem);
 	}
 
 	@Override
@@ -0,0 +1,563 @@
+package sensim;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.google.common.base.Charsets;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.Tuple;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Writes sparse matrices and id dictionaries as raw little-endian arrays behind
+ * a 64-byte header, so Python maps them with numpy.memmap instead of parsing
+ * text, s. src/main/python/sensim_arrays.py.
+ * <p/>
+ * Format:
+ * <pre>
+ * header:      magic ( 'SCSR' or 'SDCT' ), version, bytes per value ( 4 or 8, 0 for
+ *              dictionaries ), row order ( int32 ), rows, columns, entries ( int64 ), zeros
+ * matrix:      indptr ( int64[rows + 1] ), indices ( int32[entries] ), zeros up to
+ *              a multiple of 8 bytes, data ( float32 or float64[entries] )
+ * dictionary:  offsets ( int64[rows + 1] ), names as UTF-8, name i at
+ *              [offsets[i], offsets[i + 1]); columns is the size of the names
+ * </pre>
+ * Row, column and name i belong to id i + 1 of the text outputs, eg. the pairid
+ * of a feature vector. Matrices are in compressed sparse row format, as
+ * scipy.sparse.csr_matrix takes them, with ascending indices per row ( order 0 )
+ * or, for {@link SimilarityStore}, descending values ( order 1 ).
+ * <p/>
+ * Export the feature vectors of step (10a) ( as stored by PigStorage or
+ * BlockStorage ) and the distance matrix of step (11a) or similarities of pairs,
+ * the latter as similarities, 1 - distance:
+ * <pre>
+ * java -cp <job jar>:`hadoop classpath`:<pig jar> sensim.ArrayExport -output <dir> \
+ *     [-vectors vectors_lmi.gz] [-similarities dmatrix [-format mm|pairs] [-names vectors_lmi.gz]]
+ * </pre>
+ * writes vectors.csr, vectors.rows.dict, similarities.csr and similarities.rows.dict.
+ * The names of the features are not stored by make_vectors_from_ctxs.pig, hence
+ * there is no vectors.columns.dict; LocalPipelineRunner -export writes it.
+ */
+public class ArrayExport {
+
+	private static final Log log = LogFactory.getLog(ArrayExport.class);
+
+	static final int CSR_MAGIC = 0x52534353;
+	static final int DICTIONARY_MAGIC = 0x54434453;
+	static final int VERSION = 1;
+	static final int HEADER_BYTES = 64;
+	static final int BY_COLUMN = 0;
+	static final int BY_VALUE = 1;
+
+	private static final Splitter TAB = Splitter.on('\t');
+
+	@Parameter(names = {"-output"}, description = "Output directory", required = true)
+	String output;
+
+	@Parameter(names = {"-vectors"}, description = "Feature vectors: id \\t name \\t {(index,value),...} ( step 10a )", required = false)
+	String vectors;
+
+	@Parameter(names = {"-similarities"}, description = "Distance matrix ( MatrixMarket ) or similarities of pairs", required = false)
+	String similarities;
+
+	@Parameter(names = {"-format"}, description = "Format of the similarities: mm ( distances, as of step 11a ) or pairs ( left \\t right \\t similarity )", required = false)
+	String format = "mm";
+
+	@Parameter(names = {"-names"}, description = "Names of the nodes of a distance matrix: id \\t name ( eg. the feature vectors )", required = false)
+	String names;
+
+	public static void main(String[] args) throws Exception {
+
+		ArrayExport export = new ArrayExport();
+		JCommander jCommander = new JCommander(export);
+		try {
+			jCommander.parse(args);
+		} catch (ParameterException e) {
+			System.err.println(e.getMessage());
+			jCommander.setProgramName(ArrayExport.class.getSimpleName());
+			jCommander.usage();
+			System.exit(1);
+		}
+		export.run();
+	}
+
+	public void run() throws IOException {
+
+		File dir = new File(output);
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Can't create " + dir);
+		}
+		if (vectors != null) {
+			Vectors read = readVectors(vectors);
+			writeVectors(dir, "vectors", read.names, null, read.indices, read.values, read.numColumns);
+		}
+		if (similarities != null) {
+			SimilarityGraph graph;
+			if ("mm".equals(format)) {
+				graph = SimilarityGraph.readMatrixMarket(similarities, names, Double.NEGATIVE_INFINITY);
+			} else if ("pairs".equals(format)) {
+				graph = SimilarityGraph.readPairs(similarities, Double.NEGATIVE_INFINITY);
+			} else {
+				throw new IllegalArgumentException("Unknown format: " + format);
+			}
+			writeGraph(dir, "similarities", graph, false);
+		}
+	}
+
+	/**
+	 * Writes &lt;name&gt;.csr with the vectors as rows, &lt;name&gt;.rows.dict and,
+	 * given the names of the features, &lt;name&gt;.columns.dict.
+	 *
+	 * @param indices of vector i + 1, ascending feature ids starting at 1
+	 */
+	public static void writeVectors(File dir, String name, List<String> rowNames, List<String> columnNames,
+	                                List<int[]> indices, List<double[]> values, int numColumns) throws IOException {
+
+		long numEntries = 0;
+		for (int[] row : indices) {
+			numEntries += row == null ? 0 : row.length;
+		}
+		CsrWriter matrix = new CsrWriter(new File(dir, name + ".csr"), indices.size(), numColumns, numEntries, true);
+		try {
+			for (int i = 0; i < indices.size(); i++) {
+				int[] row = indices.get(i);
+				for (int k = 0; row != null && k < row.length; k++) {
+					matrix.add(row[k] - 1, values.get(i)[k]);
+				}
+				matrix.endRow();
+			}
+		} finally {
+			matrix.close();
+		}
+		writeDictionary(new File(dir, name + ".rows.dict"), rowNames);
+		if (columnNames != null) {
+			writeDictionary(new File(dir, name + ".columns.dict"), columnNames);
+		}
+		log.info("Exported " + indices.size() + " x " + numColumns + " vectors with " + numEntries + " entries to "
+				+ new File(dir, name + ".csr"));
+	}
+
+	/**
+	 * Writes &lt;name&gt;.csr with the edges of each node, in both directions,
+	 * and &lt;name&gt;.rows.dict if the nodes have names.
+	 *
+	 * @param byWeight sort the edges of each node by weight, descending, instead of by target
+	 */
+	public static void writeGraph(File dir, String name, SimilarityGraph graph, boolean byWeight) throws IOException {
+
+		int numNodes = graph.numNodes();
+		CsrWriter matrix = new CsrWriter(new File(dir, name + ".csr"), numNodes, numNodes, graph.numEdges(), false,
+				byWeight ? BY_VALUE : BY_COLUMN);
+		try {
+			int[] targets = graph.targets();
+			float[] weights = graph.weights();
+			long[] sorted = new long[byWeight ? graph.maxDegree() : 0];
+			for (int node = 0; node < numNodes; node++) {
+				int first = graph.firstEdge(node);
+				int degree = graph.degree(node);
+				if (byWeight) {
+					// the weight, descending, in the upper half, the target in the lower
+					for (int i = 0; i < degree; i++) {
+						int bits = Float.floatToIntBits(weights[first + i]);
+						// ordered like the floats, then reversed
+						int key = ~(bits ^ ((bits >> 31) & 0x7fffffff));
+						sorted[i] = ((long) key << 32) | targets[first + i];
+					}
+					Arrays.sort(sorted, 0, degree);
+					for (int i = 0; i < degree; i++) {
+						int key = ~(int) (sorted[i] >> 32);
+						matrix.add((int) sorted[i], Float.intBitsToFloat(key ^ ((key >> 31) & 0x7fffffff)));
+					}
+				} else {
+					for (int edge = first; edge < first + degree; edge++) {
+						matrix.add(targets[edge], weights[edge]);
+					}
+				}
+				matrix.endRow();
+			}
+		} finally {
+			matrix.close();
+		}
+		if (graph.hasNames()) {
+			List<String> nodeNames = Lists.newArrayListWithCapacity(numNodes);
+			for (int node = 0; node < numNodes; node++) {
+				nodeNames.add(graph.name(node));
+			}
+			writeDictionary(new File(dir, name + ".rows.dict"), nodeNames);
+		}
+		log.info("Exported " + numNodes + " nodes with " + graph.numEdges() + " edges to " + new File(dir, name + ".csr"));
+	}
+
+	/**
+	 * @param names null names are written as empty ones
+	 */
+	public static void writeDictionary(File file, List<String> names) throws IOException {
+
+		RandomAccessFile out = new RandomAccessFile(file, "rw");
+		try {
+			out.setLength(0);
+			FileChannel channel = out.getChannel();
+			long dataStart = HEADER_BYTES + 8L * (names.size() + 1);
+			Region offsets = new Region(channel, HEADER_BYTES);
+			Region data = new Region(channel, dataStart);
+			long size = 0;
+			offsets.putLong(0);
+			for (String name : names) {
+				if (name != null) {
+					byte[] bytes = name.getBytes(Charsets.UTF_8);
+					data.put(bytes);
+					size += bytes.length;
+				}
+				offsets.putLong(size);
+			}
+			offsets.flush();
+			data.flush();
+			writeHeader(channel, DICTIONARY_MAGIC, 0, BY_COLUMN, names.size(), size, 0);
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void writeHeader(FileChannel channel, int magic, int valueBytes, int order, long rows,
+	                                long columns, long entries) throws IOException {
+
+		Region header = new Region(channel, 0);
+		header.putInt(magic);
+		header.putInt(VERSION);
+		header.putInt(valueBytes);
+		header.putInt(order);
+		header.putLong(rows);
+		header.putLong(columns);
+		header.putLong(entries);
+		header.put(new byte[HEADER_BYTES - 40]);
+		header.flush();
+	}
+
+	/**
+	 * Writes a matrix row by row, all three arrays at once at their final
+	 * positions, so it never has to be held in memory as a whole.
+	 */
+	public static final class CsrWriter implements Closeable {
+
+		private final RandomAccessFile file;
+		private final int numRows;
+		private final int numColumns;
+		private final long numEntries;
+		private final boolean doublePrecision;
+		private final int order;
+		private final Region indptr;
+		private final Region indices;
+		private final Region data;
+		private int rows = 0;
+		private long entries = 0;
+
+		public CsrWriter(File file, int numRows, int numColumns, long numEntries, boolean doublePrecision)
+				throws IOException {
+
+			this(file, numRows, numColumns, numEntries, doublePrecision, BY_COLUMN);
+		}
+
+		/**
+		 * @param order of the entries of each row as recorded in the header, BY_COLUMN or BY_VALUE
+		 */
+		CsrWriter(File file, int numRows, int numColumns, long numEntries, boolean doublePrecision, int order)
+				throws IOException {
+
+			this.file = new RandomAccessFile(file, "rw");
+			this.file.setLength(0);
+			this.numRows = numRows;
+			this.numColumns = numColumns;
+			this.numEntries = numEntries;
+			this.doublePrecision = doublePrecision;
+			this.order = order;
+			FileChannel channel = this.file.getChannel();
+			long indicesStart = HEADER_BYTES + 8L * (numRows + 1);
+			long dataStart = (indicesStart + 4 * numEntries + 7) & ~7L;
+			indptr = new Region(channel, HEADER_BYTES);
+			indices = new Region(channel, indicesStart);
+			data = new Region(channel, dataStart);
+			indptr.putLong(0);
+		}
+
+		/**
+		 * Adds an entry to the current row; columns must ascend within a row,
+		 * unless the rows are ordered by value.
+		 */
+		public void add(int column, double value) throws IOException {
+
+			if (column < 0 || column >= numColumns) {
+				throw new IllegalArgumentException("Column " + column + " out of [0, " + numColumns + ")");
+			}
+			if (++entries > numEntries) {
+				throw new IllegalStateException("More than the expected " + numEntries + " entries");
+			}
+			indices.putInt(column);
+			if (doublePrecision) {
+				data.putDouble(value);
+			} else {
+				data.putFloat((float) value);
+			}
+		}
+
+		public void endRow() throws IOException {
+
+			if (++rows > numRows) {
+				throw new IllegalStateException("More than the expected " + numRows + " rows");
+			}
+			indptr.putLong(entries);
+		}
+
+		@Override
+		public void close() throws IOException {
+
+			try {
+				if (rows != numRows || entries != numEntries) {
+					throw new IOException("Expected " + numRows + " rows and " + numEntries + " entries, got "
+							+ rows + " and " + entries);
+				}
+				indptr.flush();
+				indices.flush();
+				// zeros up to the data
+				indices.put(new byte[(int) ((8 - 4 * numEntries % 8) % 8)]);
+				indices.flush();
+				data.flush();
+				writeHeader(file.getChannel(), CSR_MAGIC, doublePrecision ? 8 : 4, order, numRows, numColumns, numEntries);
+			} finally {
+				file.close();
+			}
+		}
+	}
+
+	/**
+	 * Buffered little-endian writes to a file, from a given position on.
+	 */
+	private static final class Region {
+
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+		private long position;
+
+		Region(FileChannel channel, long position) {
+
+			this.channel = channel;
+			this.position = position;
+		}
+
+		void putInt(int v) throws IOException {
+
+			ensure(4);
+			buffer.putInt(v);
+		}
+
+		void putLong(long v) throws IOException {
+
+			ensure(8);
+			buffer.putLong(v);
+		}
+
+		void putFloat(float v) throws IOException {
+
+			ensure(4);
+			buffer.putFloat(v);
+		}
+
+		void putDouble(double v) throws IOException {
+
+			ensure(8);
+			buffer.putDouble(v);
+		}
+
+		void put(byte[] bytes) throws IOException {
+
+			int offset = 0;
+			while (offset < bytes.length) {
+				ensure(1);
+				int length = Math.min(buffer.remaining(), bytes.length - offset);
+				buffer.put(bytes, offset, length);
+				offset += length;
+			}
+		}
+
+		private void ensure(int bytes) throws IOException {
+
+			if (buffer.remaining() < bytes) {
+				flush();
+			}
+		}
+
+		void flush() throws IOException {
+
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				position += channel.write(buffer, position);
+			}
+			buffer.clear();
+		}
+	}
+
+	/**
+	 * Vectors by id, ie. vector i + 1 at position i; null for ids without a vector.
+	 */
+	static final class Vectors {
+
+		final List<String> names = Lists.newArrayList();
+		final List<int[]> indices = Lists.newArrayList();
+		final List<double[]> values = Lists.newArrayList();
+		int numColumns = 0;
+
+		void set(long id, String name, int[] idx, double[] val) {
+
+			if (id < 1 || id > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("Vector id out of range: " + id);
+			}
+			while (names.size() < id) {
+				names.add(null);
+				indices.add(null);
+				values.add(null);
+			}
+			sortByIndex(idx, val);
+			names.set((int) id - 1, name);
+			indices.set((int) id - 1, idx);
+			values.set((int) id - 1, val);
+			for (int f : idx) {
+				numColumns = Math.max(numColumns, f);
+			}
+		}
+
+		private static void sortByIndex(int[] idx, double[] val) {
+
+			VectorCodec.SparseVector vector = new VectorCodec.SparseVector(0);
+			vector.indices = idx;
+			vector.values = val;
+			vector.size = idx.length;
+			vector.sort();
+			System.arraycopy(vector.indices, 0, idx, 0, idx.length);
+			System.arraycopy(vector.values, 0, val, 0, val.length);
+		}
+	}
+
+	/**
+	 * Reads feature vectors as stored by PigStorage ( id \t name \t {(index,value),...} )
+	 * or by BlockStorage.
+	 */
+	static Vectors readVectors(String location) throws IOException {
+
+		return readVectors(location, Predicates.<String>alwaysTrue());
+	}
+
+	/**
+	 * @param keep names of the vectors to keep, the others are skipped before their entries are parsed
+	 */
+	static Vectors readVectors(String location, Predicate<String> keep) throws IOException {
+
+		Configuration conf = new Configuration();
+		Vectors vectors = new Vectors();
+		for (Path file : PartFiles.list(location, conf)) {
+			FileSystem fs = file.getFileSystem(conf);
+			if (isBlockFile(fs, file)) {
+				BlockFile.Reader reader = new BlockFile.Reader(fs.open(file), 0, fs.getFileStatus(file).getLen());
+				try {
+					for (Tuple tuple = reader.next(); tuple != null; tuple = reader.next()) {
+						if (!keep.apply((String) tuple.get(1))) {
+							continue;
+						}
+						DataBag bag = (DataBag) tuple.get(2);
+						int[] idx = new int[(int) bag.size()];
+						double[] val = new double[idx.length];
+						int k = 0;
+						for (Tuple entry : bag) {
+							idx[k] = ((Number) entry.get(0)).intValue();
+							val[k] = ((Number) entry.get(1)).doubleValue();
+							k++;
+						}
+						vectors.set(((Number) tuple.get(0)).longValue(), (String) tuple.get(1), idx, val);
+					}
+				} finally {
+					reader.close();
+				}
+			} else {
+				BufferedReader reader = new BufferedReader(new InputStreamReader(PartFiles.openFile(file, conf), Charsets.UTF_8));
+				try {
+					String line;
+					while ((line = reader.readLine()) != null) {
+						if (!line.isEmpty()) {
+							readVector(line, vectors, keep);
+						}
+					}
+				} finally {
+					reader.close();
+				}
+			}
+		}
+		log.info("Read " + vectors.names.size() + " vectors over " + vectors.numColumns + " features from " + location);
+		return vectors;
+	}
+
+	private static boolean isBlockFile(FileSystem fs, Path file) throws IOException {
+
+		if (fs.getFileStatus(file).getLen() < BlockFile.HEADER_BYTES) {
+			return false;
+		}
+		FSDataInputStream in = fs.open(file);
+		try {
+			return in.readInt() == BlockFile.MAGIC;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Parses "id \t name \t {(index,value),(index,value)}".
+	 */
+	private static void readVector(String line, Vectors vectors, Predicate<String> keep) {
+
+		Iterator<String> fields = TAB.split(line).iterator();
+		long id = Long.parseLong(fields.next());
+		String name = fields.next();
+		if (!keep.apply(name)) {
+			return;
+		}
+		String bag = fields.next().trim();
+		if (!bag.startsWith("{") || !bag.endsWith("}")) {
+			throw new IllegalArgumentException("Not a bag of entries: " + bag);
+		}
+		List<String> entries = Lists.newArrayList();
+		int from = bag.indexOf('(');
+		while (from >= 0) {
+			int to = bag.indexOf(')', from);
+			entries.add(bag.substring(from + 1, to));
+			from = bag.indexOf('(', to);
+		}
+		int[] idx = new int[entries.size()];
+		double[] val = new double[idx.length];
+		for (int k = 0; k < idx.length; k++) {
+			String entry = entries.get(k);
+			int comma = entry.indexOf(',');
+			idx[k] = Integer.parseInt(entry.substring(0, comma).trim());
+			val[k] = Double.parseDouble(entry.substring(comma + 1).trim());
+		}
+		vectors.set(id, name, idx, val);
+	}
+}
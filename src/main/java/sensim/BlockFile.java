@@ -0,0 +1,290 @@
+package sensim;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.pig.data.Tuple;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A file of Pig tuples in compressed blocks, written and read by {@link BlockStorage}.
+ * <p/>
+ * Format ( big-endian ):
+ * <pre>
+ * header:  magic, version ( int ), sync marker ( 16 random bytes )
+ * blocks:  sync marker, number of records, size of the records, compressed
+ *          size ( int ), records ( s. {@link TupleCodec} ), deflated
+ * </pre>
+ * Like a block-compressed SequenceFile, the file can be split anywhere: a
+ * reader skips to the first sync marker after the start of its split and
+ * reads the blocks that begin before its end. Every block is decoded on its
+ * own, string dictionary included.
+ * <p/>
+ * Print the records of such files as tab-separated text, as PigStorage writes them:
+ * <pre>
+ * java -cp <job jar>:`hadoop classpath` sensim.BlockFile vectors_lmi.gz
+ * </pre>
+ */
+public final class BlockFile {
+
+	static final int MAGIC = 0x53424c4b;
+	static final int VERSION = 1;
+	static final int SYNC_BYTES = 16;
+	static final int HEADER_BYTES = 8 + SYNC_BYTES;
+
+	// target size of the uncompressed records of a block, and the deflate level
+	static final String BLOCK_SIZE = "sensim.block.size";
+	static final String COMPRESSION_LEVEL = "sensim.block.compression.level";
+	static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+	static final int DEFAULT_COMPRESSION_LEVEL = Deflater.BEST_SPEED;
+
+	private BlockFile() {
+	}
+
+	public static void main(String[] args) throws IOException {
+
+		if (args.length == 0) {
+			System.err.println("Usage: BlockFile <location>...");
+			System.exit(1);
+		}
+		Configuration conf = new Configuration();
+		BufferedWriter out = new BufferedWriter(new OutputStreamWriter(System.out, "UTF-8"));
+		for (String location : args) {
+			for (Path file : PartFiles.list(location, conf)) {
+				FileSystem fs = file.getFileSystem(conf);
+				Reader reader = new Reader(fs.open(file), 0, fs.getFileStatus(file).getLen());
+				try {
+					for (Tuple tuple = reader.next(); tuple != null; tuple = reader.next()) {
+						for (int i = 0; i < tuple.size(); i++) {
+							if (i > 0) {
+								out.write('\t');
+							}
+							Object value = tuple.get(i);
+							if (value != null) {
+								out.write(value.toString());
+							}
+						}
+						out.write('\n');
+					}
+				} finally {
+					reader.close();
+				}
+			}
+		}
+		out.flush();
+	}
+
+	static final class Writer implements Closeable {
+
+		private final DataOutputStream out;
+		private final int blockSize;
+		private final byte[] sync = new byte[SYNC_BYTES];
+		private final TupleCodec.Encoder encoder;
+		private final Deflater deflater;
+		private byte[] compressed = new byte[1 << 16];
+		private int records = 0;
+
+		Writer(DataOutputStream out, int blockSize, int compressionLevel, boolean floatPrecision) throws IOException {
+
+			this.out = out;
+			this.blockSize = blockSize;
+			this.encoder = new TupleCodec.Encoder(floatPrecision);
+			this.deflater = new Deflater(compressionLevel);
+			UUID uuid = UUID.randomUUID();
+			for (int i = 0; i < 8; i++) {
+				sync[i] = (byte) (uuid.getMostSignificantBits() >>> (56 - 8 * i));
+				sync[8 + i] = (byte) (uuid.getLeastSignificantBits() >>> (56 - 8 * i));
+			}
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.write(sync);
+		}
+
+		void append(Tuple tuple) throws IOException {
+
+			encoder.write(tuple);
+			records++;
+			if (encoder.size() >= blockSize) {
+				writeBlock();
+			}
+		}
+
+		private void writeBlock() throws IOException {
+
+			if (records == 0) {
+				return;
+			}
+			deflater.reset();
+			deflater.setInput(encoder.buffer(), 0, encoder.size());
+			deflater.finish();
+			int length = 0;
+			while (!deflater.finished()) {
+				if (length == compressed.length) {
+					compressed = Arrays.copyOf(compressed, compressed.length * 2);
+				}
+				length += deflater.deflate(compressed, length, compressed.length - length);
+			}
+			out.write(sync);
+			out.writeInt(records);
+			out.writeInt(encoder.size());
+			out.writeInt(length);
+			out.write(compressed, 0, length);
+			encoder.reset();
+			records = 0;
+		}
+
+		@Override
+		public void close() throws IOException {
+
+			try {
+				writeBlock();
+			} finally {
+				deflater.end();
+				out.close();
+			}
+		}
+	}
+
+	static final class Reader implements Closeable {
+
+		private final FSDataInputStream in;
+		private final long start;
+		private final long end;
+		private final byte[] sync = new byte[SYNC_BYTES];
+		private final byte[] blockSync = new byte[SYNC_BYTES];
+		private final TupleCodec.Decoder decoder = new TupleCodec.Decoder();
+		private final Inflater inflater = new Inflater();
+		private byte[] compressed = new byte[1 << 16];
+		private byte[] records = new byte[1 << 16];
+		// position of the next block
+		private long position;
+
+		/**
+		 * Reads the blocks that begin in [start, end).
+		 */
+		Reader(FSDataInputStream in, long start, long end) throws IOException {
+
+			this.in = in;
+			this.start = start;
+			this.end = end;
+			in.seek(0);
+			if (in.readInt() != MAGIC) {
+				throw new IOException("Not a block file");
+			}
+			int version = in.readInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported block file version " + version);
+			}
+			in.readFully(sync);
+			position = start == 0 ? HEADER_BYTES : seekSync(Math.max(start, HEADER_BYTES));
+			decoder.reset(records, 0);
+		}
+
+		/**
+		 * @return the position of the first sync marker at or after from, or end if there is none before
+		 */
+		private long seekSync(long from) throws IOException {
+
+			in.seek(from);
+			InputStream buffered = new BufferedInputStream(in, 1 << 16);
+			byte[] window = new byte[SYNC_BYTES];
+			long read = 0;
+			for (int b = buffered.read(); b >= 0; b = buffered.read()) {
+				window[(int) (read % SYNC_BYTES)] = (byte) b;
+				read++;
+				if (read >= SYNC_BYTES && matches(window, read)) {
+					return from + read - SYNC_BYTES;
+				}
+				if (from + read - SYNC_BYTES >= end) {
+					break;
+				}
+			}
+			return end;
+		}
+
+		private boolean matches(byte[] window, long read) {
+
+			// the oldest byte of the window is at read % SYNC_BYTES
+			for (int i = 0; i < SYNC_BYTES; i++) {
+				if (window[(int) ((read + i) % SYNC_BYTES)] != sync[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * @return the next record, or null after the last block of the split
+		 */
+		Tuple next() throws IOException {
+
+			while (!decoder.hasNext()) {
+				if (position >= end || !readBlock()) {
+					return null;
+				}
+			}
+			return decoder.next();
+		}
+
+		private boolean readBlock() throws IOException {
+
+			in.seek(position);
+			try {
+				in.readFully(blockSync);
+			} catch (EOFException e) {
+				return false;
+			}
+			if (!Arrays.equals(blockSync, sync)) {
+				throw new IOException("Corrupt block file, no sync marker at " + position);
+			}
+			in.readInt();
+			int size = in.readInt();
+			int length = in.readInt();
+			if (compressed.length < length) {
+				compressed = new byte[Math.max(length, compressed.length * 2)];
+			}
+			if (records.length < size) {
+				records = new byte[Math.max(size, records.length * 2)];
+			}
+			in.readFully(compressed, 0, length);
+			inflater.reset();
+			inflater.setInput(compressed, 0, length);
+			try {
+				if (inflater.inflate(records, 0, size) != size) {
+					throw new IOException("Corrupt block at " + position);
+				}
+			} catch (DataFormatException e) {
+				throw new IOException("Corrupt block at " + position, e);
+			}
+			position += SYNC_BYTES + 12 + length;
+			decoder.reset(records, size);
+			return true;
+		}
+
+		float progress() {
+
+			return end <= start ? 1 : Math.min(1, (float) (position - start) / (end - start));
+		}
+
+		@Override
+		public void close() throws IOException {
+
+			inflater.end();
+			in.close();
+		}
+	}
+}
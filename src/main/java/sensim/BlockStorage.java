@@ -0,0 +1,243 @@
+package sensim;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.OutputFormat;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.pig.FileInputLoadFunc;
+import org.apache.pig.LoadFunc;
+import org.apache.pig.ResourceSchema;
+import org.apache.pig.StoreFunc;
+import org.apache.pig.StoreFuncInterface;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigSplit;
+import org.apache.pig.data.Tuple;
+
+import java.io.IOException;
+
+/**
+ * Loads and stores tuples as {@link BlockFile}s: typed binary records
+ * ( varints, delta-coded bag indices, dictionary-coded strings ) in deflated
+ * blocks, which unlike gzipped text can be split between mappers:
+ *
+ * <pre>
+ * STORE features INTO 'features.gz' USING sensim.BlockStorage() ;
+ * features = LOAD 'features.gz' USING sensim.BlockStorage()
+ *     as ( noun1:chararray, noun2:chararray, pattern:chararray, sentence:chararray ) ;
+ * </pre>
+ *
+ * The values keep their types, so nothing is parsed on load. With
+ * sensim.BlockStorage( 'float' ), doubles are stored with float precision
+ * and loaded as doubles again, eg. for LMI weights.
+ * <p/>
+ * The block size ( of the uncompressed records, default 1MB ) and the deflate
+ * level ( default 1 ) are set with 'set sensim.block.size ...' and
+ * 'set sensim.block.compression.level ...'.
+ */
+public class BlockStorage extends FileInputLoadFunc implements StoreFuncInterface {
+
+	private final boolean floatPrecision;
+
+	private BlockRecordReader reader;
+	private RecordWriter<NullWritable, Tuple> writer;
+
+	public BlockStorage() {
+
+		this("double");
+	}
+
+	/**
+	 * @param precision of doubles, 'double' or 'float'
+	 */
+	public BlockStorage(String precision) {
+
+		if ("float".equals(precision)) {
+			floatPrecision = true;
+		} else if ("double".equals(precision)) {
+			floatPrecision = false;
+		} else {
+			throw new IllegalArgumentException("Unknown precision: " + precision + ", expected double or float");
+		}
+	}
+
+	// loading
+
+	@Override
+	public void setLocation(String location, Job job) throws IOException {
+
+		FileInputFormat.setInputPaths(job, location);
+	}
+
+	@Override
+	public InputFormat getInputFormat() throws IOException {
+
+		return new BlockInputFormat();
+	}
+
+	@Override
+	public void prepareToRead(RecordReader reader, PigSplit split) throws IOException {
+
+		this.reader = (BlockRecordReader) reader;
+	}
+
+	@Override
+	public Tuple getNext() throws IOException {
+
+		return reader.nextKeyValue() ? reader.getCurrentValue() : null;
+	}
+
+	// storing
+
+	@Override
+	public String relToAbsPathForStoreLocation(String location, Path curDir) throws IOException {
+
+		return LoadFunc.getAbsolutePath(location, curDir);
+	}
+
+	@Override
+	public OutputFormat getOutputFormat() throws IOException {
+
+		return new BlockOutputFormat(floatPrecision);
+	}
+
+	@Override
+	public void setStoreLocation(String location, Job job) throws IOException {
+
+		FileOutputFormat.setOutputPath(job, new Path(location));
+	}
+
+	@Override
+	public void checkSchema(ResourceSchema schema) throws IOException {
+
+		// any schema, the records carry their types
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public void prepareToWrite(RecordWriter writer) throws IOException {
+
+		this.writer = writer;
+	}
+
+	@Override
+	public void putNext(Tuple tuple) throws IOException {
+
+		try {
+			writer.write(NullWritable.get(), tuple);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}
+	}
+
+	@Override
+	public void setStoreFuncUDFContextSignature(String signature) {
+	}
+
+	@Override
+	public void cleanupOnFailure(String location, Job job) throws IOException {
+
+		StoreFunc.cleanupOnFailureImpl(location, job);
+	}
+
+	static class BlockInputFormat extends FileInputFormat<NullWritable, Tuple> {
+
+		@Override
+		public RecordReader<NullWritable, Tuple> createRecordReader(InputSplit split, TaskAttemptContext context) {
+
+			return new BlockRecordReader();
+		}
+	}
+
+	static class BlockRecordReader extends RecordReader<NullWritable, Tuple> {
+
+		private BlockFile.Reader reader;
+		private Tuple current;
+
+		@Override
+		public void initialize(InputSplit split, TaskAttemptContext context) throws IOException {
+
+			FileSplit fileSplit = (FileSplit) split;
+			Path path = fileSplit.getPath();
+			FileSystem fs = path.getFileSystem(context.getConfiguration());
+			reader = new BlockFile.Reader(fs.open(path), fileSplit.getStart(),
+					fileSplit.getStart() + fileSplit.getLength());
+		}
+
+		@Override
+		public boolean nextKeyValue() throws IOException {
+
+			current = reader.next();
+			return current != null;
+		}
+
+		@Override
+		public NullWritable getCurrentKey() {
+
+			return NullWritable.get();
+		}
+
+		@Override
+		public Tuple getCurrentValue() {
+
+			return current;
+		}
+
+		@Override
+		public float getProgress() {
+
+			return reader == null ? 0 : reader.progress();
+		}
+
+		@Override
+		public void close() throws IOException {
+
+			if (reader != null) {
+				reader.close();
+			}
+		}
+	}
+
+	static class BlockOutputFormat extends FileOutputFormat<NullWritable, Tuple> {
+
+		private final boolean floatPrecision;
+
+		BlockOutputFormat(boolean floatPrecision) {
+
+			this.floatPrecision = floatPrecision;
+		}
+
+		@Override
+		public RecordWriter<NullWritable, Tuple> getRecordWriter(TaskAttemptContext context) throws IOException {
+
+			Configuration conf = context.getConfiguration();
+			Path file = getDefaultWorkFile(context, "");
+			final BlockFile.Writer out = new BlockFile.Writer(file.getFileSystem(conf).create(file, false),
+					conf.getInt(BlockFile.BLOCK_SIZE, BlockFile.DEFAULT_BLOCK_SIZE),
+					conf.getInt(BlockFile.COMPRESSION_LEVEL, BlockFile.DEFAULT_COMPRESSION_LEVEL),
+					floatPrecision);
+			return new RecordWriter<NullWritable, Tuple>() {
+				@Override
+				public void write(NullWritable key, Tuple value) throws IOException {
+
+					out.append(value);
+				}
+
+				@Override
+				public void close(TaskAttemptContext context) throws IOException {
+
+					out.close();
+				}
+			};
+		}
+	}
+}
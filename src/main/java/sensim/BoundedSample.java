@@ -0,0 +1,272 @@
+package sensim;
+
+import org.apache.pig.Algebraic;
+import org.apache.pig.EvalFunc;
+import org.apache.pig.data.BagFactory;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.logicalLayer.FrontendException;
+import org.apache.pig.impl.logicalLayer.schema.Schema;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.PriorityQueue;
+
+/**
+ * Samples at most maxSize tuples of a bag, uniformly and deterministically for
+ * a given seed. Meant to cap hub groups, eg. the sentences of frequent pairs,
+ * before expensive per-row work:
+ *
+ * <pre>
+ * DEFINE SentenceSample sensim.BoundedSample( '5000', '1' ) ;
+ * sampled = FOREACH ( GROUP pairids BY pair ) GENERATE
+ *     group as pair, SentenceSample( pairids.id ) as ids ;
+ * </pre>
+ *
+ * Each tuple gets a pseudo-random rank, the fingerprint of its values mixed
+ * with the seed, and the maxSize tuples of lowest rank are kept ( bottom-k
+ * sampling ). Unlike a reservoir, partial samples merge exactly, so the
+ * function is algebraic: Pig evaluates it in the combiner and hub groups never
+ * reach a single reducer in full. Equal tuples share their rank, so with the
+ * same seed the same sentences are picked for all pairs they occur with, and
+ * re-runs on the same input pick the same sample.
+ * <p/>
+ * The sample is returned in the order of the ranks, ie. in random order.
+ */
+public class BoundedSample extends EvalFunc<DataBag> implements Algebraic {
+
+	private static final TupleFactory tupleFactory = TupleFactory.getInstance();
+	private static final BagFactory bagFactory = BagFactory.getInstance();
+
+	private final int maxSize;
+	private final long seed;
+
+	public BoundedSample(String maxSize) {
+
+		this(maxSize, "0");
+	}
+
+	public BoundedSample(String maxSize, String seed) {
+
+		this.maxSize = Integer.parseInt(maxSize);
+		this.seed = Long.parseLong(seed);
+	}
+
+	@Override
+	public DataBag exec(Tuple input) throws IOException {
+
+		if (input == null || input.size() == 0 || input.get(0) == null) {
+			return null;
+		}
+		Sample sample = new Sample(maxSize);
+		sample.offerAll((DataBag) input.get(0), seed);
+		return sample.values();
+	}
+
+	@Override
+	public Schema outputSchema(Schema input) {
+
+		try {
+			return new Schema(new Schema.FieldSchema("sample", input.getField(0).schema, DataType.BAG));
+		} catch (FrontendException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public String getInitial() {
+
+		return Initial.class.getName();
+	}
+
+	@Override
+	public String getIntermed() {
+
+		return Intermediate.class.getName();
+	}
+
+	@Override
+	public String getFinal() {
+
+		return Final.class.getName();
+	}
+
+	public static class Initial extends EvalFunc<Tuple> {
+
+		private final int maxSize;
+		private final long seed;
+
+		public Initial(String maxSize) {
+
+			this(maxSize, "0");
+		}
+
+		public Initial(String maxSize, String seed) {
+
+			this.maxSize = Integer.parseInt(maxSize);
+			this.seed = Long.parseLong(seed);
+		}
+
+		@Override
+		public Tuple exec(Tuple input) throws IOException {
+
+			Sample sample = new Sample(maxSize);
+			if (input != null && input.size() > 0 && input.get(0) != null) {
+				sample.offerAll((DataBag) input.get(0), seed);
+			}
+			return tupleFactory.newTuple(sample.rankedValues());
+		}
+	}
+
+	public static class Intermediate extends EvalFunc<Tuple> {
+
+		private final int maxSize;
+
+		public Intermediate(String maxSize) {
+
+			this(maxSize, "0");
+		}
+
+		public Intermediate(String maxSize, String seed) {
+
+			this.maxSize = Integer.parseInt(maxSize);
+		}
+
+		@Override
+		public Tuple exec(Tuple input) throws IOException {
+
+			return tupleFactory.newTuple(Sample.mergeAll(input, maxSize).rankedValues());
+		}
+	}
+
+	public static class Final extends EvalFunc<DataBag> {
+
+		private final int maxSize;
+
+		public Final(String maxSize) {
+
+			this(maxSize, "0");
+		}
+
+		public Final(String maxSize, String seed) {
+
+			this.maxSize = Integer.parseInt(maxSize);
+		}
+
+		@Override
+		public DataBag exec(Tuple input) throws IOException {
+
+			return Sample.mergeAll(input, maxSize).values();
+		}
+	}
+
+	/**
+	 * The tuples of lowest rank seen so far.
+	 */
+	static class Sample {
+
+		private final int maxSize;
+		// highest rank on top, to be replaced first
+		private final PriorityQueue<Ranked> top = new PriorityQueue<Ranked>();
+
+		Sample(int maxSize) {
+
+			this.maxSize = maxSize;
+		}
+
+		void offerAll(DataBag bag, long seed) throws IOException {
+
+			for (Tuple t : bag) {
+				if (t == null || t.size() == 0) {
+					continue;
+				}
+				long fingerprint = t.size() == 1 ? Fingerprints.of(t.get(0)) : Fingerprints.of(t.getAll());
+				offer(Fingerprints.mix(fingerprint, seed), t);
+			}
+		}
+
+		void offer(long rank, Tuple value) {
+
+			if (top.size() < maxSize) {
+				top.add(new Ranked(rank, value));
+			} else if (maxSize > 0 && rank < top.peek().rank) {
+				top.poll();
+				top.add(new Ranked(rank, value));
+			}
+		}
+
+		private Ranked[] sorted() {
+
+			// ascending by rank
+			Ranked[] sorted = top.toArray(new Ranked[top.size()]);
+			Arrays.sort(sorted, Collections.reverseOrder());
+			return sorted;
+		}
+
+		DataBag values() {
+
+			DataBag bag = bagFactory.newDefaultBag();
+			for (Ranked ranked : sorted()) {
+				bag.add(ranked.value);
+			}
+			return bag;
+		}
+
+		/**
+		 * @return the partial sample, as a bag of ( rank, value )
+		 */
+		DataBag rankedValues() throws IOException {
+
+			DataBag bag = bagFactory.newDefaultBag();
+			for (Ranked ranked : sorted()) {
+				Tuple t = tupleFactory.newTuple(2);
+				t.set(0, ranked.rank);
+				t.set(1, ranked.value);
+				bag.add(t);
+			}
+			return bag;
+		}
+
+		/**
+		 * Merges the partial samples in the bag of an intermediate or final call.
+		 */
+		static Sample mergeAll(Tuple input, int maxSize) throws IOException {
+
+			Sample sample = new Sample(maxSize);
+			if (input == null || input.size() == 0 || input.get(0) == null) {
+				return sample;
+			}
+			for (Tuple partial : (DataBag) input.get(0)) {
+				if (partial == null || partial.get(0) == null) {
+					continue;
+				}
+				for (Tuple ranked : (DataBag) partial.get(0)) {
+					sample.offer((Long) ranked.get(0), (Tuple) ranked.get(1));
+				}
+			}
+			return sample;
+		}
+	}
+
+	private static final class Ranked implements Comparable<Ranked> {
+
+		private final long rank;
+		private final Tuple value;
+
+		Ranked(long rank, Tuple value) {
+
+			this.rank = rank;
+			this.value = value;
+		}
+
+		@Override
+		public int compareTo(Ranked other) {
+
+			// descending, so the queue's head is the highest rank
+			return rank < other.rank ? 1 : rank > other.rank ? -1 : 0;
+		}
+	}
+}
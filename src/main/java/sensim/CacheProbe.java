@@ -0,0 +1,69 @@
+package sensim;
+
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.pig.EvalFunc;
+import org.apache.pig.builtin.OutputSchema;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.tools.pigstats.PigStatusReporter;
+
+import java.io.IOException;
+
+/**
+ * Tells whether a key was found in a cache, given the bag of its cached entries
+ * ( after a COGROUP with the cache, s. cache.pig ), and counts hits and misses
+ * as the counters HITS and MISSES of the group "sensim.CacheProbe.&lt;cache&gt;".
+ */
+@OutputSchema("hit:boolean")
+public class CacheProbe extends EvalFunc<Boolean> {
+
+	private final String group;
+
+	private Counter hits;
+	private Counter misses;
+
+	public CacheProbe(String cache) {
+
+		this.group = "sensim.CacheProbe." + cache;
+	}
+
+	@Override
+	public Boolean exec(Tuple input) throws IOException {
+
+		if (input == null || input.size() == 0) {
+			return null;
+		}
+
+		DataBag entries = (DataBag) input.get(0);
+		boolean hit = entries != null && entries.size() > 0;
+
+		Counter counter = hit ? hits() : misses();
+		if (counter != null) {
+			counter.increment(1);
+		}
+		return hit;
+	}
+
+	private Counter hits() {
+
+		if (hits == null) {
+			hits = counter("HITS");
+		}
+		return hits;
+	}
+
+	private Counter misses() {
+
+		if (misses == null) {
+			misses = counter("MISSES");
+		}
+		return misses;
+	}
+
+	private Counter counter(String name) {
+
+		// there are no counters outside of Pig
+		PigStatusReporter reporter = PigStatusReporter.getInstance();
+		return reporter == null ? null : reporter.getCounter(group, name);
+	}
+}
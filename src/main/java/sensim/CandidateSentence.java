@@ -0,0 +1,177 @@
+package sensim;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.NN;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import dima.UIMAXMLConverterHelper;
+import org.apache.commons.io.IOUtils;
+import org.apache.pig.EvalFunc;
+import org.apache.pig.builtin.OutputSchema;
+import org.apache.pig.data.Tuple;
+import org.apache.uima.UIMAException;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.xml.sax.SAXException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Tells whether a tagged sentence ( output of {@link CoreNLPTagger} ) can yield
+ * a pair in generate_subcorpus.pig, so only those are parsed: it has to have at
+ * least minNouns common nouns and, given a list of pairs ( eg. the target-expansion
+ * pairs of step 03 or the BLESS pairs ), two of them that form one of the pairs.
+ * Nouns and pairs are matched as in generate_subcorpus.pig, ie. lowercased
+ * lemmas in the order of the sentence against the pairs as given.
+ * <p/>
+ * Input: tagged sentence. Output: true for candidates, false otherwise.
+ */
+@OutputSchema("candidate:boolean")
+public class CandidateSentence extends EvalFunc<Boolean> {
+
+	private final int minNouns;
+	private final String pairLocation;
+	private final JCas jCas;
+	private final UIMAXMLConverterHelper uimaXMLConverterHelper;
+	private final UdfMetrics metrics = new UdfMetrics(CandidateSentence.class);
+
+	// fingerprints of "noun1 \t noun2", read on first use
+	private LongIntHashMap pairs;
+
+	public CandidateSentence(String minNouns) throws UIMAException {
+
+		this(minNouns, "");
+	}
+
+	/**
+	 * @param pairLocation a file or directory of part files with lines of the
+	 *                     form: noun1 \t noun2 [ \t ... ], or '' for none
+	 */
+	public CandidateSentence(String minNouns, String pairLocation) throws UIMAException {
+
+		this(Integer.parseInt(minNouns), pairLocation, null);
+	}
+
+	/**
+	 * With pairs read already, s. LocalPipelineRunner.
+	 */
+	CandidateSentence(int minNouns, LongIntHashMap pairs) throws UIMAException {
+
+		this(minNouns, "", pairs);
+	}
+
+	private CandidateSentence(int minNouns, String pairLocation, LongIntHashMap pairs) throws UIMAException {
+
+		super();
+		this.minNouns = minNouns;
+		this.pairLocation = pairLocation.trim();
+		this.pairs = pairs;
+
+		uimaXMLConverterHelper = new UIMAXMLConverterHelper(false, UimaResources.typeSystem());
+		jCas = UimaResources.borrowJCas();
+	}
+
+	@Override
+	public Boolean exec(Tuple input) throws IOException {
+
+		metrics.begin();
+		boolean candidate = false;
+		try {
+			candidate = isCandidate(input);
+			return candidate;
+		} finally {
+			metrics.end(input, candidate ? 1 : 0);
+		}
+	}
+
+	@Override
+	public void finish() {
+
+		metrics.finish();
+		UimaResources.release(jCas);
+	}
+
+	private boolean isCandidate(Tuple input) throws IOException {
+
+		if (input == null || input.size() == 0 || input.get(0) == null) {
+			metrics.skip("NULL_INPUT");
+			return false;
+		}
+		if (pairs == null && !pairLocation.isEmpty()) {
+			pairs = readPairs(pairLocation);
+		}
+
+		try {
+			CharSequence charseq = (CharSequence) input.get(0);
+			uimaXMLConverterHelper.deserialize(IOUtils.toInputStream(charseq, Charsets.UTF_8.name()), jCas);
+		} catch (UIMAException e) {
+			metrics.error(e);
+			return false;
+		} catch (SAXException e) {
+			metrics.error(e);
+			return false;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}
+
+		boolean enoughNouns = false;
+		for (Sentence sentence : JCasUtil.select(jCas, Sentence.class)) {
+			List<String> nouns = Lists.newArrayList();
+			for (Token token : JCasUtil.selectCovered(Token.class, sentence)) {
+				if (isNoun(token) && token.getLemma() != null) {
+					nouns.add(token.getLemma().getValue().toLowerCase());
+				}
+			}
+			if (nouns.size() < minNouns) {
+				continue;
+			}
+			enoughNouns = true;
+			if (pairs == null) {
+				return true;
+			}
+			for (int i = 0; i < nouns.size(); i++) {
+				for (int j = i + 1; j < nouns.size(); j++) {
+					if (pairs.containsKey(Fingerprints.of(nouns.get(i) + "\t" + nouns.get(j)))) {
+						return true;
+					}
+				}
+			}
+		}
+		metrics.skip(enoughNouns ? "NO_PAIR" : "TOO_FEW_NOUNS");
+		return false;
+	}
+
+	/**
+	 * Common nouns as in NounPairLabeler, incl. the PukWaC tags.
+	 */
+	private static boolean isNoun(Token token) {
+
+		if (token.getPos() == null) {
+			return false;
+		}
+		return token.getPos() instanceof NN
+				|| "NN".equals(token.getPos().getPosValue()) || "NNS".equals(token.getPos().getPosValue());
+	}
+
+	private static LongIntHashMap readPairs(String location) throws IOException {
+
+		LongIntHashMap pairs = new LongIntHashMap(1 << 16);
+		BufferedReader reader = PartFiles.open(location);
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split("\t");
+				if (fields.length >= 2) {
+					pairs.put(Fingerprints.of(fields[0] + "\t" + fields[1]), 1);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return pairs;
+	}
+}
@@ -0,0 +1,280 @@
+package sensim;
+
+import org.apache.pig.Algebraic;
+import org.apache.pig.EvalFunc;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Counts the distinct values in a bag, exactly up to a threshold and
+ * approximately above it. Meant for frequency pruning of the form
+ * <code>COUNT( DISTINCT .. ) > threshold</code>, where an exact count above
+ * the threshold is wasted work:
+ *
+ * <pre>
+ * DEFINE PatternsPerPair sensim.CappedDistinctCount( '2' ) ;
+ * pairs = FOREACH ( GROUP features BY pair ) GENERATE
+ *     group as pair, PatternsPerPair( features.pattern ) as numpatterns ;
+ * </pre>
+ *
+ * Up to <code>threshold + 1</code> distinct values are kept as exact 64-bit
+ * fingerprints; beyond that the values fall back to a {@link HyperLogLog}
+ * sketch. The result is exact as long as it is at most <code>threshold</code>
+ * and never drops to or below <code>threshold</code> once the exact count
+ * exceeded it, so comparisons against the threshold are always exact.
+ * <p/>
+ * The function is algebraic, hence Pig evaluates it in the combiner and hub
+ * groups never have to be materialized ( or sorted ) in a single reducer.
+ */
+public class CappedDistinctCount extends EvalFunc<Long> implements Algebraic {
+
+	private static final byte EXACT = 0;
+	private static final byte SKETCH = 1;
+
+	private static final TupleFactory tupleFactory = TupleFactory.getInstance();
+
+	private final int threshold;
+
+	public CappedDistinctCount() {
+
+		this("0");
+	}
+
+	public CappedDistinctCount(String threshold) {
+
+		this.threshold = Integer.parseInt(threshold);
+	}
+
+	@Override
+	public Long exec(Tuple input) throws IOException {
+
+		if (input == null || input.size() == 0 || input.get(0) == null) {
+			return null;
+		}
+		State state = new State(threshold);
+		state.offerAll((DataBag) input.get(0));
+		return state.count();
+	}
+
+	@Override
+	public String getInitial() {
+
+		return Initial.class.getName();
+	}
+
+	@Override
+	public String getIntermed() {
+
+		return Intermediate.class.getName();
+	}
+
+	@Override
+	public String getFinal() {
+
+		return Final.class.getName();
+	}
+
+	public static class Initial extends EvalFunc<Tuple> {
+
+		private final int threshold;
+
+		public Initial() {
+
+			this("0");
+		}
+
+		public Initial(String threshold) {
+
+			this.threshold = Integer.parseInt(threshold);
+		}
+
+		@Override
+		public Tuple exec(Tuple input) throws IOException {
+
+			State state = new State(threshold);
+			if (input != null && input.size() > 0 && input.get(0) != null) {
+				state.offerAll((DataBag) input.get(0));
+			}
+			return tupleFactory.newTuple(state.toBytes());
+		}
+	}
+
+	public static class Intermediate extends EvalFunc<Tuple> {
+
+		private final int threshold;
+
+		public Intermediate() {
+
+			this("0");
+		}
+
+		public Intermediate(String threshold) {
+
+			this.threshold = Integer.parseInt(threshold);
+		}
+
+		@Override
+		public Tuple exec(Tuple input) throws IOException {
+
+			return tupleFactory.newTuple(State.mergeAll(input, threshold).toBytes());
+		}
+	}
+
+	public static class Final extends EvalFunc<Long> {
+
+		private final int threshold;
+
+		public Final() {
+
+			this("0");
+		}
+
+		public Final(String threshold) {
+
+			this.threshold = Integer.parseInt(threshold);
+		}
+
+		@Override
+		public Long exec(Tuple input) throws IOException {
+
+			return State.mergeAll(input, threshold).count();
+		}
+	}
+
+	/**
+	 * Either a small set of exact fingerprints or a cardinality sketch.
+	 */
+	static class State {
+
+		private final int limit;
+		private long[] hashes;
+		private int size;
+		private HyperLogLog sketch;
+
+		State(int threshold) {
+
+			this.limit = threshold + 1;
+			this.hashes = new long[Math.min(limit, 16)];
+		}
+
+		void offerAll(DataBag bag) throws IOException {
+
+			for (Tuple t : bag) {
+				if (t == null || t.size() == 0) {
+					continue;
+				}
+				offer(Fingerprints.of(t.size() == 1 ? t.get(0) : t));
+			}
+		}
+
+		void offer(long hash) {
+
+			if (sketch != null) {
+				sketch.offer(hash);
+				return;
+			}
+			for (int i = 0; i < size; i++) {
+				if (hashes[i] == hash) {
+					return;
+				}
+			}
+			if (size == limit) {
+				// one more than the limit: switch to the sketch for good
+				sketch = new HyperLogLog();
+				for (int i = 0; i < size; i++) {
+					sketch.offer(hashes[i]);
+				}
+				sketch.offer(hash);
+				hashes = null;
+				return;
+			}
+			if (size == hashes.length) {
+				hashes = Arrays.copyOf(hashes, Math.min(limit, 2 * hashes.length));
+			}
+			hashes[size++] = hash;
+		}
+
+		void merge(State other) {
+
+			if (other.sketch != null) {
+				if (sketch == null) {
+					HyperLogLog merged = new HyperLogLog(other.sketch.getPrecision());
+					for (int i = 0; i < size; i++) {
+						merged.offer(hashes[i]);
+					}
+					sketch = merged;
+					hashes = null;
+				}
+				sketch.merge(other.sketch);
+			} else {
+				for (int i = 0; i < other.size; i++) {
+					offer(other.hashes[i]);
+				}
+			}
+		}
+
+		long count() {
+
+			if (sketch == null) {
+				return size;
+			}
+			return Math.max(limit, sketch.cardinality());
+		}
+
+		DataByteArray toBytes() {
+
+			if (sketch != null) {
+				byte[] registers = sketch.toBytes();
+				byte[] bytes = new byte[registers.length + 1];
+				bytes[0] = SKETCH;
+				System.arraycopy(registers, 0, bytes, 1, registers.length);
+				return new DataByteArray(bytes);
+			}
+			ByteBuffer buffer = ByteBuffer.allocate(1 + 8 * size);
+			buffer.put(EXACT);
+			for (int i = 0; i < size; i++) {
+				buffer.putLong(hashes[i]);
+			}
+			return new DataByteArray(buffer.array());
+		}
+
+		static State fromBytes(byte[] bytes, int threshold) {
+
+			State state = new State(threshold);
+			if (bytes[0] == SKETCH) {
+				state.sketch = HyperLogLog.fromBytes(bytes, 1);
+				state.hashes = null;
+			} else {
+				ByteBuffer buffer = ByteBuffer.wrap(bytes, 1, bytes.length - 1);
+				while (buffer.remaining() >= 8) {
+					state.offer(buffer.getLong());
+				}
+			}
+			return state;
+		}
+
+		/**
+		 * Merges the partial states in the bag of an intermediate or final call.
+		 */
+		static State mergeAll(Tuple input, int threshold) throws IOException {
+
+			State state = new State(threshold);
+			if (input == null || input.size() == 0 || input.get(0) == null) {
+				return state;
+			}
+			for (Tuple partial : (DataBag) input.get(0)) {
+				if (partial == null || partial.get(0) == null) {
+					continue;
+				}
+				state.merge(fromBytes(((DataByteArray) partial.get(0)).get(), threshold));
+			}
+			return state;
+		}
+	}
+}
@@ -0,0 +1,271 @@
+package sensim;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.google.common.base.Charsets;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Chinese Whispers[1] graph clustering on a {@link SimilarityGraph}, ie. on the
+ * distance matrix of step (11a) or on a similarity file of noun pairs, instead
+ * of preparing the input of the external CW binary with clustering_utils.py.
+ * <p/>
+ * Each node starts in its own class. In each iteration, the nodes are visited
+ * in a random order and each takes the class with the highest total edge weight
+ * among its neighbours, until no node changes its class or the maximum number
+ * of iterations is reached.
+ * <p/>
+ * The visiting order is cut into blocks of blockSize nodes. The nodes of a block
+ * are updated in parallel, based on the classes as of the end of the previous
+ * block, so the result only depends on the seed and the block size, not on the
+ * number of threads. Ties are broken by a hash of the class and the seed.
+ * <p/>
+ * Output: id \t name \t class, one line per node, as read by evaluate_cw_clustering.py.
+ * <p/>
+ * Usage:
+ * <pre>
+ * java -Xmx<lots> -cp <job jar>:`hadoop classpath` sensim.ChineseWhispers \
+ *     -input dmatrix.mtx -names vectors_lmi.tsv -output clustering [-threads 16] [-seed 1]
+ * java ... sensim.ChineseWhispers -input sensim_lmi_l200.gz -format pairs -minWeight 10 -output clustering
+ * </pre>
+ * [1] http://wortschatz.informatik.uni-leipzig.de/~cbiemann/software/CW.html
+ */
+public class ChineseWhispers {
+
+	private static final Log log = LogFactory.getLog(ChineseWhispers.class);
+
+	@Parameter(names = {"-input"}, description = "Distance matrix ( MatrixMarket ) or similarities of pairs", required = true)
+	String input;
+
+	@Parameter(names = {"-format"}, description = "Format of the input: mm ( distances, as of step 11a ) or pairs ( left \\t right \\t similarity )", required = false)
+	String format = "mm";
+
+	@Parameter(names = {"-names"}, description = "Names of the nodes of a distance matrix: id \\t name ( eg. the feature vectors )", required = false)
+	String names;
+
+	@Parameter(names = {"-minWeight"}, description = "Drop edges with a smaller similarity", required = false)
+	double minWeight = 0;
+
+	@Parameter(names = {"-output"}, description = "Output file", required = true)
+	String output;
+
+	@Parameter(names = {"-iterations"}, description = "Maximum number of iterations", required = false)
+	int iterations = 20;
+
+	@Parameter(names = {"-seed"}, description = "Seed of the random visiting order", required = false)
+	long seed = 1;
+
+	@Parameter(names = {"-blockSize"}, description = "Number of nodes updated in parallel", required = false)
+	int blockSize = 16384;
+
+	@Parameter(names = {"-threads"}, description = "Number of threads", required = false)
+	int threads = Runtime.getRuntime().availableProcessors();
+
+	public static void main(String[] args) throws Exception {
+
+		ChineseWhispers cw = new ChineseWhispers();
+		JCommander jCommander = new JCommander(cw);
+		try {
+			jCommander.parse(args);
+		} catch (ParameterException e) {
+			System.err.println(e.getMessage());
+			jCommander.setProgramName(ChineseWhispers.class.getSimpleName());
+			jCommander.usage();
+			System.exit(1);
+		}
+		cw.run();
+	}
+
+	public void run() throws IOException {
+
+		SimilarityGraph graph;
+		if ("mm".equals(format)) {
+			graph = SimilarityGraph.readMatrixMarket(input, names, minWeight);
+		} else if ("pairs".equals(format)) {
+			graph = SimilarityGraph.readPairs(input, minWeight);
+		} else {
+			throw new IllegalArgumentException("Unknown format: " + format);
+		}
+
+		int[] classes = cluster(graph, iterations, seed, blockSize, threads);
+
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output), Charsets.UTF_8));
+		try {
+			for (int node = 0; node < classes.length; node++) {
+				out.write((node + 1) + "\t" + graph.name(node) + "\t" + (classes[node] + 1) + "\n");
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * @return the class of each node, the id of one of its members
+	 */
+	public static int[] cluster(SimilarityGraph graph, int maxIterations, long seed, int blockSize,
+	                            int numThreads) throws IOException {
+
+		int numNodes = graph.numNodes();
+		int[] classes = new int[numNodes];
+		for (int node = 0; node < numNodes; node++) {
+			classes[node] = node;
+		}
+		int[] order = classes.clone();
+		int[] next = new int[blockSize];
+
+		List<Worker> workers = new ArrayList<Worker>();
+		int maxDegree = graph.maxDegree();
+		for (int i = 0; i < numThreads; i++) {
+			workers.add(new Worker(graph, classes, order, next, maxDegree, seed));
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try {
+			for (int iteration = 1; iteration <= maxIterations; iteration++) {
+				shuffle(order, new Random(seed * 31 + iteration));
+				long numChanges = 0;
+				for (int start = 0; start < numNodes; start += blockSize) {
+					int end = Math.min(start + blockSize, numNodes);
+					// split the block evenly among the workers
+					for (int i = 0; i < numThreads; i++) {
+						workers.get(i).assign(start, start + (int) ((long) (end - start) * i / numThreads),
+								start + (int) ((long) (end - start) * (i + 1) / numThreads));
+					}
+					invokeAll(executor, workers);
+					for (int i = start; i < end; i++) {
+						int node = order[i];
+						if (classes[node] != next[i - start]) {
+							classes[node] = next[i - start];
+							numChanges++;
+						}
+					}
+				}
+				log.info("Iteration " + iteration + ": " + numChanges + " nodes changed their class");
+				if (numChanges == 0) {
+					break;
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return classes;
+	}
+
+	private static void invokeAll(ExecutorService executor, List<Worker> workers) throws IOException {
+
+		try {
+			for (Future<Void> done : executor.invokeAll(workers)) {
+				done.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private static void shuffle(int[] order, Random random) {
+
+		for (int i = order.length - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int swap = order[i];
+			order[i] = order[j];
+			order[j] = swap;
+		}
+	}
+
+	/**
+	 * Computes the new classes of a slice of a block; only reads the classes.
+	 */
+	private static final class Worker implements Callable<Void> {
+
+		private final SimilarityGraph graph;
+		private final int[] classes;
+		private final int[] order;
+		private final int[] next;
+		private final long seed;
+		// class in the upper half, edge in the lower
+		private final long[] sorted;
+
+		private int blockStart;
+		private int from;
+		private int to;
+
+		Worker(SimilarityGraph graph, int[] classes, int[] order, int[] next, int maxDegree, long seed) {
+
+			this.graph = graph;
+			this.classes = classes;
+			this.order = order;
+			this.next = next;
+			this.seed = seed;
+			this.sorted = new long[maxDegree];
+		}
+
+		void assign(int blockStart, int from, int to) {
+
+			this.blockStart = blockStart;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public Void call() {
+
+			for (int i = from; i < to; i++) {
+				next[i - blockStart] = strongestClass(order[i]);
+			}
+			return null;
+		}
+
+		private int strongestClass(int node) {
+
+			int degree = graph.degree(node);
+			if (degree == 0) {
+				return classes[node];
+			}
+			int first = graph.firstEdge(node);
+			int[] targets = graph.targets();
+			float[] weights = graph.weights();
+			for (int i = 0; i < degree; i++) {
+				sorted[i] = ((long) classes[targets[first + i]] << 32) | i;
+			}
+			Arrays.sort(sorted, 0, degree);
+
+			int best = -1;
+			double bestWeight = 0;
+			long bestTie = 0;
+			for (int i = 0; i < degree; ) {
+				int cls = (int) (sorted[i] >>> 32);
+				double weight = 0;
+				for (; i < degree && (int) (sorted[i] >>> 32) == cls; i++) {
+					weight += weights[first + (int) sorted[i]];
+				}
+				long tie = Fingerprints.mix(cls, seed);
+				if (best < 0 || weight > bestWeight || weight == bestWeight && tie < bestTie) {
+					best = cls;
+					bestWeight = weight;
+					bestTie = tie;
+				}
+			}
+			return best;
+		}
+	}
+}
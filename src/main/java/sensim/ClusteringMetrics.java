@@ -0,0 +1,224 @@
+package sensim;
+
+import java.util.Arrays;
+
+/**
+ * Extrinsic evaluation of a clustering against gold classes, eg. BLESS labels,
+ * with the metrics of coref_metrics.py: B-Cubed, MUC, pairwise and CEAF ( mention
+ * and entity based ). Scores are reported as in coref_metrics.py, ie. as
+ * numerators and denominators of precision and recall.
+ * <p/>
+ * All metrics are computed from the sparse contingency table of classes and
+ * clusters, ie. the number of items per ( class, cluster ), and the sizes of
+ * classes and clusters, in time linear in the number of items and non-empty
+ * cells. For CEAF, the non-empty cells are the edges of a sparse assignment
+ * problem, s. {@link MaxWeightAssignment}.
+ * <p/>
+ * Items are those that have both a class and a cluster; classes and clusters
+ * are dense ids, 0 .. numClasses - 1 and 0 .. numClusters - 1.
+ */
+public class ClusteringMetrics {
+
+	/**
+	 * Numerators and denominators of precision and recall.
+	 */
+	public static final class Score {
+
+		public final double pNum;
+		public final double pDen;
+		public final double rNum;
+		public final double rDen;
+
+		Score(double pNum, double pDen, double rNum, double rDen) {
+
+			this.pNum = pNum;
+			this.pDen = pDen;
+			this.rNum = rNum;
+			this.rDen = rDen;
+		}
+
+		public double precision() {
+
+			return pDen > 0 ? pNum / pDen : 0;
+		}
+
+		public double recall() {
+
+			return rDen > 0 ? rNum / rDen : 0;
+		}
+
+		public double f1() {
+
+			double p = precision();
+			double r = recall();
+			return p + r > 0 ? 2 * p * r / (p + r) : 0;
+		}
+	}
+
+	private final int numItems;
+	private final long[] classSizes;
+	private final long[] clusterSizes;
+	// non-empty cells of the contingency table
+	private final int[] cellClasses;
+	private final int[] cellClusters;
+	private final long[] cellCounts;
+
+	public ClusteringMetrics(int[] classes, int[] clusters, int numClasses, int numClusters) {
+
+		if (classes.length != clusters.length) {
+			throw new IllegalArgumentException("Got " + classes.length + " classes but " + clusters.length + " clusters");
+		}
+		numItems = classes.length;
+		classSizes = new long[numClasses];
+		clusterSizes = new long[numClusters];
+		LongIntHashMap cells = new LongIntHashMap();
+		for (int i = 0; i < numItems; i++) {
+			classSizes[classes[i]]++;
+			clusterSizes[clusters[i]]++;
+			cells.increment(((long) classes[i] << 32) | clusters[i], 1);
+		}
+
+		long[] keys = cells.keys();
+		Arrays.sort(keys);
+		cellClasses = new int[keys.length];
+		cellClusters = new int[keys.length];
+		cellCounts = new long[keys.length];
+		for (int c = 0; c < keys.length; c++) {
+			cellClasses[c] = (int) (keys[c] >>> 32);
+			cellClusters[c] = (int) keys[c];
+			cellCounts[c] = cells.get(keys[c], 0);
+		}
+	}
+
+	public int numItems() {
+
+		return numItems;
+	}
+
+	/**
+	 * Bagga and Baldwin (1998): precision and recall per item, averaged.
+	 */
+	public Score bCubed() {
+
+		double pNum = 0;
+		double rNum = 0;
+		for (int c = 0; c < cellCounts.length; c++) {
+			double n = cellCounts[c];
+			pNum += n * n / clusterSizes[cellClusters[c]];
+			rNum += n * n / classSizes[cellClasses[c]];
+		}
+		return new Score(pNum, numItems, rNum, numItems);
+	}
+
+	/**
+	 * Vilain et al. (1995): recall is the number of links of each class minus the
+	 * number of clusters it is split into, relative to its links; precision vice versa.
+	 */
+	public Score muc() {
+
+		// number of clusters per class and vice versa = number of cells per row / column
+		long[] clustersPerClass = new long[classSizes.length];
+		long[] classesPerCluster = new long[clusterSizes.length];
+		for (int c = 0; c < cellCounts.length; c++) {
+			clustersPerClass[cellClasses[c]]++;
+			classesPerCluster[cellClusters[c]]++;
+		}
+		double rNum = 0;
+		double rDen = 0;
+		for (int k = 0; k < classSizes.length; k++) {
+			if (classSizes[k] > 0) {
+				rNum += classSizes[k] - clustersPerClass[k];
+				rDen += classSizes[k] - 1;
+			}
+		}
+		double pNum = 0;
+		double pDen = 0;
+		for (int k = 0; k < clusterSizes.length; k++) {
+			if (clusterSizes[k] > 0) {
+				pNum += clusterSizes[k] - classesPerCluster[k];
+				pDen += clusterSizes[k] - 1;
+			}
+		}
+		return new Score(pNum, pDen, rNum, rDen);
+	}
+
+	/**
+	 * Precision and recall of the pairs of items that share a cluster ( a class ).
+	 */
+	public Score pairwise() {
+
+		double both = 0;
+		for (long n : cellCounts) {
+			both += pairs(n);
+		}
+		double inClusters = 0;
+		for (long n : clusterSizes) {
+			inClusters += pairs(n);
+		}
+		double inClasses = 0;
+		for (long n : classSizes) {
+			inClasses += pairs(n);
+		}
+		return new Score(both, inClusters, both, inClasses);
+	}
+
+	/**
+	 * Luo (2005), phi_3: the best one-to-one alignment of classes and clusters
+	 * by the number of items they share, relative to the number of items.
+	 */
+	public Score mentionCeaf() {
+
+		double aligned = align(false);
+		return new Score(aligned, numItems, aligned, numItems);
+	}
+
+	/**
+	 * Luo (2005), phi_4: the best one-to-one alignment of classes and clusters
+	 * by their Dice coefficient, relative to the number of clusters ( classes ).
+	 */
+	public Score entityCeaf() {
+
+		double aligned = align(true);
+		return new Score(aligned, countNonEmpty(clusterSizes), aligned, countNonEmpty(classSizes));
+	}
+
+	private static double pairs(long n) {
+
+		return n * (n - 1) / 2.0;
+	}
+
+	private static int countNonEmpty(long[] sizes) {
+
+		int count = 0;
+		for (long size : sizes) {
+			if (size > 0) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private double similarity(int cell, boolean dice) {
+
+		double n = cellCounts[cell];
+		return dice ? 2 * n / (classSizes[cellClasses[cell]] + clusterSizes[cellClusters[cell]]) : n;
+	}
+
+	/**
+	 * @return total similarity of the best one-to-one alignment
+	 */
+	private double align(boolean dice) {
+
+		double[] similarities = new double[cellCounts.length];
+		for (int c = 0; c < cellCounts.length; c++) {
+			similarities[c] = similarity(c, dice);
+		}
+		// the searches start from the rows, so take the smaller side
+		if (classSizes.length <= clusterSizes.length) {
+			return MaxWeightAssignment.solve(classSizes.length, clusterSizes.length, cellClasses, cellClusters,
+					similarities);
+		}
+		return MaxWeightAssignment.solve(clusterSizes.length, classSizes.length, cellClusters, cellClasses,
+				similarities);
+	}
+}
@@ -38,69 +38,180 @@ import static org.apache.uima.fit.factory.AnalysisEngineFactory.createEngineDesc
 @OutputSchema("annotations:chararray")
 public class CoreNLPAnnotator extends EvalFunc<String> {
 
-	private final JCas jCas;
-	private final AnalysisEngine engine;
+	// models used by default; cached parses are keyed by them, s. cache.pig
+	public static final String POS_TAGGER_VARIANT = "wsj-0-18-left3words-distsim";
+	public static final String PARSER_VARIANT = "pcfg";
+
+	private final AnalysisEngineDescription description;
+	private final String engineKey;
 	private final UIMAXMLConverterHelper uimaXMLConverterHelper;
 	private final String language;
+	private final UdfMetrics metrics = new UdfMetrics(getClass());
+
+	// borrowed on first use, so models aren't loaded by instances that never parse
+	private UimaResources.Engine engine;
 
 	public CoreNLPAnnotator(String language) {
 
+		this(language, POS_TAGGER_VARIANT, PARSER_VARIANT);
+	}
+
+	public CoreNLPAnnotator(String language, String posTaggerVariant, String parserVariant) {
+
+		this(language, CoreNLPAnnotator.class.getName() + "/" + language + "/" + posTaggerVariant + "/" + parserVariant,
+				pipelineDescription(language, posTaggerVariant, parserVariant));
+	}
+
+	/**
+	 * For annotators that run part of the pipeline only, s. CoreNLPTagger and CoreNLPParser.
+	 *
+	 * @param engineKey   identifies the engines among those shared in the JVM, s. UimaResources
+	 * @param description of the engines to run
+	 */
+	protected CoreNLPAnnotator(String language, String engineKey, AnalysisEngineDescription description) {
+
 		super();
 		this.language = language;
+		this.engineKey = engineKey;
+		this.description = description;
+
+		try {
+			uimaXMLConverterHelper = new UIMAXMLConverterHelper(false, UimaResources.typeSystem());
+		} catch (UIMAException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	private static AnalysisEngineDescription pipelineDescription(String language, String posTaggerVariant,
+	                                                             String parserVariant) {
 
 		try {
+			return createEngineDescription(
+				taggerDescription(language, posTaggerVariant),
+				parserDescription(language, parserVariant)
+			);
+		} catch (ResourceInitializationException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
 
-			AnalysisEngineDescription aggregate = createEngineDescription(
+	/**
+	 * Segmenter, POS tagger and lemmatizer: the cheap part of the pipeline.
+	 */
+	static AnalysisEngineDescription taggerDescription(String language, String posTaggerVariant) {
+
+		try {
+			return createEngineDescription(
 				createEngineDescription(StanfordSegmenter.class),
 				createEngineDescription(StanfordPosTagger.class,
 						StanfordPosTagger.PARAM_LANGUAGE, language,
-						StanfordPosTagger.PARAM_VARIANT, "wsj-0-18-left3words-distsim"),
-				createEngineDescription(StanfordLemmatizer.class),
-				createEngineDescription(StanfordParser.class,
-						StanfordParser.PARAM_LANGUAGE, language,
-						StanfordParser.PARAM_WRITE_PENN_TREE, true,
-						StanfordParser.PARAM_WRITE_POS, false, // already done in PosTagger above
-						StanfordParser.PARAM_PRINT_TAGSET, true,
-						StanfordParser.PARAM_VARIANT, "pcfg")
+						StanfordPosTagger.PARAM_VARIANT, posTaggerVariant),
+				createEngineDescription(StanfordLemmatizer.class)
 			);
+		} catch (ResourceInitializationException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
 
-			engine = AnalysisEngineFactory.createEngine(aggregate);
-			jCas = engine.newJCas();
-			uimaXMLConverterHelper = new UIMAXMLConverterHelper(false);
+	/**
+	 * The parser, for sentences that are segmented and tagged already.
+	 */
+	static AnalysisEngineDescription parserDescription(String language, String parserVariant) {
 
+		try {
+			return createEngineDescription(StanfordParser.class,
+					StanfordParser.PARAM_LANGUAGE, language,
+					StanfordParser.PARAM_WRITE_PENN_TREE, true,
+					StanfordParser.PARAM_WRITE_POS, false, // already done in PosTagger above
+					StanfordParser.PARAM_PRINT_TAGSET, true,
+					StanfordParser.PARAM_VARIANT, parserVariant);
 		} catch (ResourceInitializationException e) {
 			throw new IllegalArgumentException(e);
-		} catch (UIMAException e) {
-			throw new IllegalArgumentException(e);
 		}
 	}
 
 	@Override
 	public String exec(Tuple input) throws IOException {
 
+		metrics.begin();
+		String parse = null;
+		try {
+			parse = annotate(input);
+			return parse;
+		} finally {
+			metrics.end(input, parse == null ? 0 : 1);
+		}
+	}
+
+	@Override
+	public void finish() {
+
+		metrics.finish();
+		UimaResources.release(engineKey, engine);
+		engine = null;
+	}
+
+	private UimaResources.Engine engine() throws IOException {
+
+		if (engine == null) {
+			try {
+				engine = UimaResources.borrowEngine(engineKey, new UimaResources.EngineFactory() {
+					@Override
+					public AnalysisEngine newEngine() throws UIMAException {
+
+						return AnalysisEngineFactory.createEngine(description);
+					}
+				});
+			} catch (UIMAException e) {
+				throw new IOException(e);
+			}
+		}
+		return engine;
+	}
+
+	private String annotate(Tuple input) throws IOException {
+
 		if (input == null || input.size() == 0 || input.get(0) == null) {
+			metrics.skip("NULL_INPUT");
 			return null;
 		}
 
 		try {
 
-			String sentence = (String) input.get(0);
-
-			jCas.reset();
-			jCas.setDocumentText(sentence);
-			jCas.setDocumentLanguage(language);
-			engine.process(jCas);
+			JCas jCas = engine().getJCas();
+			load(jCas, (String) input.get(0));
+			engine().getEngine().process(jCas);
 
 			return uimaXMLConverterHelper.serialize(jCas);
 
 		} catch (AnalysisEngineProcessException e) {
+			metrics.error(e);
 			e.printStackTrace();
 		} catch (SAXException e) {
+			metrics.error(e);
+			e.printStackTrace();
+		} catch (UIMAException e) {
+			metrics.error(e);
 			e.printStackTrace();
 		}
 		return null;
 	}
 
+	/**
+	 * Prepares the jCas for the engines; here, the input is the raw sentence.
+	 */
+	protected void load(JCas jCas, String input) throws IOException, UIMAException, SAXException {
+
+		jCas.reset();
+		jCas.setDocumentText(input);
+		jCas.setDocumentLanguage(language);
+	}
+
+	protected UIMAXMLConverterHelper converter() {
+
+		return uimaXMLConverterHelper;
+	}
+
 	@Override
 	public List<FuncSpec> getArgToFuncMapping() throws FrontendException {
 
@@ -0,0 +1,41 @@
+package sensim;
+
+import com.google.common.base.Charsets;
+import org.apache.commons.io.IOUtils;
+import org.apache.pig.builtin.OutputSchema;
+import org.apache.uima.UIMAException;
+import org.apache.uima.jcas.JCas;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+
+/**
+ * The expensive part of CoreNLPAnnotator: parses the annotations of
+ * {@link CoreNLPTagger}. Together, they yield the same parses as CoreNLPAnnotator
+ * with the same models.
+ */
+@OutputSchema("annotations:chararray")
+public class CoreNLPParser extends CoreNLPAnnotator {
+
+	public CoreNLPParser(String language) {
+
+		this(language, PARSER_VARIANT);
+	}
+
+	public CoreNLPParser(String language, String parserVariant) {
+
+		super(language, CoreNLPParser.class.getName() + "/" + language + "/" + parserVariant,
+				parserDescription(language, parserVariant));
+	}
+
+	@Override
+	protected void load(JCas jCas, String input) throws IOException, UIMAException, SAXException {
+
+		try {
+			converter().deserialize(IOUtils.toInputStream(input, Charsets.UTF_8.name()), jCas);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}
+	}
+}
@@ -0,0 +1,24 @@
+package sensim;
+
+import org.apache.pig.builtin.OutputSchema;
+
+/**
+ * The cheap part of CoreNLPAnnotator: segments, tags and lemmatizes raw text,
+ * but doesn't parse it. Its output is the input of {@link CoreNLPParser}, once
+ * sentences that can't yield a pair have been dropped, s. {@link CandidateSentence}
+ * and parse_sentences.pig.
+ */
+@OutputSchema("annotations:chararray")
+public class CoreNLPTagger extends CoreNLPAnnotator {
+
+	public CoreNLPTagger(String language) {
+
+		this(language, POS_TAGGER_VARIANT);
+	}
+
+	public CoreNLPTagger(String language, String posTaggerVariant) {
+
+		super(language, CoreNLPTagger.class.getName() + "/" + language + "/" + posTaggerVariant,
+				taggerDescription(language, posTaggerVariant));
+	}
+}
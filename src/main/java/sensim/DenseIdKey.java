@@ -0,0 +1,68 @@
+package sensim;
+
+import org.apache.pig.EvalFunc;
+import org.apache.pig.builtin.OutputSchema;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+
+import java.io.IOException;
+
+/**
+ * Computes the bucket and sort key under which a row takes part in the
+ * id assignment of {@link DenseIds}. Both are derived from the content of
+ * the given key only, so the same keys end up with the same ids on reruns.
+ * <p/>
+ * The number of buckets follows from the number of keys, a scalar, so that a
+ * bucket holds about keysPerBucket keys, whatever the size of the data:
+ *
+ * <pre>
+ * DEFINE DenseIdKey sensim.DenseIdKey( '1000000' ) ;
+ * keycount = FOREACH ( GROUP keys ALL ) GENERATE COUNT( keys ) as n ;
+ * keyed = FOREACH keys GENERATE FLATTEN( DenseIdKey( key, keycount.n )) as ( bucket:int, fp:long ), key ;
+ * </pre>
+ */
+@OutputSchema("key:tuple (bucket:int, fp:long)")
+public class DenseIdKey extends EvalFunc<Tuple> {
+
+	private final long keysPerBucket;
+	private TupleFactory tupleFactory = TupleFactory.getInstance();
+
+	public DenseIdKey() {
+
+		this("1000000");
+	}
+
+	public DenseIdKey(String keysPerBucket) {
+
+		this.keysPerBucket = Long.parseLong(keysPerBucket);
+		if (this.keysPerBucket < 1) {
+			throw new IllegalArgumentException("Keys per bucket must be positive: " + keysPerBucket);
+		}
+	}
+
+	@Override
+	public Tuple exec(Tuple input) throws IOException {
+
+		if (input == null || input.size() == 0 || input.get(0) == null) {
+			return null;
+		}
+
+		// no count, eg. of an empty relation, means a single bucket
+		long numKeys = input.size() > 1 && input.get(1) != null ? ((Number) input.get(1)).longValue() : 0;
+		int numBuckets = numBuckets(numKeys);
+
+		long fp = Fingerprints.of(input.get(0));
+		// use other bits for the bucket than the ones that dominate the sort order
+		int bucket = (int) ((Fingerprints.mix(fp, numBuckets) >>> 1) % numBuckets);
+
+		Tuple key = tupleFactory.newTuple(2);
+		key.set(0, bucket);
+		key.set(1, fp);
+		return key;
+	}
+
+	int numBuckets(long numKeys) {
+
+		return (int) Math.min(Integer.MAX_VALUE, Math.max(1, (numKeys + keysPerBucket - 1) / keysPerBucket));
+	}
+}
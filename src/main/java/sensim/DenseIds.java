@@ -0,0 +1,124 @@
+package sensim;
+
+import com.google.common.collect.Lists;
+import org.apache.pig.EvalFunc;
+import org.apache.pig.data.BagFactory;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.logicalLayer.FrontendException;
+import org.apache.pig.impl.logicalLayer.schema.Schema;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Assigns unique, gap-free numeric ids ( starting at 1, like RANK ) without
+ * a global sort. Rows are spread over buckets by {@link DenseIdKey}; the
+ * id of a row is the number of rows in all smaller buckets ( the prefix
+ * offset ) plus its position within its own bucket, in fingerprint order.
+ * The bucket sizes are a tiny relation that Pig hands to every task as a
+ * scalar, ie. as a small side file.
+ * <p/>
+ * Usage ( as wrapped by the macro of dense_ids.pig ):
+ * <pre>
+ * keycount = FOREACH ( GROUP rows ALL ) GENERATE COUNT( rows ) as n ;
+ * keyed = FOREACH rows GENERATE FLATTEN( DenseIdKey( key, keycount.n )) as ( bucket:int, fp:long ), * ;
+ * sizes = FOREACH ( GROUP keyed BY bucket ) GENERATE group as bucket, COUNT( keyed ) as size ;
+ * offsets = FOREACH ( GROUP sizes ALL ) GENERATE sizes ;
+ * ranked = FOREACH ( GROUP keyed BY bucket ) {
+ *     sorted = ORDER keyed BY fp ;
+ *     GENERATE FLATTEN( DenseIds( group, sorted, offsets.sizes )) ;
+ * } ;
+ * </pre>
+ * The result has the id in front of the columns of <code>rows</code>, as with RANK.
+ * As opposed to RANK BY, ids follow the fingerprint order of the keys rather
+ * than any order of the data, but they are deterministic across reruns.
+ * <p/>
+ * The rows of a bucket are sorted in one reduce call, so they should be keys or
+ * small dictionary entries: rank the keys of large rows, eg. vectors, and join
+ * the ids back. Lines loaded from files get their ids in the mappers instead,
+ * s. {@link SplitOffsetId}.
+ */
+public class DenseIds extends EvalFunc<DataBag> {
+
+	private BagFactory bagFactory = BagFactory.getInstance();
+	private TupleFactory tupleFactory = TupleFactory.getInstance();
+
+	// the sizes are a scalar, ie. the same bag for every call within a task
+	private DataBag cachedSizes;
+	private SortedMap<Integer, Long> offsets;
+
+	@Override
+	public DataBag exec(Tuple input) throws IOException {
+
+		if (input == null || input.size() < 3 || input.get(0) == null || input.get(1) == null
+				|| input.get(2) == null) {
+			return null;
+		}
+
+		int bucket = (Integer) input.get(0);
+		DataBag rows = (DataBag) input.get(1);
+		DataBag sizes = (DataBag) input.get(2);
+
+		if (sizes != cachedSizes) {
+			offsets = prefixOffsets(sizes);
+			cachedSizes = sizes;
+		}
+		Long offset = offsets.get(bucket);
+		if (offset == null) {
+			throw new IOException("No size recorded for bucket " + bucket);
+		}
+
+		DataBag result = bagFactory.newDefaultBag();
+		long id = offset;
+		for (Tuple row : rows) {
+			// drop bucket and fingerprint, prepend the id
+			List<Object> fields = Lists.newArrayListWithCapacity(row.size() - 1);
+			fields.add(++id);
+			for (int i = 2; i < row.size(); i++) {
+				fields.add(row.get(i));
+			}
+			result.add(tupleFactory.newTupleNoCopy(fields));
+		}
+		return result;
+	}
+
+	private static SortedMap<Integer, Long> prefixOffsets(DataBag sizes) throws IOException {
+
+		SortedMap<Integer, Long> bucketSizes = new TreeMap<Integer, Long>();
+		for (Tuple t : sizes) {
+			bucketSizes.put((Integer) t.get(0), ((Number) t.get(1)).longValue());
+		}
+		SortedMap<Integer, Long> offsets = new TreeMap<Integer, Long>();
+		long offset = 0;
+		for (Integer bucket : bucketSizes.keySet()) {
+			offsets.put(bucket, offset);
+			offset += bucketSizes.get(bucket);
+		}
+		return offsets;
+	}
+
+	@Override
+	public Schema outputSchema(Schema input) {
+
+		try {
+			Schema rowSchema = input.getField(1).schema;
+			if (rowSchema != null && rowSchema.size() == 1 && rowSchema.getField(0).type == DataType.TUPLE) {
+				rowSchema = rowSchema.getField(0).schema;
+			}
+			Schema tupleSchema = new Schema();
+			tupleSchema.add(new Schema.FieldSchema("id", DataType.LONG));
+			for (int i = 2; rowSchema != null && i < rowSchema.size(); i++) {
+				tupleSchema.add(rowSchema.getField(i));
+			}
+			return new Schema(new Schema.FieldSchema("ranked",
+					new Schema(new Schema.FieldSchema("t", tupleSchema, DataType.TUPLE)), DataType.BAG));
+		} catch (FrontendException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,568 @@
+package sensim;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A distributional thesaurus ( DT, as of JoBimText: target#POS \t expansion#POS
+ * \t similarity ) in a binary file, built once and memory-mapped, so the top
+ * expansions of a target are looked up without reading or sorting the DT.
+ * <p/>
+ * Format ( big-endian ):
+ * <pre>
+ * header:     magic, version ( int )
+ * POS tags:   count ( int ), each as modified UTF-8 ( DataOutput.writeUTF )
+ * terms:      count n ( int ), sorted by word, then POS tag
+ *             word offsets into the words ( int[n + 1] ), POS tag ids ( byte[n] ),
+ *             size of the words ( int ), words as UTF-8 ( byte[] )
+ * lists:      entry offsets of the expansions of each term ( long[n + 1] )
+ * entries:    expansion term id ( int ), similarity ( float ), per target
+ *             sorted by similarity, descending
+ * </pre>
+ * The dictionary is read into memory, the entries are mapped. The same file
+ * can be streamed from HDFS, s. {@link DtIndexLoader}.
+ * <p/>
+ * {@link #topNounExpansions} selects expansions as filter_target_expansion_pairs.pig
+ * does: common nouns ( NN, NNS ) of at least two characters, starting with a
+ * letter and without digits, '.', '+' or '@', excluding the target itself; the
+ * lists of a word as NN and as NNS are merged.
+ * <p/>
+ * Build an index:
+ * <pre>
+ * java -Xmx8g -cp <job jar>:`hadoop classpath` sensim.DtIndex -dt dt -output dt.index
+ * </pre>
+ */
+public class DtIndex implements Closeable {
+
+	private static final Log log = LogFactory.getLog(DtIndex.class);
+
+	static final int MAGIC = 0x53445449;
+	static final int VERSION = 1;
+	static final int ENTRY_BYTES = 8;
+
+	// entries per mapped chunk ( 1 GB )
+	private static final int CHUNK_BITS = 27;
+	private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+
+	// s. filter_target_expansion_pairs.pig
+	private static final Pattern WORD = Pattern.compile("[a-zA-Z][\\S]+");
+	private static final Pattern NON_WORD = Pattern.compile(".*[0-9\\.\\+@].*");
+
+	@Parameter(names = {"-dt"}, description = "Distributional thesaurus: target#POS \\t expansion#POS \\t similarity", required = true)
+	String dt;
+
+	@Parameter(names = {"-output"}, description = "Index file", required = true)
+	String output;
+
+	/**
+	 * Reads entries, from a mapped file or a stream.
+	 */
+	interface Entries {
+
+		void read(long first, int count, int[] terms, float[] similarities) throws IOException;
+	}
+
+	public static final class Expansion {
+
+		public final String word;
+		public final float similarity;
+
+		Expansion(String word, float similarity) {
+
+			this.word = word;
+			this.similarity = similarity;
+		}
+	}
+
+	private final Dictionary dictionary;
+	private final RandomAccessFile file;
+	private final MappedByteBuffer[] chunks;
+
+	private DtIndex(Dictionary dictionary, RandomAccessFile file, MappedByteBuffer[] chunks) {
+
+		this.dictionary = dictionary;
+		this.file = file;
+		this.chunks = chunks;
+	}
+
+	public static void main(String[] args) throws Exception {
+
+		DtIndex builder = new DtIndex(null, null, null);
+		JCommander jCommander = new JCommander(builder);
+		try {
+			jCommander.parse(args);
+		} catch (ParameterException e) {
+			System.err.println(e.getMessage());
+			jCommander.setProgramName(DtIndex.class.getSimpleName());
+			jCommander.usage();
+			System.exit(1);
+		}
+		build(builder.dt, new File(builder.output));
+	}
+
+	public static DtIndex open(File location) throws IOException {
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(location), 1 << 16));
+		Dictionary dictionary;
+		try {
+			dictionary = Dictionary.read(in);
+		} finally {
+			in.close();
+		}
+
+		RandomAccessFile file = new RandomAccessFile(location, "r");
+		try {
+			long numEntries = dictionary.numEntries();
+			MappedByteBuffer[] chunks = new MappedByteBuffer[(int) ((numEntries + CHUNK_MASK) >>> CHUNK_BITS)];
+			for (int c = 0; c < chunks.length; c++) {
+				long first = (long) c << CHUNK_BITS;
+				long size = Math.min(CHUNK_MASK + 1, numEntries - first) * ENTRY_BYTES;
+				chunks[c] = file.getChannel().map(FileChannel.MapMode.READ_ONLY,
+						dictionary.size + first * ENTRY_BYTES, size);
+			}
+			return new DtIndex(dictionary, file, chunks);
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+
+		file.close();
+	}
+
+	public int numTerms() {
+
+		return dictionary.numTerms();
+	}
+
+	/**
+	 * @return the id of the term, or -1 if it isn't in the DT
+	 */
+	public int find(String word, String pos) {
+
+		int id = dictionary.first(word);
+		for (; id < dictionary.numTerms() && dictionary.word(id).equals(word); id++) {
+			if (dictionary.pos(id).equals(pos)) {
+				return id;
+			}
+		}
+		return -1;
+	}
+
+	public String word(int term) {
+
+		return dictionary.word(term);
+	}
+
+	public String pos(int term) {
+
+		return dictionary.pos(term);
+	}
+
+	public int numExpansions(int term) {
+
+		return dictionary.numExpansions(term);
+	}
+
+	/**
+	 * @return the expansions of the term ( ids ) and their similarities, most similar first
+	 */
+	public int expansions(int term, int[] terms, float[] similarities) {
+
+		int count = Math.min(numExpansions(term), terms.length);
+		readMapped(dictionary.listOffsets[term], count, terms, similarities);
+		return count;
+	}
+
+	/**
+	 * @return the topX expansions of a noun, as in filter_target_expansion_pairs.pig
+	 */
+	public List<Expansion> topNounExpansions(String word, int topX) throws IOException {
+
+		int first = dictionary.first(word);
+		int last = first;
+		while (last < dictionary.numTerms() && dictionary.word(last).equals(word)) {
+			last++;
+		}
+		return topNounExpansions(dictionary, new Entries() {
+			@Override
+			public void read(long first, int count, int[] terms, float[] similarities) {
+
+				readMapped(first, count, terms, similarities);
+			}
+		}, first, last, topX);
+	}
+
+	private void readMapped(long first, int count, int[] terms, float[] similarities) {
+
+		for (int i = 0; i < count; i++) {
+			long entry = first + i;
+			MappedByteBuffer chunk = chunks[(int) (entry >>> CHUNK_BITS)];
+			int position = (int) (entry & CHUNK_MASK) * ENTRY_BYTES;
+			terms[i] = chunk.getInt(position);
+			similarities[i] = chunk.getFloat(position + 4);
+		}
+	}
+
+	static boolean isNoun(String word, String pos) {
+
+		return ("NN".equals(pos) || "NNS".equals(pos)) && WORD.matcher(word).matches()
+				&& !NON_WORD.matcher(word).matches();
+	}
+
+	/**
+	 * Selects the topX expansions of the terms first .. last - 1, which share
+	 * their word, by merging the lists of the noun terms among them.
+	 */
+	static List<Expansion> topNounExpansions(Dictionary dictionary, Entries entries, int first, int last, int topX)
+			throws IOException {
+
+		List<Expansion> top = Lists.newArrayList();
+		int[] terms = new int[Math.min(Math.max(topX, 1), 1024)];
+		float[] similarities = new float[terms.length];
+		for (int term = first; term < last; term++) {
+			String word = dictionary.word(term);
+			if (!isNoun(word, dictionary.pos(term))) {
+				continue;
+			}
+			// the first topX nouns of each list are enough
+			long offset = dictionary.listOffsets[term];
+			long end = dictionary.listOffsets[term + 1];
+			int found = 0;
+			while (offset < end && found < topX) {
+				int count = (int) Math.min(terms.length, end - offset);
+				entries.read(offset, count, terms, similarities);
+				for (int i = 0; i < count && found < topX; i++) {
+					String expansion = dictionary.word(terms[i]);
+					if (!expansion.equals(word) && isNoun(expansion, dictionary.pos(terms[i]))) {
+						top.add(new Expansion(expansion, similarities[i]));
+						found++;
+					}
+				}
+				offset += count;
+			}
+		}
+		if (last - first > 1) {
+			Collections.sort(top, new Comparator<Expansion>() {
+				@Override
+				public int compare(Expansion a, Expansion b) {
+
+					return Float.compare(b.similarity, a.similarity);
+				}
+			});
+		}
+		return top.size() > topX ? top.subList(0, topX) : top;
+	}
+
+	/**
+	 * Terms and list offsets, in memory.
+	 */
+	static final class Dictionary {
+
+		String[] posTags;
+		int[] wordOffsets;
+		byte[] posIds;
+		byte[] words;
+		long[] listOffsets;
+		// in bytes, ie. where the entries start
+		long size;
+
+		int numTerms() {
+
+			return posIds.length;
+		}
+
+		long numEntries() {
+
+			return listOffsets[numTerms()];
+		}
+
+		int numExpansions(int term) {
+
+			return (int) (listOffsets[term + 1] - listOffsets[term]);
+		}
+
+		String word(int term) {
+
+			return new String(words, wordOffsets[term], wordOffsets[term + 1] - wordOffsets[term], Charsets.UTF_8);
+		}
+
+		String pos(int term) {
+
+			return posTags[posIds[term]];
+		}
+
+		/**
+		 * @return the first term with the word, or where it would be
+		 */
+		int first(String word) {
+
+			int low = 0;
+			int high = numTerms();
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (word(mid).compareTo(word) < 0) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+
+		static Dictionary read(DataInputStream in) throws IOException {
+
+			if (in.readInt() != MAGIC) {
+				throw new IOException("Not a DT index");
+			}
+			int version = in.readInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported DT index version " + version);
+			}
+			Dictionary dictionary = new Dictionary();
+			long size = 8;
+
+			dictionary.posTags = new String[in.readInt()];
+			size += 4;
+			for (int p = 0; p < dictionary.posTags.length; p++) {
+				dictionary.posTags[p] = in.readUTF();
+				size += 2 + dictionary.posTags[p].getBytes(Charsets.UTF_8).length;
+			}
+
+			int numTerms = in.readInt();
+			dictionary.wordOffsets = new int[numTerms + 1];
+			for (int t = 0; t <= numTerms; t++) {
+				dictionary.wordOffsets[t] = in.readInt();
+			}
+			dictionary.posIds = new byte[numTerms];
+			in.readFully(dictionary.posIds);
+			dictionary.words = new byte[in.readInt()];
+			in.readFully(dictionary.words);
+			dictionary.listOffsets = new long[numTerms + 1];
+			for (int t = 0; t <= numTerms; t++) {
+				dictionary.listOffsets[t] = in.readLong();
+			}
+			size += 4 + 4L * (numTerms + 1) + numTerms + 4 + dictionary.words.length + 8L * (numTerms + 1);
+			dictionary.size = size;
+			return dictionary;
+		}
+	}
+
+	/**
+	 * Builds an index from a DT in two passes: the first collects the terms and
+	 * counts the expansions of each target, the second writes the entries into
+	 * their lists, which are then sorted in place.
+	 */
+	public static void build(String dt, File output) throws IOException {
+
+		// (1) terms and list sizes
+		Map<String, int[]> counts = Maps.newHashMap();
+		long numEntries = 0;
+		BufferedReader reader = PartFiles.open(dt, new Configuration());
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = parse(line);
+				if (fields == null) {
+					continue;
+				}
+				count(counts, fields[0], 1);
+				count(counts, fields[1], 0);
+				numEntries++;
+			}
+		} finally {
+			reader.close();
+		}
+
+		String[] terms = counts.keySet().toArray(new String[counts.size()]);
+		Arrays.sort(terms, new Comparator<String>() {
+			@Override
+			public int compare(String a, String b) {
+
+				int cmp = word(a).compareTo(word(b));
+				return cmp != 0 ? cmp : pos(a).compareTo(pos(b));
+			}
+		});
+		Map<String, Integer> termIds = Maps.newHashMapWithExpectedSize(terms.length);
+		Map<String, Integer> posIds = Maps.newLinkedHashMap();
+		long[] listOffsets = new long[terms.length + 1];
+		for (int t = 0; t < terms.length; t++) {
+			termIds.put(terms[t], t);
+			if (!posIds.containsKey(pos(terms[t]))) {
+				posIds.put(pos(terms[t]), posIds.size());
+			}
+			listOffsets[t + 1] = listOffsets[t] + counts.get(terms[t])[0];
+		}
+		counts = null;
+		if (posIds.size() > Byte.MAX_VALUE) {
+			throw new IOException("Too many POS tags: " + posIds.size());
+		}
+		log.info("Found " + terms.length + " terms, " + numEntries + " entries");
+
+		// (2) dictionary
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(output), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(posIds.size());
+			for (String pos : posIds.keySet()) {
+				out.writeUTF(pos);
+			}
+			out.writeInt(terms.length);
+			int offset = 0;
+			byte[][] words = new byte[terms.length][];
+			for (int t = 0; t < terms.length; t++) {
+				out.writeInt(offset);
+				words[t] = word(terms[t]).getBytes(Charsets.UTF_8);
+				offset += words[t].length;
+			}
+			out.writeInt(offset);
+			for (String term : terms) {
+				out.writeByte(posIds.get(pos(term)));
+			}
+			out.writeInt(offset);
+			for (byte[] word : words) {
+				out.write(word);
+			}
+			for (long listOffset : listOffsets) {
+				out.writeLong(listOffset);
+			}
+		} finally {
+			out.close();
+		}
+
+		// (3) entries, in the order of the DT, then sorted per list
+		RandomAccessFile file = new RandomAccessFile(output, "rw");
+		try {
+			long start = file.length();
+			file.setLength(start + numEntries * ENTRY_BYTES);
+			MappedByteBuffer[] chunks = new MappedByteBuffer[(int) ((numEntries + CHUNK_MASK) >>> CHUNK_BITS)];
+			for (int c = 0; c < chunks.length; c++) {
+				long first = (long) c << CHUNK_BITS;
+				long size = Math.min(CHUNK_MASK + 1, numEntries - first) * ENTRY_BYTES;
+				chunks[c] = file.getChannel().map(FileChannel.MapMode.READ_WRITE, start + first * ENTRY_BYTES, size);
+			}
+
+			long[] fill = Arrays.copyOf(listOffsets, terms.length);
+			reader = PartFiles.open(dt, new Configuration());
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					String[] fields = parse(line);
+					if (fields == null) {
+						continue;
+					}
+					int target = termIds.get(fields[0]);
+					write(chunks, fill[target]++, termIds.get(fields[1]), Float.parseFloat(fields[2]));
+				}
+			} finally {
+				reader.close();
+			}
+
+			long[] keys = new long[0];
+			for (int t = 0; t < terms.length; t++) {
+				int count = (int) (listOffsets[t + 1] - listOffsets[t]);
+				if (keys.length < count) {
+					keys = new long[Math.max(count, 2 * keys.length)];
+				}
+				for (int i = 0; i < count; i++) {
+					MappedByteBuffer chunk = chunks[(int) ((listOffsets[t] + i) >>> CHUNK_BITS)];
+					int position = (int) ((listOffsets[t] + i) & CHUNK_MASK) * ENTRY_BYTES;
+					// descending by similarity, then ascending by id
+					int bits = Float.floatToIntBits(chunk.getFloat(position + 4));
+					int sortable = bits ^ ((bits >> 31) & 0x7fffffff);
+					keys[i] = ((long) ~sortable << 32) | (chunk.getInt(position) & 0xffffffffL);
+				}
+				Arrays.sort(keys, 0, count);
+				for (int i = 0; i < count; i++) {
+					int sortable = ~(int) (keys[i] >> 32);
+					int bits = sortable ^ ((sortable >> 31) & 0x7fffffff);
+					write(chunks, listOffsets[t] + i, (int) keys[i], Float.intBitsToFloat(bits));
+				}
+			}
+			for (MappedByteBuffer chunk : chunks) {
+				chunk.force();
+			}
+		} finally {
+			file.close();
+		}
+		log.info("Wrote " + output);
+	}
+
+	private static void write(MappedByteBuffer[] chunks, long entry, int term, float similarity) {
+
+		MappedByteBuffer chunk = chunks[(int) (entry >>> CHUNK_BITS)];
+		int position = (int) (entry & CHUNK_MASK) * ENTRY_BYTES;
+		chunk.putInt(position, term);
+		chunk.putFloat(position + 4, similarity);
+	}
+
+	private static void count(Map<String, int[]> counts, String term, int delta) {
+
+		int[] count = counts.get(term);
+		if (count == null) {
+			count = new int[1];
+			counts.put(term, count);
+		}
+		count[0] += delta;
+	}
+
+	/**
+	 * @return target, expansion and similarity, or null if the line isn't valid
+	 */
+	private static String[] parse(String line) {
+
+		String[] fields = line.split("\t");
+		if (fields.length < 3) {
+			return null;
+		}
+		try {
+			Float.parseFloat(fields[2]);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+		return fields;
+	}
+
+	private static String word(String term) {
+
+		int hash = term.lastIndexOf('#');
+		return hash < 0 ? term : term.substring(0, hash);
+	}
+
+	private static String pos(String term) {
+
+		int hash = term.lastIndexOf('#');
+		return hash < 0 ? "" : term.substring(hash + 1);
+	}
+}
@@ -0,0 +1,200 @@
+package sensim;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.pig.LoadFunc;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigSplit;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Loads the topX target-expansion pairs of a {@link DtIndex}, the same pairs as
+ * filter_target_expansion_pairs.pig computes from the DT, without parsing or
+ * sorting it:
+ *
+ * <pre>
+ * pairs = LOAD 'dt.index' USING sensim.DtIndexLoader( '50' )
+ *     as ( target:chararray, expansion:chararray, similarity:double ) ;
+ * </pre>
+ *
+ * The index is read by a single task, which streams the dictionary and reads
+ * only the heads of the expansion lists of noun targets.
+ */
+public class DtIndexLoader extends LoadFunc {
+
+	private static final TupleFactory tupleFactory = TupleFactory.getInstance();
+
+	private final int topX;
+	private IndexReader reader;
+
+	public DtIndexLoader(String topX) {
+
+		this.topX = Integer.parseInt(topX);
+	}
+
+	@Override
+	public void setLocation(String location, Job job) throws IOException {
+
+		FileInputFormat.setInputPaths(job, location);
+	}
+
+	@Override
+	public InputFormat getInputFormat() throws IOException {
+
+		return new IndexInputFormat(topX);
+	}
+
+	@Override
+	public void prepareToRead(RecordReader reader, PigSplit split) throws IOException {
+
+		this.reader = (IndexReader) reader;
+	}
+
+	@Override
+	public Tuple getNext() throws IOException {
+
+		return reader.nextKeyValue() ? reader.getCurrentValue() : null;
+	}
+
+	static class IndexInputFormat extends FileInputFormat<NullWritable, Tuple> {
+
+		private final int topX;
+
+		IndexInputFormat(int topX) {
+
+			this.topX = topX;
+		}
+
+		@Override
+		protected boolean isSplitable(JobContext context, Path file) {
+
+			return false;
+		}
+
+		@Override
+		public RecordReader<NullWritable, Tuple> createRecordReader(InputSplit split, TaskAttemptContext context) {
+
+			return new IndexReader(topX);
+		}
+	}
+
+	/**
+	 * One tuple per pair, target by target in the order of the index.
+	 */
+	static class IndexReader extends RecordReader<NullWritable, Tuple> {
+
+		private final int topX;
+		private FSDataInputStream in;
+		private DtIndex.Dictionary dictionary;
+		private DtIndex.Entries entries;
+
+		// the next target term, and the pairs of the current one
+		private int term = 0;
+		private String target;
+		private List<DtIndex.Expansion> expansions = Collections.emptyList();
+		private int next = 0;
+		private Tuple current;
+
+		IndexReader(int topX) {
+
+			this.topX = topX;
+		}
+
+		@Override
+		public void initialize(InputSplit split, TaskAttemptContext context) throws IOException {
+
+			Path path = ((FileSplit) split).getPath();
+			FileSystem fs = path.getFileSystem(context.getConfiguration());
+			in = fs.open(path);
+			// positional reads below don't depend on how far the dictionary was buffered
+			dictionary = DtIndex.Dictionary.read(new DataInputStream(new BufferedInputStream(in, 1 << 16)));
+			entries = new DtIndex.Entries() {
+
+				private byte[] buffer = new byte[0];
+
+				@Override
+				public void read(long first, int count, int[] terms, float[] similarities) throws IOException {
+
+					int length = count * DtIndex.ENTRY_BYTES;
+					if (buffer.length < length) {
+						buffer = new byte[length];
+					}
+					in.readFully(dictionary.size + first * DtIndex.ENTRY_BYTES, buffer, 0, length);
+					ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, length);
+					for (int i = 0; i < count; i++) {
+						terms[i] = bytes.getInt();
+						similarities[i] = bytes.getFloat();
+					}
+				}
+			};
+		}
+
+		@Override
+		public boolean nextKeyValue() throws IOException {
+
+			while (next == expansions.size()) {
+				if (term == dictionary.numTerms()) {
+					return false;
+				}
+				target = dictionary.word(term);
+				int last = term + 1;
+				while (last < dictionary.numTerms() && dictionary.word(last).equals(target)) {
+					last++;
+				}
+				expansions = DtIndex.topNounExpansions(dictionary, entries, term, last, topX);
+				next = 0;
+				term = last;
+			}
+			DtIndex.Expansion expansion = expansions.get(next++);
+			current = tupleFactory.newTuple(3);
+			current.set(0, target);
+			current.set(1, expansion.word);
+			// as written in the DT, not widened
+			current.set(2, Double.valueOf(Float.toString(expansion.similarity)));
+			return true;
+		}
+
+		@Override
+		public NullWritable getCurrentKey() {
+
+			return NullWritable.get();
+		}
+
+		@Override
+		public Tuple getCurrentValue() {
+
+			return current;
+		}
+
+		@Override
+		public float getProgress() {
+
+			return dictionary == null || dictionary.numTerms() == 0 ? 1 : (float) term / dictionary.numTerms();
+		}
+
+		@Override
+		public void close() throws IOException {
+
+			if (in != null) {
+				in.close();
+			}
+		}
+	}
+}
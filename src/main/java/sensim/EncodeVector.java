@@ -0,0 +1,50 @@
+package sensim;
+
+import org.apache.pig.EvalFunc;
+import org.apache.pig.builtin.OutputSchema;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.Tuple;
+
+import java.io.IOException;
+
+/**
+ * Encodes a bag of ( index:int, value:double ) entries with {@link VectorCodec},
+ * eg. the LMI vectors before compute_distance_matrix.pig joins them to every
+ * pair they take part in:
+ *
+ * <pre>
+ * DEFINE EncodeVector sensim.EncodeVector( '16' ) ;
+ * encoded = FOREACH vectors GENERATE pairid, EncodeVector( values ) as vector ;
+ * </pre>
+ *
+ * The precision is 'double', 'float', '16' or '8' ( bits per value ).
+ * CosineDistancePigFunction and MahoutVectorConverter take the encoded
+ * vector in place of the bag.
+ */
+@OutputSchema("vector:bytearray")
+public class EncodeVector extends EvalFunc<DataByteArray> {
+
+	private final VectorCodec.Precision precision;
+	private final VectorCodec.SparseVector vector = new VectorCodec.SparseVector();
+
+	public EncodeVector() {
+
+		this("double");
+	}
+
+	public EncodeVector(String precision) {
+
+		this.precision = VectorCodec.Precision.of(precision);
+	}
+
+	@Override
+	public DataByteArray exec(Tuple input) throws IOException {
+
+		if (input == null || input.size() == 0 || input.get(0) == null) {
+			return null;
+		}
+		VectorCodec.fromBag((DataBag) input.get(0), vector);
+		return new DataByteArray(VectorCodec.encode(vector, precision));
+	}
+}
@@ -0,0 +1,205 @@
+package sensim;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Evaluates clusterings of noun pairs against their BLESS labels with
+ * {@link ClusteringMetrics}, like evaluate_cw_clustering.py, but for a whole
+ * sweep of clusterings ( eg. one per pruning setting ) at once, each on its own
+ * core. As there, only the pairs that are both labeled and clustered count.
+ * <p/>
+ * Input: labels as pair \t label, clusterings as id \t pair \t cluster ( the
+ * output of CW or {@link ChineseWhispers} ).
+ * Output: clustering \t items \t metric \t P \t R \t F1, in percent.
+ * <p/>
+ * Usage:
+ * <pre>
+ * java -cp <job jar>:`hadoop classpath` sensim.EvaluateClusterings \
+ *     -labels bless_nouns_clust.tsv clustering_13 clustering_35 ... [-threads 8]
+ * </pre>
+ */
+public class EvaluateClusterings {
+
+	private static final Log log = LogFactory.getLog(EvaluateClusterings.class);
+
+	private static final Splitter TAB = Splitter.on('\t');
+
+	@Parameter(names = {"-labels"}, description = "Gold labels: pair \\t label", required = true)
+	String labels;
+
+	@Parameter(description = "Clusterings: id \\t pair \\t cluster")
+	List<String> clusterings = Lists.newArrayList();
+
+	@Parameter(names = {"-threads"}, description = "Number of clusterings evaluated in parallel", required = false)
+	int threads = Runtime.getRuntime().availableProcessors();
+
+	// pair -> dense id, and the dense class of each pair
+	private final Map<String, Integer> pairIds = Maps.newHashMap();
+	private int[] pairClasses;
+	private int numClasses;
+
+	public static void main(String[] args) throws Exception {
+
+		EvaluateClusterings evaluation = new EvaluateClusterings();
+		JCommander jCommander = new JCommander(evaluation);
+		try {
+			jCommander.parse(args);
+		} catch (ParameterException e) {
+			System.err.println(e.getMessage());
+			jCommander.setProgramName(EvaluateClusterings.class.getSimpleName());
+			jCommander.usage();
+			System.exit(1);
+		}
+		evaluation.run();
+	}
+
+	public void run() throws IOException {
+
+		readLabels();
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, clusterings.size())));
+		List<Future<String>> reports = Lists.newArrayList();
+		try {
+			for (final String clustering : clusterings) {
+				reports.add(executor.submit(new Callable<String>() {
+					@Override
+					public String call() throws IOException {
+						return report(clustering, evaluate(clustering));
+					}
+				}));
+			}
+
+			PrintWriter out = new PrintWriter(new OutputStreamWriter(System.out, Charsets.UTF_8));
+			out.println("Clustering\tItems\tMetric\tP\tR\tF1");
+			for (Future<String> report : reports) {
+				out.print(report.get());
+			}
+			out.flush();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void readLabels() throws IOException {
+
+		Map<String, Integer> classIds = Maps.newHashMap();
+		int[] classes = new int[1024];
+		BufferedReader reader = PartFiles.open(labels, new Configuration());
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				Iterator<String> fields = TAB.split(line).iterator();
+				String pair = fields.next();
+				if (!fields.hasNext() || pairIds.containsKey(pair)) {
+					continue;
+				}
+				String label = fields.next().trim();
+				Integer classId = classIds.get(label);
+				if (classId == null) {
+					classId = classIds.size();
+					classIds.put(label, classId);
+				}
+				int pairId = pairIds.size();
+				pairIds.put(pair, pairId);
+				if (pairId == classes.length) {
+					classes = Arrays.copyOf(classes, 2 * classes.length);
+				}
+				classes[pairId] = classId;
+			}
+		} finally {
+			reader.close();
+		}
+		pairClasses = Arrays.copyOf(classes, pairIds.size());
+		numClasses = classIds.size();
+		log.info("Read " + pairIds.size() + " labeled pairs in " + numClasses + " classes");
+	}
+
+	/**
+	 * Only reads the shared label dictionary, so clusterings can be evaluated concurrently.
+	 */
+	ClusteringMetrics evaluate(String clustering) throws IOException {
+
+		int[] classes = new int[pairClasses.length];
+		int[] clusters = new int[pairClasses.length];
+		boolean[] seen = new boolean[pairClasses.length];
+		LongIntHashMap clusterIds = new LongIntHashMap();
+		int numItems = 0;
+
+		BufferedReader reader = PartFiles.open(clustering, new Configuration());
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				Iterator<String> fields = TAB.split(line).iterator();
+				fields.next();
+				if (!fields.hasNext()) {
+					continue;
+				}
+				Integer pairId = pairIds.get(fields.next());
+				if (pairId == null || seen[pairId] || !fields.hasNext()) {
+					continue;
+				}
+				long cluster = Long.parseLong(fields.next().trim());
+				int clusterId = clusterIds.get(cluster, -1);
+				if (clusterId < 0) {
+					clusterId = clusterIds.size();
+					clusterIds.put(cluster, clusterId);
+				}
+				seen[pairId] = true;
+				classes[numItems] = pairClasses[pairId];
+				clusters[numItems] = clusterId;
+				numItems++;
+			}
+		} finally {
+			reader.close();
+		}
+		return new ClusteringMetrics(Arrays.copyOf(classes, numItems), Arrays.copyOf(clusters, numItems),
+				numClasses, clusterIds.size());
+	}
+
+	private static String report(String clustering, ClusteringMetrics metrics) {
+
+		StringBuilder report = new StringBuilder();
+		append(report, clustering, metrics, "B-Cubed", metrics.bCubed());
+		append(report, clustering, metrics, "MUC", metrics.muc());
+		append(report, clustering, metrics, "Pairwise", metrics.pairwise());
+		append(report, clustering, metrics, "CEAF-m", metrics.mentionCeaf());
+		append(report, clustering, metrics, "CEAF-e", metrics.entityCeaf());
+		return report.toString();
+	}
+
+	private static void append(StringBuilder report, String clustering, ClusteringMetrics metrics, String metric,
+	                           ClusteringMetrics.Score score) {
+
+		report.append(clustering).append('\t').append(metrics.numItems()).append('\t').append(metric)
+				.append(String.format("\t%.2f\t%.2f\t%.2f\n", 100 * score.precision(), 100 * score.recall(),
+						100 * score.f1()));
+	}
+}
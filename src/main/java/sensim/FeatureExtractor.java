@@ -16,7 +16,6 @@ import de.tudarmstadt.ukp.dkpro.core.api.syntax.type.dependency.Dependency;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.pig.data.*;
-import org.apache.uima.fit.factory.JCasFactory;
 import org.apache.uima.fit.util.JCasUtil;
 import org.jgrapht.alg.ConnectivityInspector;
 import org.jgrapht.alg.KShortestPaths;
@@ -36,6 +35,7 @@ import org.jgrapht.alg.BronKerboschCliqueFinder;
 import org.jgrapht.alg.FloydWarshallShortestPaths;
 import org.jgrapht.graph.SimpleGraph;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
@@ -63,6 +63,7 @@ public class FeatureExtractor extends EvalFunc<DataBag> {
 	private UIMAXMLConverterHelper uimaXMLConverterHelper;
 	private BagFactory bagFactory = BagFactory.getInstance();
 	private TupleFactory tupleFactory = TupleFactory.getInstance();
+	private final UdfMetrics metrics = new UdfMetrics(FeatureExtractor.class);
 
 	private int numMaxHops = 5;
 	private int numSkipsInSubtree = 0;
@@ -74,9 +75,13 @@ public class FeatureExtractor extends EvalFunc<DataBag> {
 	private final Class<? extends Annotation> selectionType;
 
 	enum Counters {
-		FEATURES
+		FEATURES, PRUNED_FEATURES
 	}
 
+	// patterns to keep, if given; read on first use, s. frequent_patterns in extract_features.pig
+	private String patternLocation;
+	private LongIntHashMap frequentPatterns;
+
 	public FeatureExtractor() throws UIMAException {
 
 		this("NOUN");
@@ -84,8 +89,8 @@ public class FeatureExtractor extends EvalFunc<DataBag> {
 
 	public FeatureExtractor(String selectionType) throws UIMAException {
 
-		uimaXMLConverterHelper = new UIMAXMLConverterHelper(false);
-		jCas = JCasFactory.createJCas();
+		uimaXMLConverterHelper = new UIMAXMLConverterHelper(false, UimaResources.typeSystem());
+		jCas = UimaResources.borrowJCas();
 
 		switch (SelectionType.valueOf(selectionType)) {
 
@@ -114,14 +119,50 @@ public class FeatureExtractor extends EvalFunc<DataBag> {
 		this.numSkipsInSubtree = Integer.parseInt(numSkipsInSubtree);
 	}
 
+	/**
+	 * @param patternLocation a file or directory of part files with one pattern
+	 *                        per line ( first column ); features with other
+	 *                        patterns are dropped before they are emitted
+	 */
+	public FeatureExtractor(String selectionType, String numMaxHops, String numSkipsInSubtree,
+	                        String patternLocation) throws UIMAException {
+
+		this(selectionType, numMaxHops, numSkipsInSubtree);
+		this.patternLocation = patternLocation;
+	}
+
 	@Override
 	public DataBag exec(Tuple input) throws IOException {
 
+		metrics.begin();
+		DataBag features = null;
+		try {
+			features = extractFeatures(input);
+			return features;
+		} finally {
+			metrics.end(input, features == null ? 0 : features.size());
+		}
+	}
+
+	@Override
+	public void finish() {
+
+		metrics.finish();
+		UimaResources.release(jCas);
+	}
+
+	private DataBag extractFeatures(Tuple input) throws IOException {
+
 		if (input == null || input.size() == 0 || input.get(0) == null) {
+			metrics.skip("NULL_INPUT");
 			return null;
 		}
 
 		DataBag patternBag = bagFactory.newDefaultBag();
+		if (patternLocation != null && frequentPatterns == null) {
+			frequentPatterns = readPatterns(patternLocation);
+		}
+		long numPruned = 0;
 
 		try {
 
@@ -141,6 +182,7 @@ public class FeatureExtractor extends EvalFunc<DataBag> {
 				// insert dependencies into a graph and extract shortest path
 				UndirectedGraph<Token, DependencyEdge> graph = makeDependencyGraph(sentence);
 				if (graph == null) {
+					metrics.skip("FEWER_THAN_2_NOUNS");
 					return null;
 				}
 
@@ -150,30 +192,62 @@ public class FeatureExtractor extends EvalFunc<DataBag> {
 					nounPair.add((String) input.get(1));
 					nounPair.add((String) input.get(2));
 
-					patternBag.addAll(getAllSubtrees(sentence, nounPair, graph));
+					DataBag subtrees = getAllSubtrees(sentence, nounPair, graph);
+					if (frequentPatterns == null) {
+						patternBag.addAll(subtrees);
+					} else {
+						for (Tuple feature : subtrees) {
+							if (frequentPatterns.containsKey(Fingerprints.of(feature.get(2)))) {
+								patternBag.add(feature);
+							} else {
+								numPruned++;
+							}
+						}
+					}
 
 				}
 				else {
+					metrics.skip("NO_PAIR");
 					return null;
 				}
 			}
 
-			// emit some stats
+			// emit some stats ( there are no counters outside of Pig, eg. in LocalPipelineRunner )
 			PigStatusReporter pigStatusReporter = PigStatusReporter.getInstance();
-			if (pigStatusReporter != null) {
+			if (pigStatusReporter != null && pigStatusReporter.getCounter(Counters.FEATURES) != null) {
 				pigStatusReporter.getCounter(Counters.FEATURES).increment(patternBag.size());
+				pigStatusReporter.getCounter(Counters.PRUNED_FEATURES).increment(numPruned);
 			}
 
 		} catch (UIMAException e) {
+			metrics.error(e);
 			e.printStackTrace();
 		} catch (InterruptedException e) {
+			metrics.error(e);
 			e.printStackTrace();
 		} catch (SAXException e) {
+			metrics.error(e);
 			e.printStackTrace();
 		}
 		return patternBag;
 	}
 
+	private static LongIntHashMap readPatterns(String location) throws IOException {
+
+		LongIntHashMap patterns = new LongIntHashMap(1 << 16);
+		BufferedReader reader = PartFiles.open(location);
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int tab = line.indexOf('\t');
+				patterns.put(Fingerprints.of(tab < 0 ? line : line.substring(0, tab)), 1);
+			}
+		} finally {
+			reader.close();
+		}
+		return patterns;
+	}
+
 	/**
 	 * Inserts all dependencies of an annotated sentence into a graph
 	 * with governor and dependent as vertices and dependency type as
@@ -230,6 +304,7 @@ public class FeatureExtractor extends EvalFunc<DataBag> {
 			}
 		}
 		if (pair.size() != wordPair.size()) {
+			metrics.skip("PAIR_NOT_IN_SENTENCE");
 			return dataBag;
 		}
 
@@ -245,6 +320,7 @@ public class FeatureExtractor extends EvalFunc<DataBag> {
 
 		// Beware: magic number! dictacted by the powerSet function which only works for N <= 30
 		if (tokenSet.size() > 30) {
+			metrics.skip("MORE_THAN_30_TOKENS");
 			return dataBag;
 		}
 
@@ -0,0 +1,179 @@
+package sensim;
+
+import com.google.common.primitives.Ints;
+import org.apache.pig.EvalFunc;
+import org.apache.pig.builtin.OutputSchema;
+import org.apache.pig.data.BagFactory;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Builds the numeric feature vector of one noun pair from its observed
+ * ( pattern, frequency ) combinations, s. make_feature_vectors.pig.
+ * <p/>
+ * The frequency-pruned pattern and pair dictionaries written by
+ * get_pruned_pair_and_pattern_dicts.pig are loaded once per task into
+ * compact in-memory maps keyed by {@link Fingerprints}. This replaces the
+ * reduce-side joins against both dictionaries, whose reducers suffered from
+ * the Zipfian pattern distribution.
+ * <p/>
+ * Input:  ( pair:tuple( noun1, noun2 ), patterns:bag{ ( pattern, freq ) } )<br/>
+ * Output: a bag with the pair's vector, or an empty bag if the pair is not in
+ * the dictionary or has no more than <code>minNumPat</code> patterns that occur
+ * more than <code>minPatFreq</code> times with it.
+ */
+@OutputSchema("vectors:bag {vector:tuple (pairid:int, pair:tuple (noun1:chararray, noun2:chararray), " +
+		"numsentences:long, numpatterns:long, values:bag {t:tuple (idx:int, cnt:long)})}")
+public class FeatureVectorBuilder extends EvalFunc<DataBag> {
+
+	private final String patternDir;
+	private final String pairDir;
+	private final long minPatFreq;
+	private final int minNumPat;
+
+	private BagFactory bagFactory = BagFactory.getInstance();
+	private TupleFactory tupleFactory = TupleFactory.getInstance();
+
+	// pattern fingerprint -> pattern id
+	private LongIntHashMap patternIds;
+	// pair fingerprint -> row in the arrays below
+	private LongIntHashMap pairRows;
+	private int[] pairIds;
+	private long[] pairNumSentences;
+	private long[] pairNumPatterns;
+
+	public FeatureVectorBuilder(String patternDir, String pairDir, String minPatFreq, String minNumPat) {
+
+		this.patternDir = patternDir;
+		this.pairDir = pairDir;
+		this.minPatFreq = Long.parseLong(minPatFreq);
+		this.minNumPat = Integer.parseInt(minNumPat);
+	}
+
+	@Override
+	public DataBag exec(Tuple input) throws IOException {
+
+		if (input == null || input.size() < 2 || input.get(0) == null || input.get(1) == null) {
+			return null;
+		}
+
+		// Note: can't load the dictionaries in the constructor, which runs on the front end, too
+		if (patternIds == null) {
+			loadDictionaries();
+		}
+
+		DataBag result = bagFactory.newDefaultBag();
+
+		Tuple pair = (Tuple) input.get(0);
+		int row = pairRows.get(Fingerprints.of(pair), -1);
+		if (row < 0) {
+			return result;
+		}
+
+		DataBag patterns = (DataBag) input.get(1);
+		long[][] entries = new long[(int) patterns.size()][];
+		int numEntries = 0;
+		for (Tuple t : patterns) {
+			if (t.get(0) == null || t.get(1) == null) {
+				continue;
+			}
+			long freq = ((Number) t.get(1)).longValue();
+			// frequency pruning: keep only patterns that occur more than minPatFreq with this pair
+			if (freq <= minPatFreq) {
+				continue;
+			}
+			int patternId = patternIds.get(Fingerprints.of(t.get(0)), -1);
+			if (patternId >= 0) {
+				entries[numEntries++] = new long[]{patternId, freq};
+			}
+		}
+
+		// more frequency pruning: throw away pairs with too few patterns
+		if (numEntries <= minNumPat || numEntries == 0) {
+			return result;
+		}
+
+		Arrays.sort(entries, 0, numEntries, new Comparator<long[]>() {
+			@Override
+			public int compare(long[] a, long[] b) {
+				return Ints.compare((int) a[0], (int) b[0]);
+			}
+		});
+		DataBag values = bagFactory.newDefaultBag();
+		for (int i = 0; i < numEntries; i++) {
+			Tuple value = tupleFactory.newTuple(2);
+			value.set(0, (int) entries[i][0]);
+			value.set(1, entries[i][1]);
+			values.add(value);
+		}
+
+		Tuple vector = tupleFactory.newTuple(5);
+		vector.set(0, pairIds[row]);
+		vector.set(1, pair);
+		vector.set(2, pairNumSentences[row]);
+		vector.set(3, pairNumPatterns[row]);
+		vector.set(4, values);
+		result.add(vector);
+		return result;
+	}
+
+	private void loadDictionaries() throws IOException {
+
+		// format: id \t pattern \t numsentences \t numpairs
+		LongIntHashMap ids = new LongIntHashMap(1 << 16);
+		BufferedReader reader = PartFiles.open(patternDir);
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split("\t");
+				if (fields.length < 2) {
+					continue;
+				}
+				ids.put(Fingerprints.of(fields[1]), Integer.parseInt(fields[0]));
+			}
+		} finally {
+			reader.close();
+		}
+
+		// format: id \t (noun1,noun2) \t numsentences \t numpatterns
+		LongIntHashMap rows = new LongIntHashMap(1 << 16);
+		int[] pids = new int[1 << 16];
+		long[] numSentences = new long[pids.length];
+		long[] numPatterns = new long[pids.length];
+		int numRows = 0;
+		reader = PartFiles.open(pairDir);
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split("\t");
+				if (fields.length < 4) {
+					continue;
+				}
+				if (numRows == pids.length) {
+					pids = Arrays.copyOf(pids, 2 * numRows);
+					numSentences = Arrays.copyOf(numSentences, 2 * numRows);
+					numPatterns = Arrays.copyOf(numPatterns, 2 * numRows);
+				}
+				pids[numRows] = Integer.parseInt(fields[0]);
+				numSentences[numRows] = Long.parseLong(fields[2]);
+				numPatterns[numRows] = Long.parseLong(fields[3]);
+				rows.put(Fingerprints.of(fields[1]), numRows);
+				numRows++;
+			}
+		} finally {
+			reader.close();
+		}
+
+		pairRows = rows;
+		pairIds = pids;
+		pairNumSentences = numSentences;
+		pairNumPatterns = numPatterns;
+		patternIds = ids;
+	}
+}
@@ -0,0 +1,30 @@
+package sensim;
+
+import org.apache.pig.EvalFunc;
+import org.apache.pig.builtin.OutputSchema;
+import org.apache.pig.data.Tuple;
+
+import java.io.IOException;
+
+/**
+ * Returns the 64-bit {@link Fingerprints fingerprint} of a value, eg. to
+ * recognize sentences that have been seen in an earlier batch without
+ * keeping their text around, s. ingest_batch.pig. Given several values, eg.
+ * a parse and the parameters it is processed with, returns the fingerprint
+ * of all of them together, s. cache.pig.
+ */
+@OutputSchema("fingerprint:long")
+public class Fingerprint extends EvalFunc<Long> {
+
+	@Override
+	public Long exec(Tuple input) throws IOException {
+
+		if (input == null || input.size() == 0 || input.get(0) == null) {
+			return null;
+		}
+		if (input.size() == 1) {
+			return Fingerprints.of(input.get(0));
+		}
+		return Fingerprints.of(input.getAll());
+	}
+}
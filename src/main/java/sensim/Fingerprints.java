@@ -0,0 +1,68 @@
+package sensim;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.util.List;
+
+/**
+ * 64-bit content fingerprints for Pig values, e.g. patterns, noun pairs or
+ * whole sentences. Tuples and other non-string values are fingerprinted via
+ * their Pig text representation, ie. (noun1,noun2) for a pair.
+ * <p/>
+ * The fingerprints are stable across JVMs and runs, so they can be stored
+ * on disk and compared with fingerprints computed later.
+ */
+public final class Fingerprints {
+
+	private static final HashFunction HASH = Hashing.murmur3_128();
+
+	private Fingerprints() {
+	}
+
+	public static long of(String value) {
+
+		return HASH.hashString(value, Charsets.UTF_8).asLong();
+	}
+
+	public static long of(Object value) {
+
+		if (value instanceof String) {
+			return of((String) value);
+		}
+		return of(String.valueOf(value));
+	}
+
+	/**
+	 * Fingerprint of a sequence of values, eg. the fields of a tuple. Each value
+	 * is prefixed by its length, so ("a,b", "c") and ("a", "b,c") differ.
+	 */
+	public static long of(List<?> values) {
+
+		Hasher hasher = HASH.newHasher();
+		for (Object value : values) {
+			String text = String.valueOf(value);
+			hasher.putInt(text.length());
+			hasher.putString(text, Charsets.UTF_8);
+		}
+		return hasher.hash().asLong();
+	}
+
+	/**
+	 * Combines a fingerprint with a seed, eg. to derive several independent
+	 * hash values from one fingerprint.
+	 */
+	public static long mix(long fingerprint, long seed) {
+
+		// finalizer of MurmurHash3 ( fmix64 )
+		long h = fingerprint ^ (seed * 0x9E3779B97F4A7C15L);
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
@@ -0,0 +1,57 @@
+package sensim;
+
+import org.apache.pig.EvalFunc;
+import org.apache.pig.builtin.OutputSchema;
+import org.apache.pig.data.Tuple;
+
+import java.io.IOException;
+
+/**
+ * Tells whether a fingerprint is seen for the first time in this task, eg. to
+ * drop duplicates map-side before they are serialized and shuffled:
+ *
+ * <pre>
+ * DEFINE FirstOccurrence sensim.FirstOccurrence( '1000000' ) ;
+ * firsts = FILTER keyed BY FirstOccurrence( fp ) ;
+ * </pre>
+ *
+ * The fingerprints seen are kept in a hash set of at most maxSize entries
+ * ( about 24 bytes each ), which starts over once it is full. Hence some
+ * duplicates pass, but no first occurrence is ever dropped; a GROUP on the
+ * fingerprint downstream removes the rest, s. dedup_sentences.pig.
+ */
+@OutputSchema("first:boolean")
+public class FirstOccurrence extends EvalFunc<Boolean> {
+
+	private final int maxSize;
+	private final LongIntHashMap seen;
+
+	public FirstOccurrence() {
+
+		this("1000000");
+	}
+
+	public FirstOccurrence(String maxSize) {
+
+		this.maxSize = Integer.parseInt(maxSize);
+		this.seen = new LongIntHashMap(Math.min(this.maxSize, 1 << 16));
+	}
+
+	@Override
+	public Boolean exec(Tuple input) throws IOException {
+
+		if (input == null || input.size() == 0 || input.get(0) == null) {
+			return null;
+		}
+
+		long fingerprint = (Long) input.get(0);
+		if (seen.containsKey(fingerprint)) {
+			return false;
+		}
+		if (seen.size() >= maxSize) {
+			seen.clear();
+		}
+		seen.put(fingerprint, 1);
+		return true;
+	}
+}
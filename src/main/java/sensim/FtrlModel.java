@@ -0,0 +1,143 @@
+package sensim;
+
+/**
+ * One-vs-rest logistic regression trained online with FTRL-Proximal[1] on
+ * hashed sparse features: feature i of an example goes to one of 2^bits
+ * buckets, so the model has a fixed size however many patterns there are,
+ * and L1 regularization keeps most weights at exactly 0.
+ * <p/>
+ * Updates are lock-free: several threads may call {@link #update} at the same
+ * time ( Hogwild[2] ). Since examples are sparse and rarely share buckets, lost
+ * updates are rare and don't hurt convergence; results are reproducible only
+ * with a single thread, though.
+ * <p/>
+ * [1] McMahan et al. Ad Click Prediction: a View from the Trenches. KDD 2013<br/>
+ * [2] Niu et al. Hogwild!: A Lock-Free Approach to Parallelizing Stochastic Gradient Descent. NIPS 2011
+ */
+public class FtrlModel {
+
+	private final int numClasses;
+	private final int mask;
+	private final double alpha;
+	private final double beta;
+	private final double l1;
+	private final double l2;
+
+	// per class and bucket, at class * size + bucket
+	private final float[] z;
+	private final float[] n;
+
+	public FtrlModel(int numClasses, int bits, double alpha, double beta, double l1, double l2) {
+
+		if (bits < 1 || bits > 30 || ((long) numClasses << bits) > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Can't hold " + numClasses + " classes of 2^" + bits + " buckets");
+		}
+		this.numClasses = numClasses;
+		this.mask = (1 << bits) - 1;
+		this.alpha = alpha;
+		this.beta = beta;
+		this.l1 = l1;
+		this.l2 = l2;
+		this.z = new float[numClasses << bits];
+		this.n = new float[numClasses << bits];
+	}
+
+	public int numClasses() {
+
+		return numClasses;
+	}
+
+	/**
+	 * @return the bucket of a feature; bucket 0 is reserved for the bias
+	 */
+	public int bucket(int feature) {
+
+		int bucket = (int) Fingerprints.mix(feature, 0) & mask;
+		return bucket == 0 ? 1 : bucket;
+	}
+
+	/**
+	 * One step of FTRL-Proximal for each class, on an example with the features
+	 * buckets[from .. to - 1] and the given values ( plus the bias ).
+	 */
+	public void update(int[] buckets, float[] values, int from, int to, int label) {
+
+		for (int c = 0; c < numClasses; c++) {
+			int offset = c * (mask + 1);
+			double gradient = probability(offset, buckets, values, from, to) - (c == label ? 1 : 0);
+			step(offset, gradient);
+			for (int i = from; i < to; i++) {
+				step(offset + buckets[i], gradient * values[i]);
+			}
+		}
+	}
+
+	/**
+	 * @return the probability of each class ( not normalized across classes )
+	 */
+	public double[] predict(int[] buckets, float[] values, int from, int to) {
+
+		double[] probabilities = new double[numClasses];
+		for (int c = 0; c < numClasses; c++) {
+			probabilities[c] = probability(c * (mask + 1), buckets, values, from, to);
+		}
+		return probabilities;
+	}
+
+	/**
+	 * @return the most probable class
+	 */
+	public int classify(int[] buckets, float[] values, int from, int to) {
+
+		double[] probabilities = predict(buckets, values, from, to);
+		int best = 0;
+		for (int c = 1; c < numClasses; c++) {
+			if (probabilities[c] > probabilities[best]) {
+				best = c;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @return number of non-zero weights over all classes
+	 */
+	public long numNonZero() {
+
+		long count = 0;
+		for (int i = 0; i < z.length; i++) {
+			if (weight(i) != 0) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private double probability(int offset, int[] buckets, float[] values, int from, int to) {
+
+		double score = weight(offset);
+		for (int i = from; i < to; i++) {
+			score += weight(offset + buckets[i]) * values[i];
+		}
+		// bounded, as in the paper
+		score = Math.max(-35, Math.min(35, score));
+		return 1.0 / (1.0 + Math.exp(-score));
+	}
+
+	private double weight(int i) {
+
+		double zi = z[i];
+		if (Math.abs(zi) <= l1) {
+			return 0;
+		}
+		return -(zi - Math.signum(zi) * l1) / ((beta + Math.sqrt(n[i])) / alpha + l2);
+	}
+
+	private void step(int i, double gradient) {
+
+		double ni = n[i];
+		double sigma = (Math.sqrt(ni + gradient * gradient) - Math.sqrt(ni)) / alpha;
+		z[i] += gradient - sigma * weight(i);
+		n[i] = (float) (ni + gradient * gradient);
+	}
+}
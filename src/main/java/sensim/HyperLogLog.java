@@ -0,0 +1,122 @@
+package sensim;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A plain HyperLogLog cardinality sketch over 64-bit fingerprints
+ * ( s. Flajolet et al. 2007 ). With the default precision of 10 the
+ * sketch takes 1024 bytes and has a standard error of about 3%.
+ * <p/>
+ * Sketches of the same precision can be merged, which makes them usable
+ * as intermediate values of algebraic Pig functions.
+ */
+public class HyperLogLog {
+
+	public static final int DEFAULT_PRECISION = 10;
+
+	private final int precision;
+	private final byte[] registers;
+
+	public HyperLogLog() {
+
+		this(DEFAULT_PRECISION);
+	}
+
+	public HyperLogLog(int precision) {
+
+		Preconditions.checkArgument(precision >= 4 && precision <= 16,
+				"Precision must be in [4, 16], not " + precision);
+		this.precision = precision;
+		this.registers = new byte[1 << precision];
+	}
+
+	private HyperLogLog(int precision, byte[] registers) {
+
+		this.precision = precision;
+		this.registers = registers;
+	}
+
+	public int getPrecision() {
+
+		return precision;
+	}
+
+	/**
+	 * Adds a fingerprint as obtained by {@link Fingerprints#of(Object)}.
+	 */
+	public void offer(long hash) {
+
+		int idx = (int) (hash >>> (64 - precision));
+		// position of the leftmost 1-bit in the remaining bits; the or-ed
+		// sentinel bit bounds the rank for hashes with all remaining bits 0
+		long rest = (hash << precision) | (1L << (precision - 1));
+		byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+		if (rank > registers[idx]) {
+			registers[idx] = rank;
+		}
+	}
+
+	public void merge(HyperLogLog other) {
+
+		Preconditions.checkArgument(other.precision == precision,
+				"Cannot merge sketches of precision " + precision + " and " + other.precision);
+		for (int i = 0; i < registers.length; i++) {
+			if (other.registers[i] > registers[i]) {
+				registers[i] = other.registers[i];
+			}
+		}
+	}
+
+	public long cardinality() {
+
+		int m = registers.length;
+		double sum = 0.0;
+		int zeros = 0;
+		for (byte r : registers) {
+			sum += 1.0 / (1L << r);
+			if (r == 0) {
+				zeros++;
+			}
+		}
+		double estimate = alpha(m) * m * m / sum;
+
+		// small range correction: linear counting
+		if (estimate <= 2.5 * m && zeros > 0) {
+			estimate = m * Math.log((double) m / zeros);
+		}
+		return Math.round(estimate);
+	}
+
+	private static double alpha(int m) {
+
+		switch (m) {
+			case 16:
+				return 0.673;
+			case 32:
+				return 0.697;
+			case 64:
+				return 0.709;
+			default:
+				return 0.7213 / (1.0 + 1.079 / m);
+		}
+	}
+
+	/**
+	 * @return the precision followed by the raw registers
+	 */
+	public byte[] toBytes() {
+
+		byte[] bytes = new byte[registers.length + 1];
+		bytes[0] = (byte) precision;
+		System.arraycopy(registers, 0, bytes, 1, registers.length);
+		return bytes;
+	}
+
+	public static HyperLogLog fromBytes(byte[] bytes, int offset) {
+
+		int precision = bytes[offset];
+		byte[] registers = new byte[1 << precision];
+		System.arraycopy(bytes, offset + 1, registers, 0, registers.length);
+		return new HyperLogLog(precision, registers);
+	}
+}
@@ -4,25 +4,49 @@ package sensim;
 import org.apache.pig.EvalFunc;
 import org.apache.pig.FuncSpec;
 import org.apache.pig.builtin.OutputSchema;
+import org.apache.pig.data.DataBag;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.impl.logicalLayer.FrontendException;
 
-import java.io.File;
+import java.io.BufferedReader;
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Scanner;
 
+/**
+ * Maps previous ids to new ids, eg. the pattern ids of the dictionary to the
+ * gap-free ones of the final vectors, s. make_feature_vectors.pig. The map is
+ * either passed along as a scalar, a bag of ( previous id, new id ) tuples:
+ *
+ * <pre>
+ * DEFINE IndexToIndexMapper sensim.IndexToIndexMapper() ;
+ * idxmap = FOREACH ( GROUP ids ALL ) GENERATE ids.( previd, newid ) as map ;
+ * mapped = FOREACH rows GENERATE IndexToIndexMapper( idx, idxmap.map ) ;
+ * </pre>
+ *
+ * which makes Pig compute the map before the rows, or read from a file.
+ * Previous ids without a new one are mapped to null.
+ */
 @OutputSchema("index:long")
 public class IndexToIndexMapper extends EvalFunc<Integer> {
 
-	private final File afile;
-	private Map<Integer, Integer> idxMap;
+	// null if the map is passed along with each call
+	private final String pathToIdxMap;
+	private LongIntHashMap idxMap;
+	// the map is a scalar, ie. the same bag for every call within a task
+	private DataBag cachedIdxMap;
 
+	public IndexToIndexMapper() {
+
+		this(null);
+	}
+
+	/**
+	 * @param pathToIdxMap a file or directory of part files ( local or on HDFS )
+	 *                     with lines of the form: previous id \t new id
+	 */
 	public IndexToIndexMapper( String pathToIdxMap ) {
 
-		afile = new File( pathToIdxMap ) ;
+		this.pathToIdxMap = pathToIdxMap ;
 	}
 
 	@Override
@@ -32,29 +56,46 @@ public class IndexToIndexMapper extends EvalFunc<Integer> {
 			return null ;
 		}
 		
+		if ( pathToIdxMap == null ) {
+			if ( input.size() < 2 || input.get(1) == null ) {
+				throw new IOException( "No map of ids given" ) ;
+			}
+			DataBag entries = (DataBag) input.get(1) ;
+			if ( entries != cachedIdxMap ) {
+				LongIntHashMap map = new LongIntHashMap( (int) entries.size() ) ;
+				for ( Tuple entry : entries ) {
+					if ( entry.get(0) != null && entry.get(1) != null ) {
+						map.put( ((Number) entry.get(0)).longValue(), ((Number) entry.get(1)).intValue() ) ;
+					}
+				}
+				idxMap = map ;
+				cachedIdxMap = entries ;
+			}
+		}
+
 		// check if idxMap exists, else instantiate it
-		// Note: can't instantiate it in Constructor because afile doesn't exist 
-		// yet, s. make_feature_vectors.pig
+		// Note: can't instantiate it in Constructor, which runs on the front end, too
 		if ( idxMap == null ) {
-			// Note: a Scanner tokenizes input stream by whitespace (per default)
-			Scanner sc = new Scanner( afile ) ;
-			idxMap = new HashMap<Integer, Integer>() ;
-			while ( sc.hasNext() ) {
-				// pick pairs of tokens
-				idxMap.put(sc.nextInt(), sc.nextInt()) ;
+			BufferedReader reader = PartFiles.open( pathToIdxMap ) ;
+			LongIntHashMap map = new LongIntHashMap( 1 << 16 ) ;
+			try {
+				String line ;
+				while (( line = reader.readLine() ) != null ) {
+					// pick pairs of tokens
+					String[] tokens = line.trim().split( "\\s+" ) ;
+					if ( tokens.length == 2 ) {
+						map.put( Long.parseLong( tokens[0] ), Integer.parseInt( tokens[1] )) ;
+					}
+				}
+			} finally {
+				reader.close() ;
 			}
-			sc.close() ;
-
+			idxMap = map ;
 		}
 
-		int id = (Integer)input.get(0) ;
-		int idx ;
-		if ( idxMap.containsKey( id )) {
-			
-			// Note: HashMap.get( key ) returns value
-			idx = idxMap.get( id ) ;
-
-		} else {
+		long id = ((Number) input.get(0)).longValue() ;
+		int idx = idxMap.get( id, -1 ) ;
+		if ( idx < 0 ) {
 			return null ;
 		}
 		return idx;
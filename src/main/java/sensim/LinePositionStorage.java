@@ -0,0 +1,91 @@
+package sensim;
+
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.pig.FileInputLoadFunc;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigSplit;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+
+import java.io.IOException;
+
+/**
+ * Loads text lines, like PigStorage( '\n' ), together with the input split
+ * they are read from and their position within it:
+ *
+ * <pre>
+ * lines = LOAD 'corpus' USING sensim.LinePositionStorage()
+ *     as ( split:chararray, position:long, line:chararray ) ;
+ * </pre>
+ *
+ * A split is named by its file and start offset, which sort in the order of the
+ * lines, so every load of the same input yields the same splits and positions,
+ * however the splits are sized or combined. {@link SplitOffsetId} turns them into
+ * gap-free ids in the mappers, from the number of lines per split.
+ */
+public class LinePositionStorage extends FileInputLoadFunc {
+
+	private TupleFactory tupleFactory = TupleFactory.getInstance();
+	private RecordReader<LongWritable, Text> reader;
+	private String split;
+	private long position;
+
+	@Override
+	public void setLocation(String location, Job job) throws IOException {
+
+		FileInputFormat.setInputPaths(job, location);
+	}
+
+	@Override
+	public InputFormat getInputFormat() throws IOException {
+
+		return new TextInputFormat();
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public void prepareToRead(RecordReader reader, PigSplit split) throws IOException {
+
+		// called for each of the splits Pig combines into one, with that split current
+		this.reader = reader;
+		this.split = name(split.getWrappedSplit());
+		this.position = 0;
+	}
+
+	@Override
+	public Tuple getNext() throws IOException {
+
+		try {
+			if (!reader.nextKeyValue()) {
+				return null;
+			}
+			Tuple tuple = tupleFactory.newTuple(3);
+			tuple.set(0, split);
+			tuple.set(1, position++);
+			tuple.set(2, reader.getCurrentValue().toString());
+			return tuple;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading " + split);
+		}
+	}
+
+	/**
+	 * @return file and start offset, the latter zero-padded so names sort by file, then offset
+	 */
+	static String name(InputSplit split) {
+
+		if (split instanceof FileSplit) {
+			FileSplit fileSplit = (FileSplit) split;
+			return fileSplit.getPath() + "@" + String.format("%019d", fileSplit.getStart());
+		}
+		return String.valueOf(split);
+	}
+}
@@ -0,0 +1,205 @@
+package sensim;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import dima.MatrixMarketStorageWithCounts;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Step (11a) of {@link LocalPipelineRunner}: computes the cosine distances of
+ * all pairs of vectors that share at least one feature, as compute_distance_matrix.pig
+ * does, and writes them in the same MatrixMarket format as {@link MatrixMarketStorageWithCounts}.
+ * <p/>
+ * Instead of replicating and joining vectors, the candidates of each row are
+ * found via an inverted index from features to vectors. Rows are handed out to
+ * a pool of threads in chunks and written in row order.
+ */
+public class LocalDistanceMatrix {
+
+	private static final int ROWS_PER_CHUNK = 256;
+
+	// vector i has id i + 1
+	private final List<int[]> indices;
+	private final List<double[]> values;
+	private final double[] norms;
+	// feature -> ids of the vectors that have it, ascending
+	private final int[][] postings;
+
+	public LocalDistanceMatrix(List<int[]> indices, List<double[]> values, int numFeatures) {
+
+		this.indices = indices;
+		this.values = values;
+
+		norms = new double[indices.size()];
+		int[] df = new int[numFeatures + 1];
+		for (int i = 0; i < indices.size(); i++) {
+			double sum = 0;
+			for (double v : values.get(i)) {
+				sum += v * v;
+			}
+			norms[i] = Math.sqrt(sum);
+			for (int f : indices.get(i)) {
+				df[f]++;
+			}
+		}
+		postings = new int[numFeatures + 1][];
+		for (int f = 0; f < postings.length; f++) {
+			postings[f] = new int[df[f]];
+		}
+		Arrays.fill(df, 0);
+		for (int i = 0; i < indices.size(); i++) {
+			for (int f : indices.get(i)) {
+				postings[f][df[f]++] = i;
+			}
+		}
+	}
+
+	/**
+	 * Writes the lower triangular matrix ( including the diagonal ), skipping
+	 * distances of 1, ie. orthogonal vectors.
+	 */
+	public void write(File file, int numThreads) throws IOException {
+
+		File entries = new File(file.getPath() + ".entries");
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(entries), Charsets.UTF_8));
+		long numEntries = 0;
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try {
+			// keep a bounded number of chunks in flight, write them in order
+			LinkedList<Future<String>> pending = new LinkedList<Future<String>>();
+			for (int start = 0; start < norms.length; start += ROWS_PER_CHUNK) {
+				final int from = start;
+				final int to = Math.min(start + ROWS_PER_CHUNK, norms.length);
+				pending.add(executor.submit(new Callable<String>() {
+					@Override
+					public String call() {
+						return computeRows(from, to);
+					}
+				}));
+				if (pending.size() >= 4 * numThreads) {
+					numEntries += writeChunk(pending.removeFirst(), out);
+				}
+			}
+			while (!pending.isEmpty()) {
+				numEntries += writeChunk(pending.removeFirst(), out);
+			}
+		} finally {
+			executor.shutdownNow();
+			out.close();
+		}
+
+		DateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mmZ");
+		Writer header = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), Charsets.UTF_8));
+		try {
+			header.write(MatrixMarketStorageWithCounts.MATRIX_MARKET_MATRIX_HEADER + "\n");
+			header.write("% MatrixMarket writer, see http://math.nist.gov/MatrixMarket/formats.html\n");
+			header.write("% Generated on " + df.format(Calendar.getInstance().getTime()) + "\n");
+			header.write("% This ASCII file represents a sparse MxN matrix with L nonzeros\n");
+			header.write("%  M  N  L | <--- rows, columns, entries\n");
+			header.write(norms.length + " " + norms.length + " " + numEntries + "\n");
+		} finally {
+			header.close();
+		}
+		FileOutputStream append = new FileOutputStream(file, true);
+		try {
+			Files.copy(entries, append);
+		} finally {
+			append.close();
+		}
+		entries.delete();
+	}
+
+	private static long writeChunk(Future<String> chunk, Writer out) throws IOException {
+
+		String lines;
+		try {
+			lines = chunk.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+		out.write(lines);
+		long numLines = 0;
+		for (int i = 0; i < lines.length(); i++) {
+			if (lines.charAt(i) == '\n') {
+				numLines++;
+			}
+		}
+		return numLines;
+	}
+
+	private String computeRows(int from, int to) {
+
+		StringBuilder lines = new StringBuilder();
+		double[] dots = new double[to];
+		boolean[] touched = new boolean[to];
+		int[] candidates = new int[to];
+		for (int row = from; row < to; row++) {
+			int numCandidates = 0;
+			int[] rowIndices = indices.get(row);
+			double[] rowValues = values.get(row);
+			for (int k = 0; k < rowIndices.length; k++) {
+				for (int col : postings[rowIndices[k]]) {
+					// postings are ascending; only the lower triangle is needed
+					if (col > row) {
+						break;
+					}
+					if (!touched[col]) {
+						touched[col] = true;
+						candidates[numCandidates++] = col;
+					}
+					dots[col] += rowValues[k] * valueAt(col, rowIndices[k]);
+				}
+			}
+			Arrays.sort(candidates, 0, numCandidates);
+			for (int c = 0; c < numCandidates; c++) {
+				int col = candidates[c];
+				double distance = cosineDistance(dots[col], norms[row], norms[col]);
+				if (distance != 1.0) {
+					lines.append(row + 1).append(' ').append(col + 1).append(' ').append(distance).append('\n');
+				}
+				dots[col] = 0;
+				touched[col] = false;
+			}
+		}
+		return lines.toString();
+	}
+
+	private double valueAt(int vector, int feature) {
+
+		int pos = Arrays.binarySearch(indices.get(vector), feature);
+		return values.get(vector)[pos];
+	}
+
+	// same as Mahout's CosineDistanceMeasure, as used by CosineDistancePigFunction
+	static double cosineDistance(double dot, double norm1, double norm2) {
+
+		double denominator = norm1 * norm2;
+		if (denominator < dot) {
+			denominator = dot;
+		}
+		if (denominator == 0 && dot == 0) {
+			return 0;
+		}
+		return 1.0 - dot / denominator;
+	}
+}
@@ -0,0 +1,642 @@
+package sensim;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.regex.Pattern;
+
+/**
+ * Runs steps (02) to (11a) of pipeline.pig on a single machine, without Pig or
+ * a Hadoop cluster, for corpora of up to some ten million sentences.
+ * <p/>
+ * Steps (02), (04) and (05) are stages of a streaming pipeline connected by
+ * bounded queues, each stage with its own pool of workers and one UDF instance
+ * ( CoreNLPAnnotator or PukwacReader, NounPairLabeler, FeatureExtractor ) per
+ * worker. As the target-expansion pairs (03) are known up front, step (02) only
+ * parses sentences that contain one of them, unless -parseAll. The extracted features are rewritten to JoBim format (08a) and counted
+ * on the fly; counts live in memory and spill to sorted binary runs in the temp
+ * directory, so no intermediate is written as text. LMI (09a), pruning, the
+ * context vectors (10a) and the distance matrix (11a) are then computed from the
+ * merged counts. Steps (06) and (07) belong to the other fork and are not run.
+ * <p/>
+ * Output, in the same formats as the Pig steps:
+ * <pre>
+ * target_expansions_pruned.tsv
+ * ctx_lmi_pruned.tsv, ctx_lmi_flipped_pruned.tsv
+ * vectors_lmi.tsv, vectors_lmi_flipped.tsv
+ * dmatrix.mtx, dmatrix_flipped.mtx
+ * </pre>
+ * With -export, also the vectors and the distance matrices ( as similarities )
+ * as arrays for numpy.memmap, s. {@link ArrayExport}: vectors_lmi.csr,
+ * vectors_lmi.rows.dict ( the jos ), vectors_lmi.columns.dict ( the bims ),
+ * dmatrix.csr, dmatrix.rows.dict, and the same for the flipped ones.
+ * Usage:
+ * <pre>
+ * java -Xmx<lots> -cp <job jar>:`hadoop classpath`:<pig jar> sensim.LocalPipelineRunner \
+ *     -sentences sentences_uniq.bz -dt dt -output <dir> [-threads 16]
+ * </pre>
+ */
+public class LocalPipelineRunner {
+
+	private static final Log log = LogFactory.getLog(LocalPipelineRunner.class);
+
+	// s. filter_target_expansion_pairs.pig
+	private static final Pattern DT_NOUN = Pattern.compile("[a-zA-Z][\\S]+#NNS?");
+	private static final Pattern NON_WORD = Pattern.compile(".*[0-9\\.\\+@].*");
+
+	@Parameter(names = {"-sentences"}, description = "Deduplicated sentences, one per line ( output of step 01 )", required = true)
+	String sentences;
+
+	@Parameter(names = {"-preparsed"}, description = "Sentences are pre-parsed PukWaC sentences ( step 02 alt )", required = false)
+	boolean preparsed = false;
+
+	@Parameter(names = {"-parseAll"}, description = "Parse all sentences, not only those with a target-expansion pair", required = false)
+	boolean parseAll = false;
+
+	@Parameter(names = {"-dt"}, description = "Distributional thesaurus: target#POS \\t expansion#POS \\t similarity", required = true)
+	String dt;
+
+	@Parameter(names = {"-output"}, description = "Output directory", required = true)
+	String output;
+
+	@Parameter(names = {"-tmp"}, description = "Directory for spill files, defaults to <output>/tmp", required = false)
+	String tmp;
+
+	@Parameter(names = {"-language"}, description = "Language of the corpus", required = false)
+	String language = "en";
+
+	@Parameter(names = {"-topX"}, description = "Number of most similar expansions per target", required = false)
+	int topX = 50;
+
+	@Parameter(names = {"-selectionType"}, description = "Type of tokens to extract features for", required = false)
+	String selectionType = "COMMONNOUN";
+
+	@Parameter(names = {"-subtreeSize"}, description = "Maximum size of the extracted subtrees", required = false)
+	String subtreeSize = "6";
+
+	@Parameter(names = {"-numSkipsInSubtree"}, description = "Number of skips within a subtree", required = false)
+	String numSkipsInSubtree = "0";
+
+	@Parameter(names = {"-numCtx"}, description = "Number of contexts to keep per jo", required = false)
+	int numCtx = 1000;
+
+	@Parameter(names = {"-threads"}, description = "Number of workers per stage", required = false)
+	int threads = Runtime.getRuntime().availableProcessors();
+
+	@Parameter(names = {"-queueSize"}, description = "Capacity of the queues between stages", required = false)
+	int queueSize = 1024;
+
+	@Parameter(names = {"-maxKeysInMemory"}, description = "Number of counts to keep in memory before spilling", required = false)
+	int maxKeysInMemory = 5000000;
+
+	@Parameter(names = {"-export"}, description = "Also write vectors and distance matrices as arrays for numpy.memmap, s. ArrayExport", required = false)
+	boolean export = false;
+
+	private final TupleFactory tupleFactory = TupleFactory.getInstance();
+	private File outputDir;
+	private File tmpDir;
+
+	public static void main(String[] args) throws Exception {
+
+		LocalPipelineRunner runner = new LocalPipelineRunner();
+		JCommander jCommander = new JCommander(runner);
+		try {
+			jCommander.parse(args);
+		} catch (ParameterException e) {
+			System.err.println(e.getMessage());
+			jCommander.setProgramName(LocalPipelineRunner.class.getSimpleName());
+			jCommander.usage();
+			System.exit(1);
+		}
+		runner.run();
+	}
+
+	public void run() throws IOException {
+
+		outputDir = new File(output);
+		tmpDir = tmp != null ? new File(tmp) : new File(outputDir, "tmp");
+		if (!outputDir.isDirectory() && !outputDir.mkdirs() || !tmpDir.isDirectory() && !tmpDir.mkdirs()) {
+			throw new IOException("Can't create " + outputDir + " or " + tmpDir);
+		}
+
+		// (03)
+		LongIntHashMap tePairs = filterTargetExpansionPairs();
+
+		// (02), (04), (05), (08a)
+		SpillingTable jobims = new SpillingTable(tmpDir, maxKeysInMemory);
+		try {
+			extractFeatures(tePairs, jobims);
+
+			// (09a), (10a), (11a), for both regular and flipped contexts
+			SpillingTable flipped = new SpillingTable(tmpDir, maxKeysInMemory);
+			try {
+				ContextVectors vectors = new ContextVectors(export);
+				computeMutualInformation(jobims, flipped, vectors, "ctx_lmi_pruned.tsv");
+				writeVectorsAndDistances(vectors, "vectors_lmi.tsv", "dmatrix.mtx");
+
+				vectors = new ContextVectors(export);
+				pruneFlipped(flipped, vectors, "ctx_lmi_flipped_pruned.tsv");
+				writeVectorsAndDistances(vectors, "vectors_lmi_flipped.tsv", "dmatrix_flipped.mtx");
+			} finally {
+				flipped.close();
+			}
+		} finally {
+			jobims.close();
+		}
+	}
+
+	/**
+	 * (03) Keeps the topX most similar noun expansions per noun target, s.
+	 * filter_target_expansion_pairs.pig.
+	 *
+	 * @return the fingerprints of the pairs, as "target \t expansion"
+	 */
+	private LongIntHashMap filterTargetExpansionPairs() throws IOException {
+
+		Map<String, PriorityQueue<Expansion>> tops = Maps.newHashMap();
+		BufferedReader reader = PartFiles.open(dt, new Configuration());
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split("\t");
+				if (fields.length < 3 || !DT_NOUN.matcher(fields[0]).matches()
+						|| !DT_NOUN.matcher(fields[1]).matches()) {
+					continue;
+				}
+				String target = fields[0].substring(0, fields[0].lastIndexOf('#'));
+				String expansion = fields[1].substring(0, fields[1].lastIndexOf('#'));
+				if (target.equals(expansion) || NON_WORD.matcher(target).matches()
+						|| NON_WORD.matcher(expansion).matches()) {
+					continue;
+				}
+				double similarity;
+				try {
+					similarity = Double.parseDouble(fields[2]);
+				} catch (NumberFormatException e) {
+					continue;
+				}
+
+				PriorityQueue<Expansion> top = tops.get(target);
+				if (top == null) {
+					top = new PriorityQueue<Expansion>();
+					tops.put(target, top);
+				}
+				top.add(new Expansion(expansion, similarity));
+				if (top.size() > topX) {
+					top.poll();
+				}
+			}
+		} finally {
+			reader.close();
+		}
+
+		LongIntHashMap pairs = new LongIntHashMap();
+		Writer out = newWriter("target_expansions_pruned.tsv");
+		try {
+			for (Map.Entry<String, PriorityQueue<Expansion>> entry : tops.entrySet()) {
+				List<Expansion> top = Lists.newArrayList(entry.getValue());
+				Collections.sort(top, Collections.reverseOrder());
+				for (Expansion expansion : top) {
+					pairs.put(Fingerprints.of(entry.getKey() + "\t" + expansion.word), 1);
+					out.write(entry.getKey() + "\t" + expansion.word + "\t" + expansion.similarity + "\n");
+				}
+			}
+		} finally {
+			out.close();
+		}
+		log.info("(03) kept " + pairs.size() + " target-expansion pairs");
+		return pairs;
+	}
+
+	/**
+	 * (02), (04), (05) as a pipeline of worker stages; the sink rewrites and
+	 * counts the features as JoBims (08a), s. rewrite_features_as_jobim.pig.
+	 */
+	private void extractFeatures(final LongIntHashMap tePairs, SpillingTable jobims) throws IOException {
+
+		WorkerStage.Pipe<String> locations = new WorkerStage.Pipe<String>(1);
+		WorkerStage.Pipe<String> lines = new WorkerStage.Pipe<String>(queueSize);
+		WorkerStage.Pipe<String> parses = new WorkerStage.Pipe<String>(queueSize);
+		WorkerStage.Pipe<String[]> subcorpus = new WorkerStage.Pipe<String[]>(queueSize);
+		WorkerStage.Pipe<String[]> features = new WorkerStage.Pipe<String[]>(queueSize);
+
+		List<WorkerStage<?, ?>> stages = Lists.newArrayList();
+		stages.add(WorkerStage.start("read", 1, locations, lines, new WorkerStage.WorkerFactory<String, String>() {
+			@Override
+			public WorkerStage.Worker<String, String> newWorker() {
+				return new WorkerStage.Worker<String, String>() {
+					@Override
+					public void process(String location, WorkerStage.Pipe<String> out) throws Exception {
+						BufferedReader reader = PartFiles.open(location, new Configuration());
+						try {
+							String line;
+							while ((line = reader.readLine()) != null) {
+								out.put(line);
+							}
+						} finally {
+							reader.close();
+						}
+					}
+				};
+			}
+		}));
+
+		// (02)
+		stages.add(WorkerStage.start("parse", threads, lines, parses, new WorkerStage.WorkerFactory<String, String>() {
+			@Override
+			public WorkerStage.Worker<String, String> newWorker() throws Exception {
+				if (preparsed || parseAll) {
+					final org.apache.pig.EvalFunc<String> annotator = preparsed
+							? new PukwacReader(language) : new CoreNLPAnnotator(language);
+					return new WorkerStage.Worker<String, String>() {
+						@Override
+						public void process(String sentence, WorkerStage.Pipe<String> out) throws Exception {
+							String parse = annotator.exec(tupleFactory.newTuple(sentence));
+							if (parse != null) {
+								out.put(parse);
+							}
+						}
+					};
+				}
+				// only parse sentences with a target-expansion pair, s. tag_filter_parse_sentences in parse_sentences.pig
+				final CoreNLPTagger tagger = new CoreNLPTagger(language);
+				final CandidateSentence candidate = new CandidateSentence(2, tePairs);
+				final CoreNLPParser parser = new CoreNLPParser(language);
+				return new WorkerStage.Worker<String, String>() {
+					@Override
+					public void process(String sentence, WorkerStage.Pipe<String> out) throws Exception {
+						String tagged = tagger.exec(tupleFactory.newTuple(sentence));
+						if (tagged == null || !candidate.exec(tupleFactory.newTuple(tagged))) {
+							return;
+						}
+						String parse = parser.exec(tupleFactory.newTuple(tagged));
+						if (parse != null) {
+							out.put(parse);
+						}
+					}
+				};
+			}
+		}));
+
+		// (04) s. generate_subcorpus.pig
+		stages.add(WorkerStage.start("subcorpus", threads, parses, subcorpus, new WorkerStage.WorkerFactory<String, String[]>() {
+			@Override
+			public WorkerStage.Worker<String, String[]> newWorker() throws Exception {
+				final NounPairLabeler labeler = new NounPairLabeler(language);
+				return new WorkerStage.Worker<String, String[]>() {
+					@Override
+					public void process(String parse, WorkerStage.Pipe<String[]> out) throws Exception {
+						// the parse id only gets passed through
+						DataBag pairs = labeler.exec(tupleFactory.newTuple(Arrays.<Object>asList(0L, parse)));
+						if (pairs == null) {
+							return;
+						}
+						for (Tuple pair : pairs) {
+							String noun1 = ((String) pair.get(0)).toLowerCase();
+							String noun2 = ((String) pair.get(1)).toLowerCase();
+							if (tePairs.containsKey(Fingerprints.of(noun1 + "\t" + noun2))) {
+								out.put(new String[]{noun1, noun2, parse});
+							}
+						}
+					}
+				};
+			}
+		}));
+
+		// (05) s. extract_features.pig
+		stages.add(WorkerStage.start("features", threads, subcorpus, features, new WorkerStage.WorkerFactory<String[], String[]>() {
+			@Override
+			public WorkerStage.Worker<String[], String[]> newWorker() throws Exception {
+				final FeatureExtractor extractor = new FeatureExtractor(selectionType, subtreeSize, numSkipsInSubtree);
+				return new WorkerStage.Worker<String[], String[]>() {
+					@Override
+					public void process(String[] pairParse, WorkerStage.Pipe<String[]> out) throws Exception {
+						DataBag patterns = extractor.exec(tupleFactory.newTuple(
+								Arrays.<Object>asList(pairParse[2], pairParse[0], pairParse[1])));
+						if (patterns == null) {
+							return;
+						}
+						for (Tuple t : patterns) {
+							out.put(new String[]{(String) t.get(0), (String) t.get(1), (String) t.get(2)});
+						}
+					}
+				};
+			}
+		}));
+
+		long numFeatures = 0;
+		try {
+			locations.put(sentences);
+			locations.close();
+
+			// (08a)
+			String[] feature;
+			while ((feature = features.take()) != null) {
+				String noun1 = feature[0];
+				String noun2 = feature[1];
+				String pattern = feature[2];
+				jobims.add(noun1 + "\t@::" + pattern + "::" + noun2, 1);
+				jobims.add(noun1 + "\t" + noun2 + "::" + pattern + "^-1::@", 1);
+				jobims.add(noun2 + "\t" + noun1 + "::" + pattern + "::@", 1);
+				jobims.add(noun2 + "\t@::" + pattern + "^-1::" + noun1, 1);
+				jobims.add(pattern + "\t" + noun1 + "::@::" + noun2, 1);
+				jobims.add(pattern + "^-1\t" + noun2 + "::@::" + noun1, 1);
+				if (++numFeatures % 1000000 == 0) {
+					logProgress(stages, numFeatures);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (IOException e) {
+			features.abort();
+			throw e;
+		}
+		WorkerStage.awaitAll(stages);
+		logProgress(stages, numFeatures);
+	}
+
+	private static void logProgress(List<WorkerStage<?, ?>> stages, long numFeatures) {
+
+		StringBuilder message = new StringBuilder();
+		for (WorkerStage<?, ?> stage : stages) {
+			message.append(stage.getName()).append(": ").append(stage.getNumItems()).append(", ");
+		}
+		log.info(message.append("features: ").append(numFeatures));
+	}
+
+	/**
+	 * (09a) Computes the LMI of all JoBims as in compute_mutual_information.pig,
+	 * keeps the numCtx best contexts per jo, and collects all LMI values flipped,
+	 * ie. as bim \t jo, for the flipped contexts. The LMI of a flipped JoBim equals
+	 * the LMI of the JoBim itself.
+	 */
+	private void computeMutualInformation(SpillingTable jobims, SpillingTable flipped,
+			ContextVectors vectors, String prunedFile) throws IOException {
+
+		// the counts of each bim and all counts; the counts of jos are summed up
+		// on the fly below, since the table is sorted by jo
+		LongIntHashMap bimCounts = new LongIntHashMap(1 << 20);
+		double totalJoint = 0;
+		for (SpillingTable.Entry entry : jobims) {
+			String key = entry.getKey();
+			bimCounts.increment(Fingerprints.of(key.substring(key.indexOf('\t') + 1)), (int) entry.getValue());
+			totalJoint += entry.getValue();
+		}
+		// jo counts plus bim counts
+		double totalSingle = 2 * totalJoint;
+
+		Writer out = newWriter(prunedFile);
+		try {
+			String jo = null;
+			List<String> bims = Lists.newArrayList();
+			List<Double> counts = Lists.newArrayList();
+			Iterator<SpillingTable.Entry> it = jobims.iterator();
+			while (true) {
+				SpillingTable.Entry entry = it.hasNext() ? it.next() : null;
+				String key = entry == null ? null : entry.getKey();
+				String nextJo = key == null ? null : key.substring(0, key.indexOf('\t'));
+				if (jo != null && !jo.equals(nextJo)) {
+					double joCount = 0;
+					for (double count : counts) {
+						joCount += count;
+					}
+					List<Context> contexts = Lists.newArrayListWithCapacity(bims.size());
+					for (int i = 0; i < bims.size(); i++) {
+						double count = counts.get(i);
+						double bimCount = bimCounts.get(Fingerprints.of(bims.get(i)), 0);
+						double pmi = log2((count / totalJoint) / ((joCount / totalSingle) * (bimCount / totalSingle)));
+						double lmi = pmi * count;
+						flipped.add(bims.get(i) + "\t" + jo, lmi);
+						contexts.add(new Context(bims.get(i), lmi));
+					}
+					writePruned(jo, contexts, out, vectors);
+					bims.clear();
+					counts.clear();
+				}
+				if (entry == null) {
+					break;
+				}
+				jo = nextJo;
+				bims.add(key.substring(key.indexOf('\t') + 1));
+				counts.add(entry.getValue());
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * (09a cont.) Keeps the numCtx best flipped contexts per bim.
+	 */
+	private void pruneFlipped(SpillingTable flipped, ContextVectors vectors, String prunedFile) throws IOException {
+
+		Writer out = newWriter(prunedFile);
+		try {
+			String jo = null;
+			List<Context> contexts = Lists.newArrayList();
+			Iterator<SpillingTable.Entry> it = flipped.iterator();
+			while (true) {
+				SpillingTable.Entry entry = it.hasNext() ? it.next() : null;
+				String key = entry == null ? null : entry.getKey();
+				String nextJo = key == null ? null : key.substring(0, key.indexOf('\t'));
+				if (jo != null && !jo.equals(nextJo)) {
+					writePruned(jo, contexts, out, vectors);
+					contexts.clear();
+				}
+				if (entry == null) {
+					break;
+				}
+				jo = nextJo;
+				contexts.add(new Context(key.substring(key.indexOf('\t') + 1), entry.getValue()));
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes the numCtx contexts of a jo with the highest LMI, s. prune_ctxs.pig,
+	 * and adds them to the context vectors (10a).
+	 */
+	private void writePruned(String jo, List<Context> contexts, Writer out, ContextVectors vectors)
+			throws IOException {
+
+		Collections.sort(contexts);
+		List<Context> top = contexts.subList(0, Math.min(numCtx, contexts.size()));
+		for (Context context : top) {
+			out.write(jo + "\t" + context.bim + "\t" + context.lmi + "\n");
+		}
+		vectors.add(jo, top);
+	}
+
+	/**
+	 * (10a), s. make_vectors_from_ctxs.pig, and (11a), s. compute_distance_matrix.pig
+	 */
+	private void writeVectorsAndDistances(ContextVectors vectors, String vectorFile, String matrixFile)
+			throws IOException {
+
+		Writer out = newWriter(vectorFile);
+		try {
+			for (int i = 0; i < vectors.jos.size(); i++) {
+				int[] indices = vectors.indices.get(i);
+				double[] values = vectors.values.get(i);
+				StringBuilder line = new StringBuilder();
+				line.append(i + 1).append('\t').append(vectors.jos.get(i)).append("\t{");
+				for (int k = 0; k < indices.length; k++) {
+					line.append(k == 0 ? "(" : ",(").append(indices[k]).append(',').append(values[k]).append(')');
+				}
+				out.write(line.append("}\n").toString());
+			}
+		} finally {
+			out.close();
+		}
+		log.info("(10a) wrote " + vectors.jos.size() + " vectors over " + vectors.bimIds.size() + " contexts");
+
+		new LocalDistanceMatrix(vectors.indices, vectors.values, vectors.bimIds.size())
+				.write(new File(outputDir, matrixFile), threads);
+		log.info("(11a) wrote " + matrixFile);
+
+		if (export) {
+			ArrayExport.writeVectors(outputDir, baseName(vectorFile), vectors.jos, vectors.bims,
+					vectors.indices, vectors.values, vectors.bimIds.size());
+			// the vector file doubles as the dictionary of the rows
+			SimilarityGraph graph = SimilarityGraph.readMatrixMarket(new File(outputDir, matrixFile).getPath(),
+					new File(outputDir, vectorFile).getPath(), Double.NEGATIVE_INFINITY);
+			ArrayExport.writeGraph(outputDir, baseName(matrixFile), graph, false);
+		}
+	}
+
+	private static String baseName(String file) {
+
+		return file.substring(0, file.lastIndexOf('.'));
+	}
+
+	private Writer newWriter(String name) throws IOException {
+
+		return new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(new File(outputDir, name)), Charsets.UTF_8), 1 << 16);
+	}
+
+	private static double log2(double x) {
+
+		return Math.log(x) / Math.log(2.0);
+	}
+
+	/**
+	 * Sparse context vectors with ids starting at 1 for both jos and bims.
+	 */
+	private static final class ContextVectors {
+
+		private final List<String> jos = Lists.newArrayList();
+		private final List<int[]> indices = Lists.newArrayList();
+		private final List<double[]> values = Lists.newArrayList();
+		private final LongIntHashMap bimIds = new LongIntHashMap(1 << 20);
+		// bim i + 1, only kept for the export
+		private final List<String> bims;
+
+		ContextVectors(boolean keepBims) {
+
+			bims = keepBims ? Lists.<String>newArrayList() : null;
+		}
+
+		void add(String jo, List<Context> contexts) {
+
+			long[][] entries = new long[contexts.size()][];
+			for (int k = 0; k < contexts.size(); k++) {
+				long fp = Fingerprints.of(contexts.get(k).bim);
+				int id = bimIds.get(fp, 0);
+				if (id == 0) {
+					id = bimIds.size() + 1;
+					bimIds.put(fp, id);
+					if (bims != null) {
+						bims.add(contexts.get(k).bim);
+					}
+				}
+				entries[k] = new long[]{id, k};
+			}
+			// sort by bim id
+			Arrays.sort(entries, new Comparator<long[]>() {
+				@Override
+				public int compare(long[] a, long[] b) {
+					return a[0] < b[0] ? -1 : (a[0] == b[0] ? 0 : 1);
+				}
+			});
+			int[] idx = new int[entries.length];
+			double[] val = new double[entries.length];
+			for (int k = 0; k < entries.length; k++) {
+				idx[k] = (int) entries[k][0];
+				val[k] = contexts.get((int) entries[k][1]).lmi;
+			}
+			jos.add(jo);
+			indices.add(idx);
+			values.add(val);
+		}
+	}
+
+	/**
+	 * A bim with its LMI, ordered by descending LMI.
+	 */
+	private static final class Context implements Comparable<Context> {
+
+		private final String bim;
+		private final double lmi;
+
+		Context(String bim, double lmi) {
+
+			this.bim = bim;
+			this.lmi = lmi;
+		}
+
+		@Override
+		public int compareTo(Context other) {
+
+			return Double.compare(other.lmi, lmi);
+		}
+	}
+
+	/**
+	 * An expansion with its similarity, ordered by ascending similarity.
+	 */
+	private static final class Expansion implements Comparable<Expansion> {
+
+		private final String word;
+		private final double similarity;
+
+		Expansion(String word, double similarity) {
+
+			this.word = word;
+			this.similarity = similarity;
+		}
+
+		@Override
+		public int compareTo(Expansion other) {
+
+			return Double.compare(similarity, other.similarity);
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package sensim;
+
+import java.util.Arrays;
+
+/**
+ * A compact open-addressing hash map from primitive longs to primitive ints.
+ * Takes about 24 bytes per entry at the default load factor, compared to
+ * well over 100 bytes for a HashMap&lt;String, Integer&gt;; meant for
+ * dictionaries keyed by {@link Fingerprints} that are replicated into
+ * every task.
+ * <p/>
+ * Not thread-safe.
+ */
+public class LongIntHashMap {
+
+	private static final float LOAD_FACTOR = 0.5f;
+
+	private long[] keys;
+	private int[] values;
+	private boolean[] used;
+	private int size;
+	private int resizeAt;
+
+	public LongIntHashMap() {
+
+		this(1024);
+	}
+
+	public LongIntHashMap(int expectedSize) {
+
+		int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+		allocate(capacity);
+	}
+
+	private void allocate(int capacity) {
+
+		keys = new long[capacity];
+		values = new int[capacity];
+		used = new boolean[capacity];
+		resizeAt = (int) (capacity * LOAD_FACTOR);
+	}
+
+	private int slot(long key) {
+
+		int mask = keys.length - 1;
+		int i = (int) Fingerprints.mix(key, 0) & mask;
+		while (used[i] && keys[i] != key) {
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+	/**
+	 * @return the previous value or <code>defaultValue</code> if there was none
+	 */
+	public int put(long key, int value, int defaultValue) {
+
+		int i = slot(key);
+		if (used[i]) {
+			int previous = values[i];
+			values[i] = value;
+			return previous;
+		}
+		used[i] = true;
+		keys[i] = key;
+		values[i] = value;
+		if (++size > resizeAt) {
+			rehash();
+		}
+		return defaultValue;
+	}
+
+	public void put(long key, int value) {
+
+		put(key, value, 0);
+	}
+
+	public int get(long key, int defaultValue) {
+
+		int i = slot(key);
+		return used[i] ? values[i] : defaultValue;
+	}
+
+	public boolean containsKey(long key) {
+
+		return used[slot(key)];
+	}
+
+	/**
+	 * Adds <code>delta</code> to the value of <code>key</code>, starting from 0.
+	 *
+	 * @return the new value
+	 */
+	public int increment(long key, int delta) {
+
+		int i = slot(key);
+		if (used[i]) {
+			values[i] += delta;
+			return values[i];
+		}
+		put(key, delta);
+		return delta;
+	}
+
+	public int size() {
+
+		return size;
+	}
+
+	public void clear() {
+
+		Arrays.fill(used, false);
+		size = 0;
+	}
+
+	/**
+	 * @return the keys in no particular order
+	 */
+	public long[] keys() {
+
+		long[] result = new long[size];
+		int j = 0;
+		for (int i = 0; i < keys.length; i++) {
+			if (used[i]) {
+				result[j++] = keys[i];
+			}
+		}
+		return result;
+	}
+
+	private void rehash() {
+
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		boolean[] oldUsed = used;
+		allocate(keys.length << 1);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldUsed[i]) {
+				int j = slot(oldKeys[i]);
+				used[j] = true;
+				keys[j] = oldKeys[i];
+				values[j] = oldValues[i];
+			}
+		}
+	}
+}
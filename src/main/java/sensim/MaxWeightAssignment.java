@@ -0,0 +1,173 @@
+package sensim;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * Maximum weight bipartite matching on a sparse graph, as needed for CEAF,
+ * where most classes and clusters share no items. Successive shortest
+ * augmenting paths with potentials ( ie. the Hungarian method ): each row in
+ * turn is matched by a Dijkstra search over the edges that exist only, so the
+ * cost is about O(n E log E) in the worst case for n rows and E edges, but the
+ * searches mostly stop after a few steps.
+ * <p/>
+ * Each row has a private dummy column of weight 0, so every row is matched and
+ * leaving a row unmatched is just one of the options.
+ */
+public final class MaxWeightAssignment {
+
+	private MaxWeightAssignment() {
+	}
+
+	/**
+	 * @param numRows    rows, 0 .. numRows - 1; for speed, the smaller side
+	 * @param numColumns columns, 0 .. numColumns - 1
+	 * @param rows       row of each edge
+	 * @param columns    column of each edge
+	 * @param weights    non-negative weight of each edge
+	 * @return the total weight of a maximum weight matching
+	 */
+	public static double solve(int numRows, int numColumns, int[] rows, int[] columns, double[] weights) {
+
+		// edges by row, plus the dummy column numColumns + row of each row
+		int[] offsets = new int[numRows + 1];
+		double maxWeight = 0;
+		for (int e = 0; e < rows.length; e++) {
+			offsets[rows[e] + 1]++;
+			maxWeight = Math.max(maxWeight, weights[e]);
+		}
+		for (int r = 0; r < numRows; r++) {
+			offsets[r + 1] += offsets[r];
+		}
+		int[] targets = new int[rows.length];
+		// costs are maxWeight - weight >= 0, the dummy's is maxWeight
+		double[] costs = new double[rows.length];
+		double[] edgeWeights = new double[rows.length];
+		int[] fill = Arrays.copyOf(offsets, numRows);
+		for (int e = 0; e < rows.length; e++) {
+			int pos = fill[rows[e]]++;
+			targets[pos] = columns[e];
+			costs[pos] = maxWeight - weights[e];
+			edgeWeights[pos] = weights[e];
+		}
+
+		int totalColumns = numColumns + numRows;
+		double[] u = new double[numRows];
+		double[] v = new double[totalColumns];
+		int[] rowOf = new int[totalColumns];
+		int[] colOf = new int[numRows];
+		Arrays.fill(rowOf, -1);
+		Arrays.fill(colOf, -1);
+
+		double[] dist = new double[totalColumns];
+		Arrays.fill(dist, Double.POSITIVE_INFINITY);
+		int[] predRow = new int[totalColumns];
+		boolean[] done = new boolean[totalColumns];
+		int[] touched = new int[totalColumns];
+
+		for (int start = 0; start < numRows; start++) {
+			// make the reduced costs of the new row non-negative
+			double minCost = maxWeight - v[numColumns + start];
+			for (int pos = offsets[start]; pos < offsets[start + 1]; pos++) {
+				minCost = Math.min(minCost, costs[pos] - v[targets[pos]]);
+			}
+			u[start] = minCost;
+
+			PriorityQueue<Tentative> queue = new PriorityQueue<Tentative>();
+			int numTouched = 0;
+			int row = start;
+			double rowDist = 0;
+			int free = -1;
+			double freeDist = 0;
+			while (free < 0) {
+				// relax the edges of the row, incl. its dummy
+				for (int pos = offsets[row]; pos <= offsets[row + 1]; pos++) {
+					int col = pos < offsets[row + 1] ? targets[pos] : numColumns + row;
+					double cost = pos < offsets[row + 1] ? costs[pos] : maxWeight;
+					if (done[col]) {
+						continue;
+					}
+					double d = rowDist + cost - u[row] - v[col];
+					if (d < dist[col]) {
+						if (dist[col] == Double.POSITIVE_INFINITY) {
+							touched[numTouched++] = col;
+						}
+						dist[col] = d;
+						predRow[col] = row;
+						queue.add(new Tentative(col, d));
+					}
+				}
+				// closest column that isn't done yet
+				Tentative next = queue.poll();
+				while (done[next.column] || next.dist > dist[next.column]) {
+					next = queue.poll();
+				}
+				done[next.column] = true;
+				if (rowOf[next.column] < 0) {
+					free = next.column;
+					freeDist = next.dist;
+				} else {
+					row = rowOf[next.column];
+					rowDist = next.dist;
+				}
+			}
+
+			// update the potentials, so reduced costs stay non-negative and the path is tight
+			u[start] += freeDist;
+			for (int t = 0; t < numTouched; t++) {
+				int col = touched[t];
+				if (done[col]) {
+					double delta = freeDist - dist[col];
+					v[col] -= delta;
+					if (rowOf[col] >= 0) {
+						u[rowOf[col]] += delta;
+					}
+				}
+			}
+
+			// augment along the path
+			int col = free;
+			while (col >= 0) {
+				int r = predRow[col];
+				int previous = colOf[r];
+				rowOf[col] = r;
+				colOf[r] = col;
+				col = r == start ? -1 : previous;
+			}
+
+			for (int t = 0; t < numTouched; t++) {
+				dist[touched[t]] = Double.POSITIVE_INFINITY;
+				done[touched[t]] = false;
+			}
+		}
+
+		double total = 0;
+		for (int r = 0; r < numRows; r++) {
+			for (int pos = offsets[r]; pos < offsets[r + 1]; pos++) {
+				if (targets[pos] == colOf[r]) {
+					total += edgeWeights[pos];
+					break;
+				}
+			}
+		}
+		return total;
+	}
+
+	private static final class Tentative implements Comparable<Tentative> {
+
+		private final int column;
+		private final double dist;
+
+		Tentative(int column, double dist) {
+
+			this.column = column;
+			this.dist = dist;
+		}
+
+		@Override
+		public int compareTo(Tentative other) {
+
+			return Double.compare(dist, other.dist);
+		}
+	}
+}
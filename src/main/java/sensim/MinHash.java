@@ -0,0 +1,103 @@
+package sensim;
+
+import org.apache.pig.EvalFunc;
+import org.apache.pig.builtin.OutputSchema;
+import org.apache.pig.data.BagFactory;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * MinHash sketch of a sentence, as the set of word bigrams of the
+ * {@link NormalizedFingerprint#normalize normalized} sentence, for finding
+ * near-duplicates by locality-sensitive hashing, s. dedup_sentences.pig.
+ * <p/>
+ * Returns one ( band, value, signature ) tuple per band. The value of a band
+ * is the hash of <code>rows</code> consecutive minhashes, so two sentences
+ * share it with probability J^rows, where J is the Jaccard similarity of
+ * their bigrams; grouping by ( band, value ) hence makes sentences with a
+ * high J meet in at least one group. The signature consists of the lowest
+ * bit of each of the first 64 minhashes ( b-bit minwise hashing with b = 1 ),
+ * so the number of bits in which the signatures of two sentences differ is
+ * about 32 * ( 1 - J ), s. {@link NearDuplicates}.
+ */
+@OutputSchema("bands:bag {t:tuple (band:int, value:long, signature:long)}")
+public class MinHash extends EvalFunc<DataBag> {
+
+	private BagFactory bagFactory = BagFactory.getInstance();
+	private TupleFactory tupleFactory = TupleFactory.getInstance();
+
+	private final int numBands;
+	private final int rows;
+	private final long[] minhashes;
+
+	public MinHash() {
+
+		this("12", "3");
+	}
+
+	public MinHash(String numBands, String rows) {
+
+		this.numBands = Integer.parseInt(numBands);
+		this.rows = Integer.parseInt(rows);
+		this.minhashes = new long[Math.max(64, this.numBands * this.rows)];
+	}
+
+	@Override
+	public DataBag exec(Tuple input) throws IOException {
+
+		if (input == null || input.size() == 0 || input.get(0) == null) {
+			return null;
+		}
+
+		sketch(NormalizedFingerprint.normalize(input.get(0).toString()));
+
+		long signature = 0;
+		for (int i = 0; i < 64; i++) {
+			signature |= (minhashes[i] & 1L) << i;
+		}
+
+		DataBag bands = bagFactory.newDefaultBag();
+		for (int band = 0; band < numBands; band++) {
+			long value = band;
+			for (int row = band * rows; row < (band + 1) * rows; row++) {
+				value = Fingerprints.mix(value ^ minhashes[row], row);
+			}
+			Tuple t = tupleFactory.newTuple(3);
+			t.set(0, band);
+			t.set(1, value);
+			t.set(2, signature);
+			bands.add(t);
+		}
+		return bands;
+	}
+
+	/**
+	 * Computes the minhashes of the word bigrams of a normalized sentence ( or
+	 * of the sentence as a whole if it has less than two words ).
+	 */
+	private void sketch(String normalized) {
+
+		Arrays.fill(minhashes, Long.MAX_VALUE);
+		String[] words = normalized.split(" ");
+		if (words.length < 2) {
+			update(Fingerprints.of(normalized));
+		}
+		for (int i = 1; i < words.length; i++) {
+			update(Fingerprints.of(words[i - 1] + ' ' + words[i]));
+		}
+	}
+
+	private void update(long shingle) {
+
+		for (int i = 0; i < minhashes.length; i++) {
+			long h = Fingerprints.mix(shingle, i);
+			if (h < minhashes[i]) {
+				minhashes[i] = h;
+			}
+		}
+	}
+}
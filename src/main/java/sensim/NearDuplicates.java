@@ -0,0 +1,101 @@
+package sensim;
+
+import org.apache.pig.EvalFunc;
+import org.apache.pig.builtin.OutputSchema;
+import org.apache.pig.data.BagFactory;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Given a bag of ( fingerprint, signature ) tuples sorted by fingerprint, eg.
+ * the sentences that share a band of their {@link MinHash}, returns the
+ * fingerprints of the near-duplicates to drop:
+ *
+ * <pre>
+ * DEFINE NearDuplicates sensim.NearDuplicates( '9' ) ;
+ * drops = FOREACH ( GROUP banded BY ( band, value )) {
+ *     sorted = ORDER banded BY fp ;
+ *     GENERATE FLATTEN( NearDuplicates( sorted.( fp, signature ))) as fp ;
+ * } ;
+ * </pre>
+ *
+ * A sentence is a near-duplicate if its signature differs in at most
+ * maxDistance bits from the signature of a sentence with a smaller fingerprint
+ * that is kept in the same group. With MinHash signatures, maxDistance 9 corresponds to an
+ * estimated Jaccard similarity of 0.72 ( 1 - 9/32 ) or more.
+ * Since every group is processed in fingerprint order, of two near-duplicates
+ * it is only ever the one with the larger fingerprint that is dropped on
+ * account of the other, no matter in how many groups they meet. A sentence
+ * kept in one group may be dropped in another, though, so the sentences a
+ * drop was decided on are not necessarily kept in the end.
+ */
+@OutputSchema("duplicates:bag {t:tuple (fp:long)}")
+public class NearDuplicates extends EvalFunc<DataBag> {
+
+	private BagFactory bagFactory = BagFactory.getInstance();
+	private TupleFactory tupleFactory = TupleFactory.getInstance();
+
+	private final int maxDistance;
+
+	// signatures of the sentences kept, reused across calls
+	private long[] kept = new long[64];
+
+	public NearDuplicates() {
+
+		this("9");
+	}
+
+	public NearDuplicates(String maxDistance) {
+
+		this.maxDistance = Integer.parseInt(maxDistance);
+	}
+
+	@Override
+	public DataBag exec(Tuple input) throws IOException {
+
+		if (input == null || input.size() == 0 || input.get(0) == null) {
+			return null;
+		}
+
+		DataBag sentences = (DataBag) input.get(0);
+		DataBag duplicates = bagFactory.newDefaultBag();
+		if (sentences.size() < 2) {
+			return duplicates;
+		}
+
+		int numKept = 0;
+		for (Tuple sentence : sentences) {
+			Long fingerprint = (Long) sentence.get(0);
+			Long signature = (Long) sentence.get(1);
+			if (fingerprint == null || signature == null) {
+				continue;
+			}
+			if (isNearDuplicate(signature, numKept)) {
+				duplicates.add(tupleFactory.newTuple(fingerprint));
+				continue;
+			}
+			if (numKept == kept.length) {
+				kept = Arrays.copyOf(kept, kept.length * 2);
+			}
+			kept[numKept++] = signature;
+			if (numKept % 1000 == 0) {
+				progress();
+			}
+		}
+		return duplicates;
+	}
+
+	private boolean isNearDuplicate(long signature, int numKept) {
+
+		for (int i = 0; i < numKept; i++) {
+			if (Long.bitCount(signature ^ kept[i]) <= maxDistance) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,69 @@
+package sensim;
+
+import org.apache.pig.EvalFunc;
+import org.apache.pig.builtin.OutputSchema;
+import org.apache.pig.data.Tuple;
+
+import java.io.IOException;
+
+/**
+ * Returns the 64-bit {@link Fingerprints fingerprint} of a sentence after
+ * {@link #normalize normalization}, so that variants which only differ by
+ * case, punctuation, whitespace or numbers ( eg. dates and scores in news
+ * boilerplate ) get the same fingerprint, s. dedup_sentences.pig.
+ */
+@OutputSchema("fingerprint:long")
+public class NormalizedFingerprint extends EvalFunc<Long> {
+
+	@Override
+	public Long exec(Tuple input) throws IOException {
+
+		if (input == null || input.size() == 0 || input.get(0) == null) {
+			return null;
+		}
+		return Fingerprints.of(normalize(input.get(0).toString()));
+	}
+
+	/**
+	 * Lower-cases letters, replaces each number ( incl. decimal and thousands
+	 * separators ) by 0 and everything else by a single space, eg.
+	 * "Shares rose 3.5% to $1,200." becomes "shares rose 0 to 0".
+	 */
+	static String normalize(String sentence) {
+
+		StringBuilder normalized = new StringBuilder(sentence.length());
+		boolean space = false;
+		boolean number = false;
+		for (int i = 0; i < sentence.length(); i++) {
+			char c = sentence.charAt(i);
+			if (Character.isLetter(c)) {
+				appendSpace(normalized, space);
+				normalized.append(Character.toLowerCase(c));
+				space = false;
+				number = false;
+			} else if (Character.isDigit(c)) {
+				if (!number) {
+					appendSpace(normalized, space);
+					normalized.append('0');
+				}
+				space = false;
+				number = true;
+			} else if (number && (c == '.' || c == ',') && i + 1 < sentence.length()
+					&& Character.isDigit(sentence.charAt(i + 1))) {
+				// within a number
+				continue;
+			} else {
+				space = true;
+				number = false;
+			}
+		}
+		return normalized.toString();
+	}
+
+	private static void appendSpace(StringBuilder normalized, boolean space) {
+
+		if (space && normalized.length() > 0) {
+			normalized.append(' ');
+		}
+	}
+}
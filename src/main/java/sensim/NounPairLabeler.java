@@ -14,21 +14,34 @@ import org.apache.pig.data.*;
 import org.apache.pig.impl.logicalLayer.FrontendException;
 import org.apache.uima.UIMAException;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
-import org.apache.uima.fit.factory.JCasFactory;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
 import org.xml.sax.SAXException;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Date: 11/19/13
  * Time: 1:57 AM
+ * <p/>
+ * Given a {@link DtIndex}, only pairs whose lowercased second noun is among the
+ * topX expansions of the first are returned, so sentences are selected without
+ * joining all their noun pairs with the target-expansion pairs:
+ * <pre>
+ * DEFINE NounPairLabeler sensim.NounPairLabeler( 'en', 'dt.index', '50' ) ;
+ * </pre>
+ * The index is shipped to the tasks through the distributed cache.
  *
  * @author Priska Herger
  */
@@ -41,21 +54,108 @@ public class NounPairLabeler extends EvalFunc<DataBag> {
 	private UIMAXMLConverterHelper uimaXMLConverterHelper;
 	private BagFactory bagFactory = BagFactory.getInstance();
 	private TupleFactory tupleFactory = TupleFactory.getInstance();
+	private final UdfMetrics metrics = new UdfMetrics(NounPairLabeler.class);
+
+	// name of the index in the task's working directory
+	private static final String DT_INDEX_LINK = "dt.index";
+	private static final int MAX_CACHED_TARGETS = 100000;
+
+	private final String dtIndexLocation;
+	private final int topX;
+	private DtIndex dtIndex;
+	// top expansions of recently seen targets
+	private final Map<String, Set<String>> expansions = new HashMap<String, Set<String>>();
 
 	public NounPairLabeler(String language) throws UIMAException {
 
+		this(language, "", "0");
+	}
+
+	/**
+	 * @param dtIndex the DT index to filter pairs with ( s. {@link DtIndex} ), '' for none
+	 * @param topX    the number of expansions per target to keep pairs of
+	 */
+	public NounPairLabeler(String language, String dtIndex, String topX) throws UIMAException {
+
 		super();
 		this.language = language;
+		this.dtIndexLocation = dtIndex;
+		this.topX = Integer.parseInt(topX);
 
-		uimaXMLConverterHelper = new UIMAXMLConverterHelper(false);
-		jCas = JCasFactory.createJCas();
+		uimaXMLConverterHelper = new UIMAXMLConverterHelper(false, UimaResources.typeSystem());
+		jCas = UimaResources.borrowJCas();
 
 	}
 
+	@Override
+	public List<String> getCacheFiles() {
+
+		if (dtIndexLocation.isEmpty()) {
+			return null;
+		}
+		return Collections.singletonList(dtIndexLocation + "#" + DT_INDEX_LINK);
+	}
+
 	@Override
 	public DataBag exec(Tuple input) throws IOException {
 
+		metrics.begin();
+		DataBag pairs = null;
+		try {
+			pairs = labelNounPairs(input);
+			return pairs;
+		} finally {
+			metrics.end(input, pairs == null ? 0 : pairs.size());
+		}
+	}
+
+	@Override
+	public void finish() {
+
+		metrics.finish();
+		UimaResources.release(jCas);
+		if (dtIndex != null) {
+			try {
+				dtIndex.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			dtIndex = null;
+		}
+	}
+
+	/**
+	 * @return whether the pair is a target-expansion pair of the DT index, if any
+	 */
+	private boolean isExpansionPair(String noun1, String noun2) throws IOException {
+
+		if (dtIndexLocation.isEmpty()) {
+			return true;
+		}
+		if (dtIndex == null) {
+			// the cached copy on the cluster, the index itself in local mode
+			File link = new File(DT_INDEX_LINK);
+			dtIndex = DtIndex.open(link.exists() ? link : new File(dtIndexLocation));
+		}
+		String target = noun1.toLowerCase();
+		Set<String> words = expansions.get(target);
+		if (words == null) {
+			if (expansions.size() >= MAX_CACHED_TARGETS) {
+				expansions.clear();
+			}
+			words = new HashSet<String>();
+			for (DtIndex.Expansion expansion : dtIndex.topNounExpansions(target, topX)) {
+				words.add(expansion.word);
+			}
+			expansions.put(target, words);
+		}
+		return words.contains(noun2.toLowerCase());
+	}
+
+	private DataBag labelNounPairs(Tuple input) throws IOException {
+
 		if (input == null || input.size() == 0 || input.get(0) == null || input.get(1) == null) {
+			metrics.skip("NULL_INPUT");
 			return null;
 		}
 
@@ -91,6 +191,7 @@ public class NounPairLabeler extends EvalFunc<DataBag> {
 				}
 
 				if (nouns == null || nouns.size() == 1) {
+					metrics.skip("FEWER_THAN_2_NOUNS");
 					return null;
 				}
 
@@ -108,6 +209,9 @@ public class NounPairLabeler extends EvalFunc<DataBag> {
 
 					Token n1 = pair.get(0);
 					Token n2 = pair.get(1);
+					if (!isExpansionPair(n1.getLemma().getValue(), n2.getLemma().getValue())) {
+						continue;
+					}
 
 					Tuple tuple = tupleFactory.newTuple(3);
 
@@ -121,12 +225,16 @@ public class NounPairLabeler extends EvalFunc<DataBag> {
 			return dataBag;
 
 		} catch (AnalysisEngineProcessException e) {
+			metrics.error(e);
 			e.printStackTrace();
 		} catch (InterruptedException e) {
+			metrics.error(e);
 			e.printStackTrace();
 		} catch (SAXException e) {
+			metrics.error(e);
 			e.printStackTrace();
 		} catch (UIMAException e) {
+			metrics.error(e);
 			e.printStackTrace();
 		}
 		return null;
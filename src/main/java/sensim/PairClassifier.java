@@ -0,0 +1,402 @@
+package sensim;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Classifies noun pairs by their feature vectors ( as of make_feature_vectors.pig
+ * or make_vectors_from_ctxs.pig: id \t pair \t {(idx,cnt),..} ) into the relations
+ * of their BLESS labels, with an {@link FtrlModel} trained by several threads at
+ * once, instead of exporting the vectors for scikit-learn.
+ * <p/>
+ * The vectors are streamed; only those of labeled pairs are kept, as hashed
+ * features with values log(1 + cnt), scaled to unit length. The labeled pairs
+ * are split into folds by their fingerprint; each fold is classified by a model
+ * trained on the others, and precision, recall and F1 per relation are reported.
+ * With -predictions, a model trained on all labeled pairs then classifies every
+ * pair: id \t pair \t relation \t probability.
+ * <p/>
+ * Labels are either pair \t label, with the pair written as in the vectors, eg.
+ * (cat,dog), or noun1 \t noun2 \t label, as written by prepare_bless.py.
+ * <p/>
+ * Usage:
+ * <pre>
+ * java -cp <job jar>:`hadoop classpath` sensim.PairClassifier \
+ *     -vectors vectors -labels bless_nouns.tsv [-folds 5] [-predictions predictions.tsv]
+ * </pre>
+ */
+public class PairClassifier {
+
+	private static final Log log = LogFactory.getLog(PairClassifier.class);
+
+	private static final Splitter TAB = Splitter.on('\t');
+
+	@Parameter(names = {"-vectors"}, description = "Feature vectors: id \\t pair \\t {(idx,cnt),..}", required = true)
+	String vectors;
+
+	@Parameter(names = {"-labels"}, description = "Labels: pair \\t label or noun1 \\t noun2 \\t label", required = true)
+	String labels;
+
+	@Parameter(names = {"-predictions"}, description = "Classify all pairs into this file", required = false)
+	String predictions;
+
+	@Parameter(names = {"-folds"}, description = "Number of folds for cross-validation", required = false)
+	int folds = 5;
+
+	@Parameter(names = {"-epochs"}, description = "Number of passes over the training data", required = false)
+	int epochs = 10;
+
+	@Parameter(names = {"-bits"}, description = "Number of hash buckets, as a power of 2", required = false)
+	int bits = 20;
+
+	@Parameter(names = {"-alpha"}, description = "FTRL learning rate", required = false)
+	double alpha = 0.1;
+
+	@Parameter(names = {"-beta"}, description = "FTRL learning rate smoothing", required = false)
+	double beta = 1.0;
+
+	@Parameter(names = {"-l1"}, description = "L1 regularization", required = false)
+	double l1 = 0.01;
+
+	@Parameter(names = {"-l2"}, description = "L2 regularization", required = false)
+	double l2 = 1.0;
+
+	@Parameter(names = {"-seed"}, description = "Seed of the order of the examples", required = false)
+	long seed = 1;
+
+	@Parameter(names = {"-threads"}, description = "Number of training threads", required = false)
+	int threads = Runtime.getRuntime().availableProcessors();
+
+	// labeled pair -> class, and the names of the classes
+	private final Map<String, Integer> pairLabels = Maps.newHashMap();
+	private final List<String> classes = Lists.newArrayList();
+
+	public static void main(String[] args) throws Exception {
+
+		PairClassifier classifier = new PairClassifier();
+		JCommander jCommander = new JCommander(classifier);
+		try {
+			jCommander.parse(args);
+		} catch (ParameterException e) {
+			System.err.println(e.getMessage());
+			jCommander.setProgramName(PairClassifier.class.getSimpleName());
+			jCommander.usage();
+			System.exit(1);
+		}
+		classifier.run();
+	}
+
+	public void run() throws IOException {
+
+		readLabels();
+		FtrlModel hasher = newModel();
+		Examples examples = readExamples(hasher);
+		log.info("Found vectors for " + examples.size() + " of " + pairLabels.size() + " labeled pairs");
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			long[][] confusion = new long[classes.size()][classes.size()];
+			for (int fold = 0; fold < folds; fold++) {
+				List<Integer> training = Lists.newArrayList();
+				List<Integer> test = Lists.newArrayList();
+				for (int i = 0; i < examples.size(); i++) {
+					(examples.folds[i] % folds == fold ? test : training).add(i);
+				}
+				FtrlModel model = train(examples, training, executor);
+				for (int i : test) {
+					confusion[examples.labels[i]][examples.classify(model, i)]++;
+				}
+				log.info("Fold " + fold + ": trained on " + training.size() + ", tested on " + test.size()
+						+ " pairs, " + model.numNonZero() + " non-zero weights");
+			}
+			report(confusion);
+
+			if (predictions != null) {
+				List<Integer> all = Lists.newArrayList();
+				for (int i = 0; i < examples.size(); i++) {
+					all.add(i);
+				}
+				predictAll(train(examples, all, executor));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private FtrlModel newModel() {
+
+		return new FtrlModel(classes.size(), bits, alpha, beta, l1, l2);
+	}
+
+	private void readLabels() throws IOException {
+
+		Map<String, Integer> classIds = Maps.newHashMap();
+		BufferedReader reader = PartFiles.open(labels, new Configuration());
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				List<String> fields = Lists.newArrayList(TAB.split(line));
+				if (fields.size() < 2) {
+					continue;
+				}
+				String pair = fields.size() == 2 ? fields.get(0) : "(" + fields.get(0) + "," + fields.get(1) + ")";
+				String label = fields.get(fields.size() - 1).trim();
+				Integer classId = classIds.get(label);
+				if (classId == null) {
+					classId = classes.size();
+					classIds.put(label, classId);
+					classes.add(label);
+				}
+				pairLabels.put(pair, classId);
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Hashed, normalized features of the labeled pairs, in primitive arrays.
+	 */
+	private static final class Examples {
+
+		private int size = 0;
+		private int[] offsets = new int[1025];
+		private int[] buckets = new int[1 << 16];
+		private float[] values = new float[1 << 16];
+		private int[] labels = new int[1024];
+		private int[] folds = new int[1024];
+
+		int size() {
+
+			return size;
+		}
+
+		void add(int[] exampleBuckets, float[] exampleValues, int length, int label, int fold) {
+
+			if (size + 1 == labels.length) {
+				labels = Arrays.copyOf(labels, 2 * labels.length);
+				folds = Arrays.copyOf(folds, 2 * folds.length);
+				offsets = Arrays.copyOf(offsets, labels.length + 1);
+			}
+			int from = offsets[size];
+			if (from + length > buckets.length) {
+				int capacity = Math.max(2 * buckets.length, from + length);
+				buckets = Arrays.copyOf(buckets, capacity);
+				values = Arrays.copyOf(values, capacity);
+			}
+			System.arraycopy(exampleBuckets, 0, buckets, from, length);
+			System.arraycopy(exampleValues, 0, values, from, length);
+			labels[size] = label;
+			folds[size] = fold;
+			offsets[++size] = from + length;
+		}
+
+		void update(FtrlModel model, int i) {
+
+			model.update(buckets, values, offsets[i], offsets[i + 1], labels[i]);
+		}
+
+		int classify(FtrlModel model, int i) {
+
+			return model.classify(buckets, values, offsets[i], offsets[i + 1]);
+		}
+	}
+
+	/**
+	 * Reads the features of a vector ( idx and cnt of the bag ) into buckets and values.
+	 *
+	 * @return the number of features
+	 */
+	private static int parseVector(String bag, FtrlModel hasher, int[][] buckets, float[][] values) {
+
+		int length = 0;
+		double norm = 0;
+		int pos = bag.indexOf('(');
+		while (pos >= 0) {
+			int comma = bag.indexOf(',', pos);
+			int close = bag.indexOf(')', comma);
+			int feature = Integer.parseInt(bag.substring(pos + 1, comma).trim());
+			double value = Math.log1p(Double.parseDouble(bag.substring(comma + 1, close).trim()));
+			if (length == buckets[0].length) {
+				buckets[0] = Arrays.copyOf(buckets[0], 2 * length);
+				values[0] = Arrays.copyOf(values[0], 2 * length);
+			}
+			buckets[0][length] = hasher.bucket(feature);
+			values[0][length] = (float) value;
+			norm += value * value;
+			length++;
+			pos = bag.indexOf('(', close);
+		}
+		if (norm > 0) {
+			float scale = (float) (1.0 / Math.sqrt(norm));
+			for (int i = 0; i < length; i++) {
+				values[0][i] *= scale;
+			}
+		}
+		return length;
+	}
+
+	private Examples readExamples(FtrlModel hasher) throws IOException {
+
+		Examples examples = new Examples();
+		int[][] buckets = {new int[256]};
+		float[][] values = {new float[256]};
+		BufferedReader reader = PartFiles.open(vectors, new Configuration());
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				Iterator<String> fields = TAB.split(line).iterator();
+				fields.next();
+				if (!fields.hasNext()) {
+					continue;
+				}
+				String pair = fields.next();
+				Integer label = pairLabels.get(pair);
+				if (label == null || !fields.hasNext()) {
+					continue;
+				}
+				int length = parseVector(fields.next(), hasher, buckets, values);
+				int fold = (int) ((Fingerprints.of(pair) & Long.MAX_VALUE) % Math.max(1, folds));
+				examples.add(buckets[0], values[0], length, label, fold);
+			}
+		} finally {
+			reader.close();
+		}
+		return examples;
+	}
+
+	/**
+	 * Trains a new model in epochs; in each, the examples are shuffled and
+	 * split among the threads, which update the model without locks.
+	 */
+	private FtrlModel train(final Examples examples, List<Integer> ids, ExecutorService executor) throws IOException {
+
+		final FtrlModel model = newModel();
+		final int[] order = new int[ids.size()];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = ids.get(i);
+		}
+		for (int epoch = 0; epoch < epochs; epoch++) {
+			Random random = new Random(seed * 31 + epoch);
+			for (int i = order.length - 1; i > 0; i--) {
+				int j = random.nextInt(i + 1);
+				int swap = order[i];
+				order[i] = order[j];
+				order[j] = swap;
+			}
+			List<Callable<Void>> slices = Lists.newArrayList();
+			for (int t = 0; t < threads; t++) {
+				final int from = (int) ((long) order.length * t / threads);
+				final int to = (int) ((long) order.length * (t + 1) / threads);
+				slices.add(new Callable<Void>() {
+					@Override
+					public Void call() {
+						for (int i = from; i < to; i++) {
+							examples.update(model, order[i]);
+						}
+						return null;
+					}
+				});
+			}
+			try {
+				for (Future<Void> done : executor.invokeAll(slices)) {
+					done.get();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException(e);
+			} catch (ExecutionException e) {
+				throw new IOException(e.getCause());
+			}
+		}
+		return model;
+	}
+
+	/**
+	 * Relation \t P \t R \t F1 \t support, in percent, then accuracy and macro-averaged F1.
+	 */
+	private void report(long[][] confusion) {
+
+		PrintWriter out = new PrintWriter(new OutputStreamWriter(System.out, Charsets.UTF_8));
+		out.println("Relation\tP\tR\tF1\tSupport");
+		long correct = 0;
+		long total = 0;
+		double sumF1 = 0;
+		for (int c = 0; c < classes.size(); c++) {
+			long truePositives = confusion[c][c];
+			long predicted = 0;
+			long actual = 0;
+			for (int other = 0; other < classes.size(); other++) {
+				predicted += confusion[other][c];
+				actual += confusion[c][other];
+			}
+			double p = predicted > 0 ? (double) truePositives / predicted : 0;
+			double r = actual > 0 ? (double) truePositives / actual : 0;
+			double f1 = p + r > 0 ? 2 * p * r / (p + r) : 0;
+			out.println(String.format("%s\t%.2f\t%.2f\t%.2f\t%d", classes.get(c), 100 * p, 100 * r, 100 * f1, actual));
+			correct += truePositives;
+			total += actual;
+			sumF1 += f1;
+		}
+		out.println(String.format("Accuracy\t%.2f", total > 0 ? 100.0 * correct / total : 0));
+		out.println(String.format("Macro-F1\t%.2f", classes.isEmpty() ? 0 : 100 * sumF1 / classes.size()));
+		out.flush();
+	}
+
+	private void predictAll(FtrlModel model) throws IOException {
+
+		int[][] buckets = {new int[256]};
+		float[][] values = {new float[256]};
+		BufferedReader reader = PartFiles.open(vectors, new Configuration());
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(predictions), Charsets.UTF_8));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				Iterator<String> fields = TAB.split(line).iterator();
+				String id = fields.next();
+				if (!fields.hasNext()) {
+					continue;
+				}
+				String pair = fields.next();
+				int length = fields.hasNext() ? parseVector(fields.next(), model, buckets, values) : 0;
+				double[] probabilities = model.predict(buckets[0], values[0], 0, length);
+				int best = 0;
+				for (int c = 1; c < probabilities.length; c++) {
+					if (probabilities[c] > probabilities[best]) {
+						best = c;
+					}
+				}
+				out.write(id + "\t" + pair + "\t" + classes.get(best) + "\t" + probabilities[best] + "\n");
+			}
+		} finally {
+			out.close();
+			reader.close();
+		}
+	}
+}
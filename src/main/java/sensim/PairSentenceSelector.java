@@ -10,7 +10,6 @@ import org.apache.pig.data.Tuple;
 import org.apache.pig.data.TupleFactory;
 import org.apache.pig.impl.logicalLayer.FrontendException;
 import org.apache.uima.UIMAException;
-import org.apache.uima.fit.factory.JCasFactory;
 import org.apache.uima.jcas.JCas;
 import org.xml.sax.SAXException;
 
@@ -32,19 +31,40 @@ public class PairSentenceSelector extends EvalFunc<Tuple> {
 
 	private UIMAXMLConverterHelper uimaXMLConverterHelper;
 	private TupleFactory tupleFactory = TupleFactory.getInstance();
+	private final UdfMetrics metrics = new UdfMetrics(PairSentenceSelector.class);
 
 	public PairSentenceSelector() throws UIMAException {
 
 		super();
 
-		jCas = JCasFactory.createJCas();
-		uimaXMLConverterHelper = new UIMAXMLConverterHelper(false);
+		jCas = UimaResources.borrowJCas();
+		uimaXMLConverterHelper = new UIMAXMLConverterHelper(false, UimaResources.typeSystem());
 	}
 
 	@Override
 	public Tuple exec(Tuple input) throws IOException {
 
+		metrics.begin();
+		Tuple sentence = null;
+		try {
+			sentence = selectSentence(input);
+			return sentence;
+		} finally {
+			metrics.end(input, sentence == null ? 0 : 1);
+		}
+	}
+
+	@Override
+	public void finish() {
+
+		metrics.finish();
+		UimaResources.release(jCas);
+	}
+
+	private Tuple selectSentence(Tuple input) throws IOException {
+
 		if (input == null || input.size() == 0 || input.get(0) == null) {
+			metrics.skip("NULL_INPUT");
 			return null;
 		}
 
@@ -66,10 +86,13 @@ public class PairSentenceSelector extends EvalFunc<Tuple> {
 			return tuple;
 
 		} catch (UIMAException e) {
+			metrics.error(e);
 			e.printStackTrace();
 		} catch (InterruptedException e) {
+			metrics.error(e);
 			e.printStackTrace();
 		} catch (SAXException e) {
+			metrics.error(e);
 			e.printStackTrace();
 		}
 		return null;
@@ -0,0 +1,125 @@
+package sensim;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.pig.impl.util.UDFContext;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.SequenceInputStream;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the output of a Pig STORE ( ie. a directory of part files, possibly
+ * compressed ) from within a UDF, on HDFS as well as locally. Used to load
+ * small side data such as dictionaries into every task.
+ */
+public final class PartFiles {
+
+	private static final PathFilter VISIBLE = new PathFilter() {
+		@Override
+		public boolean accept(Path path) {
+			String name = path.getName();
+			return !name.startsWith("_") && !name.startsWith(".");
+		}
+	};
+
+	private PartFiles() {
+	}
+
+	/**
+	 * @return the job configuration inside a task, a default configuration otherwise
+	 */
+	public static Configuration configuration() {
+
+		UDFContext context = UDFContext.getUDFContext();
+		if (context != null && context.getJobConf() != null) {
+			return context.getJobConf();
+		}
+		return new Configuration();
+	}
+
+	/**
+	 * Lists the files at a location, which may be a file, a directory of
+	 * part files or a glob, in lexicographic order.
+	 */
+	public static List<Path> list(String location, Configuration conf) throws IOException {
+
+		Path path = new Path(location);
+		FileSystem fs = path.getFileSystem(conf);
+		FileStatus[] matches = fs.globStatus(path);
+		if (matches == null || matches.length == 0) {
+			throw new IOException("No such file or directory: " + location);
+		}
+		List<Path> files = Lists.newArrayList();
+		for (FileStatus match : matches) {
+			if (match.isDir()) {
+				for (FileStatus child : fs.listStatus(match.getPath(), VISIBLE)) {
+					if (!child.isDir()) {
+						files.add(child.getPath());
+					}
+				}
+			} else {
+				files.add(match.getPath());
+			}
+		}
+		Collections.sort(files);
+		return files;
+	}
+
+	/**
+	 * Opens a single, possibly compressed file.
+	 */
+	public static InputStream openFile(Path file, Configuration conf) throws IOException {
+
+		InputStream in = file.getFileSystem(conf).open(file);
+		CompressionCodec codec = new CompressionCodecFactory(conf).getCodec(file);
+		return codec == null ? in : codec.createInputStream(in);
+	}
+
+	/**
+	 * Opens all files at a location as one stream of UTF-8 lines.
+	 */
+	public static BufferedReader open(String location) throws IOException {
+
+		return open(location, configuration());
+	}
+
+	public static BufferedReader open(String location, final Configuration conf) throws IOException {
+
+		final Iterator<Path> files = list(location, conf).iterator();
+		// open the part files lazily, one at a time
+		Enumeration<InputStream> streams = new Enumeration<InputStream>() {
+			@Override
+			public boolean hasMoreElements() {
+				return files.hasNext();
+			}
+
+			@Override
+			public InputStream nextElement() {
+				if (!files.hasNext()) {
+					throw new NoSuchElementException();
+				}
+				try {
+					return openFile(files.next(), conf);
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		};
+		return new BufferedReader(new InputStreamReader(new SequenceInputStream(streams), Charsets.UTF_8));
+	}
+}
@@ -16,7 +16,6 @@ import org.apache.pig.data.Tuple;
 import org.apache.uima.UIMAException;
 import org.apache.uima.cas.Type;
 import org.apache.uima.fit.factory.JCasBuilder;
-import org.apache.uima.fit.factory.JCasFactory;
 import org.apache.uima.jcas.JCas;
 import org.xml.sax.SAXException;
 
@@ -40,6 +39,7 @@ public class PukwacReader extends EvalFunc<String> {
 
 	private final JCas jCas;
 	private UIMAXMLConverterHelper uimaXMLConverterHelper;
+	private final UdfMetrics metrics = new UdfMetrics(PukwacReader.class);
 
 	private final String language;
 
@@ -55,14 +55,34 @@ public class PukwacReader extends EvalFunc<String> {
 		super();
 		this.language = language;
 
-		jCas = JCasFactory.createJCas();
-		uimaXMLConverterHelper = new UIMAXMLConverterHelper(false);
+		jCas = UimaResources.borrowJCas();
+		uimaXMLConverterHelper = new UIMAXMLConverterHelper(false, UimaResources.typeSystem());
 	}
 
 	@Override
 	public String exec(Tuple input) throws IOException {
 
+		metrics.begin();
+		String parse = null;
+		try {
+			parse = readPukwacSentence(input);
+			return parse;
+		} finally {
+			metrics.end(input, parse == null ? 0 : 1);
+		}
+	}
+
+	@Override
+	public void finish() {
+
+		metrics.finish();
+		UimaResources.release(jCas);
+	}
+
+	private String readPukwacSentence(Tuple input) throws IOException {
+
 		if (input == null || input.size() == 0 || input.get(0) == null) {
+			metrics.skip("NULL_INPUT");
 			return null;
 		}
 
@@ -75,6 +95,7 @@ public class PukwacReader extends EvalFunc<String> {
 
 			List<String[]> words = readSentence(conllSentence);
 			if(words == null || words.size() == 0) {
+				metrics.skip("MALFORMED_SENTENCE");
 				return null;
 			}
 
@@ -166,6 +187,7 @@ public class PukwacReader extends EvalFunc<String> {
 			//return uimaXMLConverterHelper.serialize(jCas) // ??
 
 		} catch (SAXException e) {
+			metrics.error(e);
 			e.printStackTrace();
 		}
 		return null;
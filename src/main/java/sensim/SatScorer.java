@@ -0,0 +1,542 @@
+package sensim;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.google.common.base.Charsets;
+import com.google.common.base.Predicate;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Solves the SAT analogy questions as compute_similarity_between_datapoints
+ * and compute_loss of src/main/python/predict_sat.py do, for many settings at
+ * once: the vectors of the pairs in the questions are read once into primitive
+ * arrays, and every combination of similarity measure and pruning is scored
+ * on a pool of threads.
+ * <p/>
+ * A question is answered in the direction ( as given or inverted ) for which more
+ * answers have a vector, with the answer most similar to the question; it is
+ * skipped ( prediction -1 ) if neither has a vector or no answer has a similarity
+ * above 0. Measures, on the features of the two vectors:
+ * <pre>
+ * overlap      number of shared features
+ * dotproduct   sum of q * a over the shared features
+ * cosine       dotproduct / ( |q| |a| )
+ * jaccard      shared features / all features
+ * lin          sum of q + a over the shared features / ( sum of q + sum of a ), s. Lin ( 1998 )
+ * </pre>
+ * Pruning keeps the given number of features with the largest values per vector,
+ * 0 keeps all.
+ * <pre>
+ * java -cp <job jar>:`hadoop classpath`:<pig jar> sensim.SatScorer -test sat/test.tsv \
+ *     -vectors vectors_lmi_flipped.gz -output sat [-measures cosine,jaccard,lin] [-prune 0,100,1000] [-threads 4]
+ * </pre>
+ * writes predictions.&lt;measure&gt;.&lt;prune&gt;.tsv in the format of predict_sat.py
+ * ( question \t answer \t prediction \t solution ) and one line per setting to loss.tsv.
+ * The questions are test.tsv as written by clean_SAT_data, the vectors those of
+ * step (10a) whose rows are pairs, ie. the flipped ones,
+ * id \t noun1::@::noun2 \t {(index,value),...}, as stored by
+ * PigStorage or BlockStorage. Unlike get_features_from_vectors, pairs are not lemmatized.
+ */
+public class SatScorer {
+
+	private static final Log log = LogFactory.getLog(SatScorer.class);
+
+	private static final Splitter COMMA = Splitter.on(',').trimResults().omitEmptyStrings();
+	private static final Pattern PAIR = Pattern.compile("\\(([^(),]*),([^(),]*)\\)");
+	private static final int CHOICES = 5;
+	private static final int QUESTIONS_PER_TASK = 64;
+
+	@Parameter(names = {"-test"}, description = "Multiple-choice questions, key \\t {question: [answers], inverse: [answers]} ( test.tsv of predict_sat.py )", required = true)
+	String test;
+
+	@Parameter(names = {"-vectors"}, description = "Feature vectors: id \\t name \\t {(index,value),...} ( step 10a )", required = true)
+	String vectors;
+
+	@Parameter(names = {"-output"}, description = "Output directory", required = true)
+	String output;
+
+	@Parameter(names = {"-measures"}, description = "Similarity measures, comma-separated: overlap, dotproduct, cosine, jaccard, lin", required = false)
+	String measures = "cosine,jaccard,lin";
+
+	@Parameter(names = {"-prune"}, description = "Numbers of features to keep per vector, comma-separated, 0 for all", required = false)
+	String prune = "0";
+
+	@Parameter(names = {"-threads"}, description = "Number of threads", required = false)
+	int numThreads = Runtime.getRuntime().availableProcessors();
+
+	public enum Measure {
+		OVERLAP, DOTPRODUCT, COSINE, JACCARD, LIN;
+
+		public static Measure of(String name) {
+
+			return valueOf(name.trim().toUpperCase(Locale.ENGLISH));
+		}
+	}
+
+	/**
+	 * A multiple-choice question as given and inverted; pairs are "(noun1,noun2)".
+	 */
+	static final class Question {
+
+		final int solution;
+		// [ direction ], the first as given in test.tsv
+		final String[] stems = new String[2];
+		final String[][] choices = new String[2][CHOICES];
+
+		Question(int solution) {
+
+			this.solution = solution;
+		}
+	}
+
+	/**
+	 * The vectors of the pairs, row by row: features ascending, and the norm and
+	 * sum of the values of each row.
+	 */
+	static final class PairVectors {
+
+		final Map<String, Integer> rows;
+		final int[] offsets;
+		final int[] features;
+		final double[] values;
+		final double[] norms;
+		final double[] sums;
+
+		PairVectors(Map<String, Integer> rows, int[] offsets, int[] features, double[] values) {
+
+			this.rows = rows;
+			this.offsets = offsets;
+			this.features = features;
+			this.values = values;
+			int numRows = offsets.length - 1;
+			norms = new double[numRows];
+			sums = new double[numRows];
+			for (int row = 0; row < numRows; row++) {
+				double squares = 0;
+				for (int k = offsets[row]; k < offsets[row + 1]; k++) {
+					squares += values[k] * values[k];
+					sums[row] += values[k];
+				}
+				norms[row] = Math.sqrt(squares);
+			}
+		}
+
+		/**
+		 * @return the row of the pair, or -1 if it has no features, as predict_sat.py
+		 * treats empty vectors like missing ones
+		 */
+		int row(String pair) {
+
+			Integer row = rows.get(pair);
+			return row == null || offsets[row] == offsets[row + 1] ? -1 : row;
+		}
+
+		/**
+		 * @return the vectors with the numFeatures largest values of each row, or these if 0
+		 */
+		PairVectors pruned(int numFeatures) {
+
+			if (numFeatures <= 0) {
+				return this;
+			}
+			int numRows = offsets.length - 1;
+			int[] prunedOffsets = new int[numRows + 1];
+			for (int row = 0; row < numRows; row++) {
+				prunedOffsets[row + 1] = prunedOffsets[row] + Math.min(numFeatures, offsets[row + 1] - offsets[row]);
+			}
+			int[] prunedFeatures = new int[prunedOffsets[numRows]];
+			double[] prunedValues = new double[prunedFeatures.length];
+			VectorCodec.SparseVector vector = new VectorCodec.SparseVector();
+			for (int row = 0; row < numRows; row++) {
+				int from = offsets[row];
+				int size = offsets[row + 1] - from;
+				// by value, descending, ties by feature
+				Integer[] order = new Integer[size];
+				for (int k = 0; k < size; k++) {
+					order[k] = from + k;
+				}
+				Arrays.sort(order, new Comparator<Integer>() {
+					@Override
+					public int compare(Integer a, Integer b) {
+						int byValue = Double.compare(values[b], values[a]);
+						return byValue != 0 ? byValue : a.compareTo(b);
+					}
+				});
+				int keep = prunedOffsets[row + 1] - prunedOffsets[row];
+				vector.ensureCapacity(keep);
+				vector.size = keep;
+				for (int k = 0; k < keep; k++) {
+					vector.indices[k] = features[order[k]];
+					vector.values[k] = values[order[k]];
+				}
+				vector.sort();
+				System.arraycopy(vector.indices, 0, prunedFeatures, prunedOffsets[row], keep);
+				System.arraycopy(vector.values, 0, prunedValues, prunedOffsets[row], keep);
+			}
+			return new PairVectors(rows, prunedOffsets, prunedFeatures, prunedValues);
+		}
+
+		double similarity(int a, int b, Measure measure) {
+
+			int i = offsets[a];
+			int iEnd = offsets[a + 1];
+			int j = offsets[b];
+			int jEnd = offsets[b + 1];
+			int shared = 0;
+			double dot = 0;
+			double sharedSum = 0;
+			while (i < iEnd && j < jEnd) {
+				if (features[i] < features[j]) {
+					i++;
+				} else if (features[i] > features[j]) {
+					j++;
+				} else {
+					shared++;
+					dot += values[i] * values[j];
+					sharedSum += values[i] + values[j];
+					i++;
+					j++;
+				}
+			}
+			switch (measure) {
+				case OVERLAP:
+					return shared;
+				case DOTPRODUCT:
+					return dot;
+				case COSINE:
+					return norms[a] == 0 || norms[b] == 0 ? 0 : dot / (norms[a] * norms[b]);
+				case JACCARD:
+					int union = (offsets[a + 1] - offsets[a]) + (offsets[b + 1] - offsets[b]) - shared;
+					return union == 0 ? 0 : (double) shared / union;
+				case LIN:
+					double total = sums[a] + sums[b];
+					return total == 0 ? 0 : sharedSum / total;
+				default:
+					throw new IllegalArgumentException("Unknown measure: " + measure);
+			}
+		}
+	}
+
+	/**
+	 * The answer to a question: the chosen pair, or "__", and its index, or -1.
+	 */
+	static final class Prediction {
+
+		final String answer;
+		final int label;
+
+		Prediction(String answer, int label) {
+
+			this.answer = answer;
+			this.label = label;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+
+		SatScorer scorer = new SatScorer();
+		JCommander jCommander = new JCommander(scorer);
+		try {
+			jCommander.parse(args);
+		} catch (ParameterException e) {
+			System.err.println(e.getMessage());
+			jCommander.setProgramName(SatScorer.class.getSimpleName());
+			jCommander.usage();
+			System.exit(1);
+		}
+		scorer.run();
+	}
+
+	public void run() throws IOException {
+
+		File dir = new File(output);
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Can't create " + dir);
+		}
+		List<Question> questions = readQuestions(test);
+		PairVectors pairs = readPairs(vectors, questions);
+
+		// all settings share the pool, each in chunks of questions
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		Writer loss = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(dir, "loss.tsv")), Charsets.UTF_8));
+		try {
+			loss.write("measure\tprune\tcorrectness\tzero_one_loss\tpredicted\tquestions\n");
+			Map<String, List<Future<Prediction[]>>> settings = Maps.newLinkedHashMap();
+			for (String numFeaturesName : COMMA.split(prune)) {
+				int numFeatures = Integer.parseInt(numFeaturesName);
+				PairVectors pruned = pairs.pruned(numFeatures);
+				for (String name : COMMA.split(measures)) {
+					Measure measure = Measure.of(name);
+					settings.put(measure.name().toLowerCase(Locale.ENGLISH) + "\t" + numFeatures,
+							submit(executor, questions, pruned, measure));
+				}
+			}
+			for (Map.Entry<String, List<Future<Prediction[]>>> setting : settings.entrySet()) {
+				Prediction[] predictions = collect(setting.getValue(), questions.size());
+				String[] fields = setting.getKey().split("\t");
+				writePredictions(new File(dir, "predictions." + fields[0] + "." + fields[1] + ".tsv"), questions, predictions);
+				loss.write(setting.getKey() + "\t" + loss(questions, predictions) + "\n");
+			}
+			log.info("Scored " + questions.size() + " questions in " + settings.size() + " settings, s. "
+					+ new File(dir, "loss.tsv"));
+		} finally {
+			executor.shutdownNow();
+			loss.close();
+		}
+	}
+
+	private static List<Future<Prediction[]>> submit(ExecutorService executor, final List<Question> questions,
+	                                                final PairVectors pairs, final Measure measure) {
+
+		List<Future<Prediction[]>> chunks = Lists.newArrayList();
+		for (int start = 0; start < questions.size(); start += QUESTIONS_PER_TASK) {
+			final int from = start;
+			final int to = Math.min(start + QUESTIONS_PER_TASK, questions.size());
+			chunks.add(executor.submit(new Callable<Prediction[]>() {
+				@Override
+				public Prediction[] call() {
+					Prediction[] predictions = new Prediction[to - from];
+					for (int q = from; q < to; q++) {
+						predictions[q - from] = predict(questions.get(q), pairs, measure);
+					}
+					return predictions;
+				}
+			}));
+		}
+		return chunks;
+	}
+
+	private static Prediction[] collect(List<Future<Prediction[]>> chunks, int numQuestions) throws IOException {
+
+		Prediction[] predictions = new Prediction[numQuestions];
+		int q = 0;
+		for (Future<Prediction[]> chunk : chunks) {
+			try {
+				Prediction[] part = chunk.get();
+				System.arraycopy(part, 0, predictions, q, part.length);
+				q += part.length;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while scoring questions");
+			} catch (ExecutionException e) {
+				throw new IOException("Failed to score questions", e.getCause());
+			}
+		}
+		return predictions;
+	}
+
+	static Prediction predict(Question question, PairVectors pairs, Measure measure) {
+
+		Prediction none = new Prediction("__", -1);
+
+		// the direction with more answers that have a vector, the given one on ties
+		int[] found = new int[2];
+		for (int d = 0; d < 2; d++) {
+			for (String choice : question.choices[d]) {
+				if (choice != null && pairs.row(choice) >= 0) {
+					found[d]++;
+				}
+			}
+		}
+		int direction = found[0] >= found[1] ? 0 : 1;
+		int stem = pairs.row(question.stems[direction]);
+		if (stem < 0 || found[direction] == 0) {
+			return none;
+		}
+
+		double maxSimilarity = 0.0;
+		int best = -1;
+		for (int c = 0; c < CHOICES; c++) {
+			String choice = question.choices[direction][c];
+			int row = choice == null ? -1 : pairs.row(choice);
+			if (row < 0) {
+				continue;
+			}
+			double similarity = pairs.similarity(stem, row, measure);
+			if (similarity > maxSimilarity) {
+				maxSimilarity = similarity;
+				best = c;
+			}
+		}
+		return best < 0 ? none : new Prediction(question.choices[direction][best], best);
+	}
+
+	/**
+	 * @return correctness, zero-one loss, number of predicted and of all questions,
+	 * tab-separated; as compute_loss, questions without prediction don't count
+	 */
+	static String loss(List<Question> questions, Prediction[] predictions) {
+
+		int predicted = 0;
+		int correct = 0;
+		for (int q = 0; q < predictions.length; q++) {
+			if (predictions[q].label < 0) {
+				continue;
+			}
+			predicted++;
+			if (predictions[q].label == questions.get(q).solution) {
+				correct++;
+			}
+		}
+		double correctness = predicted == 0 ? 0 : (double) correct / predicted;
+		double zeroOneLoss = predicted == 0 ? 0 : (double) (predicted - correct) / predicted;
+		return correctness + "\t" + zeroOneLoss + "\t" + predicted + "\t" + predictions.length;
+	}
+
+	private static void writePredictions(File file, List<Question> questions, Prediction[] predictions) throws IOException {
+
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), Charsets.UTF_8));
+		try {
+			for (int q = 0; q < predictions.length; q++) {
+				Question question = questions.get(q);
+				out.write(question.stems[0] + "\t" + predictions[q].answer + "\t" + predictions[q].label + "\t"
+						+ question.solution + "\n");
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads "index__solution \t {'(q1,q2)': ['(a1,a2)', ...], '(q2,q1)': ['(a2,a1)', ...]}"
+	 * lines; the pairs are taken in order of appearance.
+	 */
+	static List<Question> readQuestions(String location) throws IOException {
+
+		List<Question> questions = Lists.newArrayList();
+		BufferedReader reader = PartFiles.open(location, new Configuration());
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int tab = line.indexOf('\t');
+				if (tab < 0) {
+					continue;
+				}
+				String key = line.substring(0, tab);
+				Question question = new Question(Integer.parseInt(key.substring(key.indexOf("__") + 2)));
+				Matcher pair = PAIR.matcher(line.substring(tab + 1));
+				for (int k = 0; k < 2 * (CHOICES + 1) && pair.find(); k++) {
+					String name = "(" + pair.group(1).trim() + "," + pair.group(2).trim() + ")";
+					if (k % (CHOICES + 1) == 0) {
+						question.stems[k / (CHOICES + 1)] = name;
+					} else {
+						question.choices[k / (CHOICES + 1)][k % (CHOICES + 1) - 1] = name;
+					}
+				}
+				if (question.stems[1] == null) {
+					throw new IOException("Expected a question and its inverse with " + CHOICES + " answers each: " + line);
+				}
+				questions.add(question);
+			}
+		} finally {
+			reader.close();
+		}
+		log.info("Read " + questions.size() + " questions from " + location);
+		return questions;
+	}
+
+	/**
+	 * Reads the vectors of the pairs that occur in the questions.
+	 */
+	static PairVectors readPairs(String location, List<Question> questions) throws IOException {
+
+		final Set<String> wanted = Sets.newHashSet();
+		for (Question question : questions) {
+			for (int d = 0; d < 2; d++) {
+				wanted.add(question.stems[d]);
+				for (String choice : question.choices[d]) {
+					if (choice != null) {
+						wanted.add(choice);
+					}
+				}
+			}
+		}
+		ArrayExport.Vectors read = ArrayExport.readVectors(location, new Predicate<String>() {
+			@Override
+			public boolean apply(String name) {
+				return name != null && wanted.contains(pairName(name));
+			}
+		});
+
+		Map<String, Integer> rows = Maps.newHashMap();
+		List<Integer> ids = Lists.newArrayList();
+		int numEntries = 0;
+		for (int i = 0; i < read.names.size(); i++) {
+			if (read.names.get(i) != null && !rows.containsKey(pairName(read.names.get(i)))) {
+				rows.put(pairName(read.names.get(i)), ids.size());
+				ids.add(i);
+				numEntries += read.indices.get(i).length;
+			}
+		}
+		int[] offsets = new int[ids.size() + 1];
+		int[] features = new int[numEntries];
+		double[] values = new double[numEntries];
+		for (int row = 0; row < ids.size(); row++) {
+			int[] idx = read.indices.get(ids.get(row));
+			System.arraycopy(idx, 0, features, offsets[row], idx.length);
+			System.arraycopy(read.values.get(ids.get(row)), 0, values, offsets[row], idx.length);
+			offsets[row + 1] = offsets[row] + idx.length;
+		}
+		log.info("Found " + rows.size() + " of " + wanted.size() + " pairs of the questions in " + location);
+		if (rows.isEmpty()) {
+			throw new IOException("None of the pairs of the questions in " + location
+					+ ", expected rows named noun1::@::noun2, eg. vectors_lmi_flipped.gz");
+		}
+		int unanswerable = 0;
+		for (Question question : questions) {
+			boolean answerable = false;
+			for (int d = 0; d < 2; d++) {
+				for (String choice : question.choices[d]) {
+					answerable |= rows.containsKey(question.stems[d]) && choice != null && rows.containsKey(choice);
+				}
+			}
+			if (!answerable) {
+				unanswerable++;
+			}
+		}
+		if (unanswerable > 0) {
+			log.warn(unanswerable + " of " + questions.size() + " questions lack the vectors of their stem or of all their choices");
+		}
+		return new PairVectors(rows, offsets, features, values);
+	}
+
+	/**
+	 * @return "(noun1,noun2)" for the names of step (10a), "noun1::@::noun2"; other names as they are
+	 */
+	static String pairName(String name) {
+
+		int separator = name.indexOf("::@::");
+		if (separator < 0) {
+			return name;
+		}
+		return "(" + name.substring(0, separator) + "," + name.substring(separator + "::@::".length()) + ")";
+	}
+}
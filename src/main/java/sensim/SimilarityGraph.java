@@ -0,0 +1,307 @@
+package sensim;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Maps;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * An undirected, weighted graph in compressed sparse row format: the edges of
+ * node i are <code>targets[offsets[i] .. offsets[i + 1] - 1]</code> with the
+ * corresponding weights, sorted by target. Each edge is stored in both
+ * directions, self-loops are dropped.
+ * <p/>
+ * Takes 8 bytes per edge and direction plus 8 bytes per node, so some hundred
+ * million edges fit into a few GB of heap. Inputs are read twice, once to count
+ * the degrees and once to fill in the edges, so they are never held as objects.
+ */
+public class SimilarityGraph {
+
+	private static final Log log = LogFactory.getLog(SimilarityGraph.class);
+
+	private static final Splitter WHITESPACE = Splitter.on(' ').omitEmptyStrings();
+	private static final Splitter TAB = Splitter.on('\t');
+
+	private final int numNodes;
+	private final long[] offsets;
+	private final int[] targets;
+	private final float[] weights;
+	// null if nodes are only known by their ids
+	private final String[] names;
+
+	private SimilarityGraph(long[] offsets, int[] targets, float[] weights, String[] names) {
+
+		this.numNodes = offsets.length - 1;
+		this.offsets = offsets;
+		this.targets = targets;
+		this.weights = weights;
+		this.names = names;
+	}
+
+	public int numNodes() {
+
+		return numNodes;
+	}
+
+	public long numEdges() {
+
+		return offsets[numNodes];
+	}
+
+	public int degree(int node) {
+
+		return (int) (offsets[node + 1] - offsets[node]);
+	}
+
+	public int maxDegree() {
+
+		int max = 0;
+		for (int node = 0; node < numNodes; node++) {
+			max = Math.max(max, degree(node));
+		}
+		return max;
+	}
+
+	/**
+	 * @return index of the first edge of the node in {@link #targets()} and {@link #weights()}
+	 */
+	public int firstEdge(int node) {
+
+		return (int) offsets[node];
+	}
+
+	public int[] targets() {
+
+		return targets;
+	}
+
+	public float[] weights() {
+
+		return weights;
+	}
+
+	public boolean hasNames() {
+
+		return names != null;
+	}
+
+	/**
+	 * @return the name of a node, or its 1-based id if nodes have no names
+	 */
+	public String name(int node) {
+
+		return names == null || names[node] == null ? String.valueOf(node + 1) : names[node];
+	}
+
+	/**
+	 * Reads a distance matrix as written by MatrixMarketStorageWithCounts or
+	 * LocalDistanceMatrix ( step 11a ): a header of % lines and a line
+	 * "rows columns entries", then one "row column distance" line per entry,
+	 * with 1-based ids. A directory of part files, each with its own header,
+	 * is read as one matrix. Distances are turned into similarities, 1 - distance,
+	 * and edges with a similarity below minWeight are dropped.
+	 *
+	 * @param names optional dictionary of node names, "id \t name" lines such as
+	 *              the pairid and pair columns of the feature vectors ( step 10a ), or null
+	 */
+	public static SimilarityGraph readMatrixMarket(String location, String names, double minWeight) throws IOException {
+
+		Edges edges = new Edges() {
+			@Override
+			boolean read(String line, int[] ends, float[] weight) {
+				if (line.startsWith("%")) {
+					// a new part file starts; its first line after the comments is the size
+					skipSize = true;
+					return false;
+				}
+				if (skipSize) {
+					skipSize = false;
+					return false;
+				}
+				Iterator<String> fields = WHITESPACE.split(line).iterator();
+				ends[0] = Integer.parseInt(fields.next()) - 1;
+				ends[1] = Integer.parseInt(fields.next()) - 1;
+				weight[0] = (float) (1.0 - Double.parseDouble(fields.next()));
+				return true;
+			}
+
+			boolean skipSize = false;
+		};
+		SimilarityGraph graph = read(location, edges, minWeight, null);
+		if (names == null) {
+			return graph;
+		}
+
+		String[] nodeNames = new String[graph.numNodes];
+		BufferedReader reader = PartFiles.open(names, new Configuration());
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				Iterator<String> fields = TAB.split(line).iterator();
+				int node = Integer.parseInt(fields.next()) - 1;
+				if (node < nodeNames.length && fields.hasNext()) {
+					nodeNames[node] = fields.next();
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return new SimilarityGraph(graph.offsets, graph.targets, graph.weights, nodeNames);
+	}
+
+	/**
+	 * Reads similarities of named nodes, "left \t right \t similarity" lines
+	 * such as the output of the JoBimText similarity step. Ids are assigned in
+	 * order of appearance; edges with a similarity below minWeight are dropped,
+	 * nodes left without edges are kept as isolated nodes.
+	 */
+	public static SimilarityGraph readPairs(String location, double minWeight) throws IOException {
+
+		final Map<String, Integer> ids = Maps.newHashMap();
+		Edges edges = new Edges() {
+			@Override
+			boolean read(String line, int[] ends, float[] weight) {
+				Iterator<String> fields = TAB.split(line).iterator();
+				ends[0] = id(fields.next());
+				ends[1] = id(fields.next());
+				weight[0] = Float.parseFloat(fields.next().trim());
+				return true;
+			}
+
+			private int id(String name) {
+				Integer id = ids.get(name);
+				if (id == null) {
+					id = ids.size();
+					ids.put(name, id);
+				}
+				return id;
+			}
+		};
+		return read(location, edges, minWeight, ids);
+	}
+
+	/**
+	 * Parses edges from lines; keeps its state across both passes.
+	 */
+	private abstract static class Edges {
+
+		/**
+		 * @return false if the line holds no edge
+		 */
+		abstract boolean read(String line, int[] ends, float[] weight);
+	}
+
+	private static SimilarityGraph read(String location, Edges edges, double minWeight,
+	                                    Map<String, Integer> ids) throws IOException {
+
+		int[] ends = new int[2];
+		float[] weight = new float[1];
+
+		// first pass: degrees
+		long[] degrees = new long[1024];
+		int numNodes = 0;
+		BufferedReader reader = PartFiles.open(location, new Configuration());
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isEmpty() || !edges.read(line, ends, weight) || weight[0] < minWeight || ends[0] == ends[1]) {
+					continue;
+				}
+				numNodes = Math.max(numNodes, Math.max(ends[0], ends[1]) + 1);
+				if (numNodes > degrees.length) {
+					degrees = Arrays.copyOf(degrees, Math.max(numNodes, 2 * degrees.length));
+				}
+				degrees[ends[0]]++;
+				degrees[ends[1]]++;
+			}
+		} finally {
+			reader.close();
+		}
+		if (ids != null && ids.size() > numNodes) {
+			// named nodes whose edges were all filtered out stay, as isolated nodes
+			numNodes = ids.size();
+			degrees = Arrays.copyOf(degrees, Math.max(numNodes, degrees.length));
+		}
+
+		long[] offsets = new long[numNodes + 1];
+		for (int node = 0; node < numNodes; node++) {
+			offsets[node + 1] = offsets[node] + degrees[node];
+		}
+		if (offsets[numNodes] > Integer.MAX_VALUE - 8) {
+			throw new IOException("Too many edges for a single array: " + offsets[numNodes]);
+		}
+		int[] targets = new int[(int) offsets[numNodes]];
+		float[] weights = new float[targets.length];
+
+		// second pass: edges, in both directions
+		long[] fill = Arrays.copyOf(offsets, numNodes);
+		reader = PartFiles.open(location, new Configuration());
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isEmpty() || !edges.read(line, ends, weight) || weight[0] < minWeight || ends[0] == ends[1]) {
+					continue;
+				}
+				int edge = (int) fill[ends[0]]++;
+				targets[edge] = ends[1];
+				weights[edge] = weight[0];
+				edge = (int) fill[ends[1]]++;
+				targets[edge] = ends[0];
+				weights[edge] = weight[0];
+			}
+		} finally {
+			reader.close();
+		}
+
+		String[] names = null;
+		if (ids != null) {
+			names = new String[numNodes];
+			for (Map.Entry<String, Integer> id : ids.entrySet()) {
+				names[id.getValue()] = id.getKey();
+			}
+		}
+		SimilarityGraph graph = new SimilarityGraph(offsets, targets, weights, names).merged();
+		log.info("Read " + graph.numNodes() + " nodes and " + graph.numEdges() / 2 + " edges from " + location);
+		return graph;
+	}
+
+	/**
+	 * Sorts the edges of each node by target and merges duplicates, eg. of
+	 * inputs that list each edge in both directions, keeping the larger weight.
+	 */
+	private SimilarityGraph merged() {
+
+		long[] sorted = new long[maxDegree()];
+		long[] mergedOffsets = new long[numNodes + 1];
+		int out = 0;
+		for (int node = 0; node < numNodes; node++) {
+			int first = firstEdge(node);
+			int degree = degree(node);
+			// target in the upper half, the weight's bits in the lower
+			for (int i = 0; i < degree; i++) {
+				sorted[i] = ((long) targets[first + i] << 32) | (Float.floatToIntBits(weights[first + i]) & 0xffffffffL);
+			}
+			Arrays.sort(sorted, 0, degree);
+			for (int i = 0; i < degree; i++) {
+				int target = (int) (sorted[i] >>> 32);
+				float weight = Float.intBitsToFloat((int) sorted[i]);
+				if (out > mergedOffsets[node] && targets[out - 1] == target) {
+					weights[out - 1] = Math.max(weights[out - 1], weight);
+				} else {
+					targets[out] = target;
+					weights[out] = weight;
+					out++;
+				}
+			}
+			mergedOffsets[node + 1] = out;
+		}
+		return new SimilarityGraph(mergedOffsets, targets, weights, names);
+	}
+}
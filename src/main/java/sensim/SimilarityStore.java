@@ -0,0 +1,470 @@
+package sensim;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+/**
+ * Similarities of pairs in a memory-mapped file, for top-N neighbour and
+ * pairwise lookups without scanning the distance matrix.
+ * <p/>
+ * Built from the distance matrix of step (11a) ( lower triangular distances,
+ * as written by MatrixMarketStorageWithCounts or LocalDistanceMatrix ): the
+ * similarities, 1 - distance, in both directions, as a CSR file of
+ * {@link ArrayExport} whose rows are sorted by similarity, descending, plus
+ * the dictionary of the pair names, ie. &lt;store&gt;.csr and &lt;store&gt;.rows.dict.
+ * The neighbours of a pair are the head of its row; the similarity of two
+ * pairs is found in the shorter of their rows. Offsets and names are read into
+ * memory, the entries are mapped.
+ * <p/>
+ * Build a store, then query it or serve it over HTTP as tab-separated text;
+ * pairs are named like the rows of the pair vectors, eg. dog::@::cat:
+ * <pre>
+ * java -cp <job jar>:`hadoop classpath` sensim.SimilarityStore -build dmatrix -names vectors_lmi_flipped.gz -store dmatrix_store
+ * java -cp <job jar>:`hadoop classpath` sensim.SimilarityStore -store dmatrix_store -query dog::@::cat [-n 10]
+ * java -cp <job jar>:`hadoop classpath` sensim.SimilarityStore -store dmatrix_store -port 8080 [-host 0.0.0.0]
+ * curl 'localhost:8080/neighbours?name=dog::@::cat&n=10'
+ * curl 'localhost:8080/similarity?a=dog::@::cat&b=horse::@::cow'
+ * </pre>
+ * The server listens on localhost only, unless another -host is given.
+ */
+public class SimilarityStore implements Closeable {
+
+	private static final Log log = LogFactory.getLog(SimilarityStore.class);
+
+	// entries per mapped chunk ( 1 GB of indices or similarities )
+	private static final int CHUNK_BITS = 28;
+	private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+
+	@Parameter(names = {"-store"}, description = "Store, without the .csr and .rows.dict extensions", required = true)
+	String store;
+
+	@Parameter(names = {"-build"}, description = "Build the store from a distance matrix ( MatrixMarket, step 11a )", required = false)
+	String matrix;
+
+	@Parameter(names = {"-names"}, description = "Names of the pairs of the distance matrix: id \\t name ( eg. the feature vectors )", required = false)
+	String names;
+
+	@Parameter(names = {"-query"}, description = "Print the neighbours of a pair", required = false)
+	String query;
+
+	@Parameter(names = {"-n"}, description = "Number of neighbours", required = false)
+	int n = 10;
+
+	@Parameter(names = {"-port"}, description = "Serve the store over HTTP on this port", required = false)
+	int port = 0;
+
+	@Parameter(names = {"-host"}, description = "Address the HTTP server listens on, eg. 0.0.0.0 for all interfaces", required = false)
+	String host = "localhost";
+
+	@Parameter(names = {"-threads"}, description = "Number of threads of the HTTP server", required = false)
+	int threads = Runtime.getRuntime().availableProcessors();
+
+	public static final class Neighbour {
+
+		public final int node;
+		public final String name;
+		public final float similarity;
+
+		Neighbour(int node, String name, float similarity) {
+
+			this.node = node;
+			this.name = name;
+			this.similarity = similarity;
+		}
+	}
+
+	private final RandomAccessFile file;
+	private final long[] offsets;
+	private final MappedByteBuffer[] targets;
+	private final MappedByteBuffer[] similarities;
+	// null if the nodes are only known by their ids
+	private final String[] nodeNames;
+	private final Map<String, Integer> ids;
+
+	private SimilarityStore(RandomAccessFile file, long[] offsets, MappedByteBuffer[] targets,
+	                        MappedByteBuffer[] similarities, String[] nodeNames) {
+
+		this.file = file;
+		this.offsets = offsets;
+		this.targets = targets;
+		this.similarities = similarities;
+		this.nodeNames = nodeNames;
+		this.ids = Maps.newHashMapWithExpectedSize(nodeNames == null ? 0 : nodeNames.length);
+		for (int node = 0; nodeNames != null && node < nodeNames.length; node++) {
+			if (nodeNames[node] != null && !nodeNames[node].isEmpty()) {
+				ids.put(nodeNames[node], node);
+			}
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+
+		SimilarityStore options = new SimilarityStore(null, new long[1], null, null, null);
+		JCommander jCommander = new JCommander(options);
+		try {
+			jCommander.parse(args);
+		} catch (ParameterException e) {
+			System.err.println(e.getMessage());
+			jCommander.setProgramName(SimilarityStore.class.getSimpleName());
+			jCommander.usage();
+			System.exit(1);
+		}
+		if (options.matrix != null) {
+			build(options.matrix, options.names, options.store);
+		}
+		if (options.n < 0) {
+			System.err.println("Negative number of neighbours: " + options.n);
+			System.exit(1);
+		}
+		if (options.query != null) {
+			SimilarityStore store = open(options.store);
+			try {
+				Writer out = new BufferedWriter(new OutputStreamWriter(System.out, Charsets.UTF_8));
+				store.writeNeighbours(options.query, options.n, out);
+				out.flush();
+			} finally {
+				store.close();
+			}
+		}
+		if (options.port > 0) {
+			serve(open(options.store), options.host, options.port, options.threads);
+		}
+	}
+
+	public static void build(String matrix, String names, String store) throws IOException {
+
+		File csr = new File(store + ".csr");
+		File dir = csr.getAbsoluteFile().getParentFile();
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Can't create " + dir);
+		}
+		SimilarityGraph graph = SimilarityGraph.readMatrixMarket(matrix, names, Double.NEGATIVE_INFINITY);
+		ArrayExport.writeGraph(dir, new File(store).getName(), graph, true);
+	}
+
+	/**
+	 * Opens &lt;store&gt;.csr and, if there is one, &lt;store&gt;.rows.dict.
+	 */
+	public static SimilarityStore open(String store) throws IOException {
+
+		File dictionary = new File(store + ".rows.dict");
+		return open(new File(store + ".csr"), dictionary.exists() ? dictionary : null);
+	}
+
+	public static SimilarityStore open(File csr, File dictionary) throws IOException {
+
+		String[] nodeNames = dictionary == null ? null : readNames(dictionary);
+		RandomAccessFile file = new RandomAccessFile(csr, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			ByteBuffer header = map(channel, 0, ArrayExport.HEADER_BYTES);
+			if (header.getInt(0) != ArrayExport.CSR_MAGIC || header.getInt(4) != ArrayExport.VERSION) {
+				throw new IOException("Not a matrix of ArrayExport: " + csr);
+			}
+			if (header.getInt(8) != 4 || header.getInt(12) != ArrayExport.BY_VALUE) {
+				throw new IOException("Rows of " + csr + " are not sorted by similarity, build it with -build");
+			}
+			long numRows = header.getLong(16);
+			long numEntries = header.getLong(32);
+			if (nodeNames != null && nodeNames.length != numRows) {
+				throw new IOException(dictionary + " has " + nodeNames.length + " names for " + numRows + " rows");
+			}
+
+			long[] offsets = new long[(int) numRows + 1];
+			map(channel, ArrayExport.HEADER_BYTES, 8 * offsets.length).asLongBuffer().get(offsets);
+			long indicesStart = ArrayExport.HEADER_BYTES + 8 * offsets.length;
+			long dataStart = (indicesStart + 4 * numEntries + 7) & ~7L;
+			return new SimilarityStore(file, offsets, mapChunks(channel, indicesStart, numEntries),
+					mapChunks(channel, dataStart, numEntries), nodeNames);
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	private static MappedByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("Too large to map: " + size + " bytes");
+		}
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		return buffer;
+	}
+
+	/**
+	 * Maps an array of 4-byte entries.
+	 */
+	private static MappedByteBuffer[] mapChunks(FileChannel channel, long start, long numEntries) throws IOException {
+
+		MappedByteBuffer[] chunks = new MappedByteBuffer[(int) ((numEntries + CHUNK_MASK) >>> CHUNK_BITS)];
+		for (int c = 0; c < chunks.length; c++) {
+			long first = (long) c << CHUNK_BITS;
+			chunks[c] = map(channel, start + 4 * first, 4 * Math.min(CHUNK_MASK + 1, numEntries - first));
+		}
+		return chunks;
+	}
+
+	private static String[] readNames(File dictionary) throws IOException {
+
+		RandomAccessFile file = new RandomAccessFile(dictionary, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			ByteBuffer header = map(channel, 0, ArrayExport.HEADER_BYTES);
+			if (header.getInt(0) != ArrayExport.DICTIONARY_MAGIC || header.getInt(4) != ArrayExport.VERSION) {
+				throw new IOException("Not a dictionary of ArrayExport: " + dictionary);
+			}
+			int size = (int) header.getLong(16);
+			long[] offsets = new long[size + 1];
+			map(channel, ArrayExport.HEADER_BYTES, 8 * offsets.length).asLongBuffer().get(offsets);
+			byte[] bytes = new byte[(int) header.getLong(24)];
+			map(channel, ArrayExport.HEADER_BYTES + 8 * offsets.length, bytes.length).get(bytes);
+			String[] names = new String[size];
+			for (int i = 0; i < size; i++) {
+				names[i] = new String(bytes, (int) offsets[i], (int) (offsets[i + 1] - offsets[i]), Charsets.UTF_8);
+			}
+			return names;
+		} finally {
+			file.close();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+
+		file.close();
+	}
+
+	public int numNodes() {
+
+		return offsets.length - 1;
+	}
+
+	/**
+	 * @return the node of a pair, or -1 if it isn't in the store
+	 */
+	public int node(String name) {
+
+		Integer node = ids.get(name);
+		return node == null ? -1 : node;
+	}
+
+	/**
+	 * @return the name of a node, or its 1-based id if nodes have no names
+	 */
+	public String name(int node) {
+
+		return nodeNames == null || nodeNames[node] == null ? String.valueOf(node + 1) : nodeNames[node];
+	}
+
+	public int degree(int node) {
+
+		return (int) (offsets[node + 1] - offsets[node]);
+	}
+
+	/**
+	 * @return the number of neighbours written to nodes and similarities, most similar first
+	 */
+	public int neighbours(int node, int[] nodes, float[] similarities) {
+
+		int count = Math.min(degree(node), nodes.length);
+		long first = offsets[node];
+		for (int i = 0; i < count; i++) {
+			nodes[i] = target(first + i);
+			similarities[i] = similarity(first + i);
+		}
+		return count;
+	}
+
+	/**
+	 * @return the n most similar pairs, empty if the pair isn't in the store
+	 */
+	public List<Neighbour> topN(String name, int n) {
+
+		Preconditions.checkArgument(n >= 0, "Negative number of neighbours: %s", n);
+		int node = node(name);
+		if (node < 0) {
+			return Lists.newArrayList();
+		}
+		int[] nodes = new int[Math.min(n, degree(node))];
+		float[] values = new float[nodes.length];
+		int count = neighbours(node, nodes, values);
+		List<Neighbour> top = Lists.newArrayListWithCapacity(count);
+		for (int i = 0; i < count; i++) {
+			top.add(new Neighbour(nodes[i], name(nodes[i]), values[i]));
+		}
+		return top;
+	}
+
+	/**
+	 * @return the similarity of two nodes, 1 for a node and itself, and 0 for nodes
+	 * that don't share a feature
+	 */
+	public float similarity(int a, int b) {
+
+		if (a == b) {
+			return 1;
+		}
+		// scan the shorter row
+		if (degree(a) > degree(b)) {
+			int swap = a;
+			a = b;
+			b = swap;
+		}
+		for (long entry = offsets[a]; entry < offsets[a + 1]; entry++) {
+			if (target(entry) == b) {
+				return similarity(entry);
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @return the similarity of two pairs, or NaN if either isn't in the store
+	 */
+	public float similarity(String a, String b) {
+
+		int nodeA = node(a);
+		int nodeB = node(b);
+		return nodeA < 0 || nodeB < 0 ? Float.NaN : similarity(nodeA, nodeB);
+	}
+
+	private int target(long entry) {
+
+		return targets[(int) (entry >>> CHUNK_BITS)].getInt((int) (entry & CHUNK_MASK) * 4);
+	}
+
+	private float similarity(long entry) {
+
+		return similarities[(int) (entry >>> CHUNK_BITS)].getFloat((int) (entry & CHUNK_MASK) * 4);
+	}
+
+	void writeNeighbours(String name, int n, Writer out) throws IOException {
+
+		for (Neighbour neighbour : topN(name, n)) {
+			out.write(neighbour.name + "\t" + neighbour.similarity + "\n");
+		}
+	}
+
+	/**
+	 * Answers GET /neighbours?name=..&amp;n=.. with "name \t similarity" lines and
+	 * GET /similarity?a=..&amp;b=.. with a single similarity; 404 for unknown pairs,
+	 * 400 for missing parameters or an n that is no number &gt;= 0.
+	 *
+	 * @param host the address to listen on, eg. localhost or 0.0.0.0 for all interfaces
+	 */
+	public static HttpServer serve(final SimilarityStore store, String host, int port, int threads) throws IOException {
+
+		HttpServer server = HttpServer.create(new InetSocketAddress(host, port), 0);
+		server.createContext("/neighbours", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				Map<String, String> params = parameters(exchange);
+				String name = params.get("name");
+				if (name == null) {
+					respond(exchange, 400, "Missing parameter: name\n");
+				} else if (store.node(name) < 0) {
+					respond(exchange, 404, "Unknown pair: " + name + "\n");
+				} else {
+					int n;
+					try {
+						n = params.containsKey("n") ? Integer.parseInt(params.get("n")) : 10;
+					} catch (NumberFormatException e) {
+						respond(exchange, 400, "Not a number: " + params.get("n") + "\n");
+						return;
+					}
+					if (n < 0) {
+						respond(exchange, 400, "Negative number of neighbours: " + n + "\n");
+						return;
+					}
+					StringBuilder body = new StringBuilder();
+					for (Neighbour neighbour : store.topN(name, n)) {
+						body.append(neighbour.name).append('\t').append(neighbour.similarity).append('\n');
+					}
+					respond(exchange, 200, body.toString());
+				}
+			}
+		});
+		server.createContext("/similarity", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				Map<String, String> params = parameters(exchange);
+				String a = params.get("a");
+				String b = params.get("b");
+				if (a == null || b == null) {
+					respond(exchange, 400, "Missing parameter: a or b\n");
+				} else {
+					float similarity = store.similarity(a, b);
+					if (Float.isNaN(similarity)) {
+						respond(exchange, 404, "Unknown pair: " + (store.node(a) < 0 ? a : b) + "\n");
+					} else {
+						respond(exchange, 200, similarity + "\n");
+					}
+				}
+			}
+		});
+		server.setExecutor(Executors.newFixedThreadPool(threads));
+		server.start();
+		log.info("Serving " + store.numNodes() + " pairs on " + host + ":" + port);
+		return server;
+	}
+
+	private static Map<String, String> parameters(HttpExchange exchange) throws UnsupportedEncodingException {
+
+		Map<String, String> params = Maps.newHashMap();
+		String query = exchange.getRequestURI().getRawQuery();
+		if (query == null) {
+			return params;
+		}
+		for (String param : query.split("&")) {
+			int equals = param.indexOf('=');
+			if (equals > 0) {
+				params.put(URLDecoder.decode(param.substring(0, equals), "UTF-8"),
+						URLDecoder.decode(param.substring(equals + 1), "UTF-8"));
+			}
+		}
+		return params;
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+
+		byte[] bytes = body.getBytes(Charsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		try {
+			out.write(bytes);
+		} finally {
+			out.close();
+		}
+	}
+}
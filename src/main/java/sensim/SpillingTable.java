@@ -0,0 +1,225 @@
+package sensim;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Sums up values per string key, like a GROUP BY key followed by SUM, for
+ * {@link LocalPipelineRunner}. The sums are kept in memory until there are
+ * too many keys, then spilled to a local file as a sorted, binary run.
+ * Iterating merges all runs into one stream of entries sorted by key.
+ * <p/>
+ * Not thread-safe; feed it from a single thread.
+ */
+public class SpillingTable implements Iterable<SpillingTable.Entry>, Closeable {
+
+	public static final class Entry {
+
+		private final String key;
+		private final double value;
+
+		Entry(String key, double value) {
+
+			this.key = key;
+			this.value = value;
+		}
+
+		public String getKey() {
+
+			return key;
+		}
+
+		public double getValue() {
+
+			return value;
+		}
+	}
+
+	private final File tmpDir;
+	private final int maxKeysInMemory;
+
+	private Map<String, double[]> sums = Maps.newHashMap();
+	private final List<File> runs = Lists.newArrayList();
+
+	public SpillingTable(File tmpDir, int maxKeysInMemory) {
+
+		this.tmpDir = tmpDir;
+		this.maxKeysInMemory = maxKeysInMemory;
+	}
+
+	public void add(String key, double value) throws IOException {
+
+		double[] sum = sums.get(key);
+		if (sum != null) {
+			sum[0] += value;
+			return;
+		}
+		sums.put(key, new double[]{value});
+		if (sums.size() >= maxKeysInMemory) {
+			spill();
+		}
+	}
+
+	private void spill() throws IOException {
+
+		if (sums.isEmpty()) {
+			return;
+		}
+		List<String> keys = Lists.newArrayList(sums.keySet());
+		Collections.sort(keys);
+
+		File run = File.createTempFile("run-", ".bin", tmpDir);
+		run.deleteOnExit();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 1 << 16));
+		try {
+			for (String key : keys) {
+				byte[] bytes = key.getBytes(Charsets.UTF_8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+				out.writeDouble(sums.get(key)[0]);
+			}
+		} finally {
+			out.close();
+		}
+		runs.add(run);
+		sums.clear();
+	}
+
+	/**
+	 * Can be called repeatedly, but adding entries while iterating isn't supported.
+	 */
+	@Override
+	public Iterator<Entry> iterator() {
+
+		if (runs.isEmpty()) {
+			// everything fits into memory
+			List<String> keys = Lists.newArrayList(sums.keySet());
+			Collections.sort(keys);
+			final Iterator<String> it = keys.iterator();
+			return new AbstractIterator<Entry>() {
+				@Override
+				protected Entry computeNext() {
+					if (!it.hasNext()) {
+						return endOfData();
+					}
+					String key = it.next();
+					return new Entry(key, sums.get(key)[0]);
+				}
+			};
+		}
+
+		final PriorityQueue<RunReader> readers = new PriorityQueue<RunReader>(runs.size() + 1,
+				new Comparator<RunReader>() {
+					@Override
+					public int compare(RunReader a, RunReader b) {
+						return a.key.compareTo(b.key);
+					}
+				});
+		try {
+			spill();
+			for (File run : runs) {
+				RunReader reader = new RunReader(run);
+				if (reader.next()) {
+					readers.add(reader);
+				}
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+
+		// merge the runs, summing up the values of keys that were spilled more than once
+		return new AbstractIterator<Entry>() {
+			@Override
+			protected Entry computeNext() {
+				if (readers.isEmpty()) {
+					return endOfData();
+				}
+				try {
+					RunReader reader = readers.poll();
+					String key = reader.key;
+					double value = reader.value;
+					advance(reader);
+					while (!readers.isEmpty() && readers.peek().key.equals(key)) {
+						reader = readers.poll();
+						value += reader.value;
+						advance(reader);
+					}
+					return new Entry(key, value);
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+
+			private void advance(RunReader reader) throws IOException {
+				if (reader.next()) {
+					readers.add(reader);
+				} else {
+					reader.close();
+				}
+			}
+		};
+	}
+
+	@Override
+	public void close() {
+
+		sums.clear();
+		for (File run : runs) {
+			run.delete();
+		}
+		runs.clear();
+	}
+
+	private static final class RunReader implements Closeable {
+
+		private final DataInputStream in;
+		private String key;
+		private double value;
+
+		RunReader(File run) throws IOException {
+
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), 1 << 16));
+		}
+
+		boolean next() throws IOException {
+
+			int length;
+			try {
+				length = in.readInt();
+			} catch (EOFException e) {
+				close();
+				return false;
+			}
+			byte[] bytes = new byte[length];
+			in.readFully(bytes);
+			key = new String(bytes, Charsets.UTF_8);
+			value = in.readDouble();
+			return true;
+		}
+
+		@Override
+		public void close() throws IOException {
+
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package sensim;
+
+import org.apache.pig.EvalFunc;
+import org.apache.pig.builtin.OutputSchema;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.Tuple;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Assigns unique, gap-free numeric ids ( starting at 1, like RANK ) to the lines
+ * loaded by {@link LinePositionStorage}, in the mappers: the id of a line is the
+ * number of lines in all smaller splits ( the prefix offset ) plus its position
+ * in its own split. The lines per split are counted by an algebraic pass over the
+ * split names alone, a tiny relation that Pig hands to every task as a scalar:
+ *
+ * <pre>
+ * splits = FOREACH lines GENERATE split ;
+ * sizes = FOREACH ( GROUP splits BY split ) GENERATE group as split, COUNT( splits ) as size ;
+ * offsets = FOREACH ( GROUP sizes ALL ) GENERATE sizes ;
+ * numbered = FOREACH lines GENERATE SplitOffsetId( split, position, offsets.sizes ) as id, line ;
+ * </pre>
+ *
+ * As with RANK, the ids follow the order of the lines in the input, so they are
+ * the same on every run over the same files.
+ */
+@OutputSchema("id:long")
+public class SplitOffsetId extends EvalFunc<Long> {
+
+	// the sizes are a scalar, ie. the same bag for every call within a task
+	private DataBag cachedSizes;
+	private Map<String, Long> offsets;
+
+	@Override
+	public Long exec(Tuple input) throws IOException {
+
+		if (input == null || input.size() < 3 || input.get(0) == null || input.get(1) == null
+				|| input.get(2) == null) {
+			return null;
+		}
+
+		String split = (String) input.get(0);
+		long position = ((Number) input.get(1)).longValue();
+		DataBag sizes = (DataBag) input.get(2);
+
+		if (sizes != cachedSizes) {
+			offsets = prefixOffsets(sizes);
+			cachedSizes = sizes;
+		}
+		Long offset = offsets.get(split);
+		if (offset == null) {
+			throw new IOException("No size recorded for split " + split);
+		}
+		return offset + position + 1;
+	}
+
+	private static Map<String, Long> prefixOffsets(DataBag sizes) throws IOException {
+
+		SortedMap<String, Long> splitSizes = new TreeMap<String, Long>();
+		for (Tuple t : sizes) {
+			splitSizes.put((String) t.get(0), ((Number) t.get(1)).longValue());
+		}
+		Map<String, Long> offsets = new TreeMap<String, Long>();
+		long offset = 0;
+		for (Map.Entry<String, Long> split : splitSizes.entrySet()) {
+			offsets.put(split.getKey(), offset);
+			offset += split.getValue();
+		}
+		return offsets;
+	}
+}
@@ -0,0 +1,173 @@
+package sensim;
+
+import org.apache.pig.EvalFunc;
+import org.apache.pig.builtin.OutputSchema;
+import org.apache.pig.data.BagFactory;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Computes the cosine distances of all pairs of vectors of two tiles, in
+ * memory, for compute_distance_matrix_tiled.pig. Takes ( ti, tj, bag of
+ * ( tile, key, vector )) with the vectors encoded by {@link EncodeVector}, as
+ * grouped by the keys of {@link TileKeys}, and returns ( row, column, distance )
+ * with row &gt;= column, the diagonal included, like compute_distance_matrix.pig.
+ * <p/>
+ * The vectors of tile tj are indexed by feature, so only pairs that share a
+ * feature are looked at, and a frequent feature costs the product of its
+ * frequencies within the two tiles, not within all vectors. Pairs with
+ * distance 1 are skipped.
+ */
+@OutputSchema("distances:bag{t:tuple(row:int, column:int, distance:double)}")
+public class TileDistances extends EvalFunc<DataBag> {
+
+	private BagFactory bagFactory = BagFactory.getInstance();
+	private TupleFactory tupleFactory = TupleFactory.getInstance();
+
+	@Override
+	public DataBag exec(Tuple input) throws IOException {
+
+		if (input == null || input.size() < 3 || input.get(0) == null || input.get(1) == null
+				|| input.get(2) == null) {
+			return null;
+		}
+
+		int rowTile = ((Number) input.get(0)).intValue();
+		int columnTile = ((Number) input.get(1)).intValue();
+		Block rows = new Block();
+		Block columns = rowTile == columnTile ? rows : new Block();
+		for (Tuple t : (DataBag) input.get(2)) {
+			if (t.get(0) == null || t.get(1) == null || t.get(2) == null) {
+				continue;
+			}
+			int tile = ((Number) t.get(0)).intValue();
+			Block block = tile == rowTile ? rows : tile == columnTile ? columns : null;
+			if (block != null) {
+				block.add(((Number) t.get(1)).intValue(), ((DataByteArray) t.get(2)).get());
+			}
+		}
+		columns.index();
+
+		DataBag result = bagFactory.newDefaultBag();
+		double[] dots = new double[columns.size];
+		boolean[] touched = new boolean[columns.size];
+		int[] candidates = new int[columns.size];
+		for (int row = 0; row < rows.size; row++) {
+			int numCandidates = 0;
+			VectorCodec.SparseVector vector = rows.vectors[row];
+			for (int k = 0; k < vector.size; k++) {
+				int f = Arrays.binarySearch(columns.features, vector.indices[k]);
+				if (f < 0) {
+					continue;
+				}
+				for (int p = columns.featureStarts[f]; p < columns.featureStarts[f + 1]; p++) {
+					int col = columns.postingVectors[p];
+					if (rows == columns && col > row) {
+						// within a tile only the lower triangle; postings are ascending
+						break;
+					}
+					if (!touched[col]) {
+						touched[col] = true;
+						candidates[numCandidates++] = col;
+					}
+					dots[col] += vector.values[k] * columns.postingValues[p];
+				}
+			}
+			for (int c = 0; c < numCandidates; c++) {
+				int col = candidates[c];
+				double distance = LocalDistanceMatrix.cosineDistance(dots[col], rows.norms[row], columns.norms[col]);
+				if (distance != 1.0) {
+					// the larger id is the row, as in the lower triangle of the joined pairs
+					int rowKey = rows.keys[row];
+					int colKey = columns.keys[col];
+					Tuple t = tupleFactory.newTuple(3);
+					t.set(0, Math.max(rowKey, colKey));
+					t.set(1, Math.min(rowKey, colKey));
+					t.set(2, distance);
+					result.add(t);
+				}
+				dots[col] = 0;
+				touched[col] = false;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * The decoded vectors of a tile, and for the column side the postings:
+	 * the postings of features[f] are featureStarts[f] .. featureStarts[f + 1] - 1,
+	 * the vectors it occurs in with its value, ascending by vector.
+	 */
+	private static final class Block {
+
+		int size;
+		int[] keys = new int[16];
+		VectorCodec.SparseVector[] vectors = new VectorCodec.SparseVector[16];
+		double[] norms = new double[16];
+
+		int[] features;
+		int[] featureStarts;
+		int[] postingVectors;
+		double[] postingValues;
+
+		void add(int key, byte[] bytes) throws IOException {
+
+			if (size == keys.length) {
+				keys = Arrays.copyOf(keys, 2 * size);
+				vectors = Arrays.copyOf(vectors, 2 * size);
+				norms = Arrays.copyOf(norms, 2 * size);
+			}
+			keys[size] = key;
+			vectors[size] = VectorCodec.decode(bytes);
+			norms[size] = vectors[size].norm();
+			size++;
+		}
+
+		void index() {
+
+			int numEntries = 0;
+			for (int v = 0; v < size; v++) {
+				numEntries += vectors[v].size;
+			}
+			// feature in the upper half, entry number in the lower, so sorting groups by feature
+			long[] entries = new long[numEntries];
+			double[] values = new double[numEntries];
+			int[] owners = new int[numEntries];
+			int e = 0;
+			for (int v = 0; v < size; v++) {
+				VectorCodec.SparseVector vector = vectors[v];
+				for (int k = 0; k < vector.size; k++) {
+					entries[e] = ((long) vector.indices[k] << 32) | e;
+					values[e] = vector.values[k];
+					owners[e] = v;
+					e++;
+				}
+			}
+			Arrays.sort(entries);
+
+			postingVectors = new int[numEntries];
+			postingValues = new double[numEntries];
+			int[] distinct = new int[numEntries];
+			int[] starts = new int[numEntries + 1];
+			int numFeatures = 0;
+			for (int i = 0; i < numEntries; i++) {
+				int feature = (int) (entries[i] >> 32);
+				int entry = (int) entries[i];
+				if (numFeatures == 0 || distinct[numFeatures - 1] != feature) {
+					distinct[numFeatures] = feature;
+					starts[numFeatures++] = i;
+				}
+				postingVectors[i] = owners[entry];
+				postingValues[i] = values[entry];
+			}
+			starts[numFeatures] = numEntries;
+			features = Arrays.copyOf(distinct, numFeatures);
+			featureStarts = Arrays.copyOf(starts, numFeatures + 1);
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package sensim;
+
+import org.apache.pig.EvalFunc;
+import org.apache.pig.builtin.OutputSchema;
+import org.apache.pig.data.BagFactory;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+
+import java.io.IOException;
+
+/**
+ * Assigns a vector to the tile pairs it takes part in, for
+ * compute_distance_matrix_tiled.pig. The vectors are split into numTiles tiles
+ * by id, and every pair of tiles ( ti &lt;= tj ) is computed by one task, so a
+ * vector is sent to numTiles tasks: ( tile, u ) or ( u, tile ) for every tile u.
+ *
+ * <pre>
+ * tiled = FOREACH vectors GENERATE FLATTEN( TileKeys( key, plan.numTiles )), key, vector ;
+ * </pre>
+ *
+ * A null number of tiles, eg. of a plan over an empty sample, means one tile.
+ */
+@OutputSchema("tiles:bag{t:tuple(ti:int, tj:int, tile:int)}")
+public class TileKeys extends EvalFunc<DataBag> {
+
+	private BagFactory bagFactory = BagFactory.getInstance();
+	private TupleFactory tupleFactory = TupleFactory.getInstance();
+
+	@Override
+	public DataBag exec(Tuple input) throws IOException {
+
+		if (input == null || input.size() == 0 || input.get(0) == null) {
+			return null;
+		}
+
+		int numTiles = 1;
+		if (input.size() > 1 && input.get(1) != null) {
+			numTiles = Math.max(1, ((Number) input.get(1)).intValue());
+		}
+		int tile = tile(((Number) input.get(0)).longValue(), numTiles);
+
+		DataBag result = bagFactory.newDefaultBag();
+		for (int u = 0; u < numTiles; u++) {
+			Tuple t = tupleFactory.newTuple(3);
+			t.set(0, Math.min(tile, u));
+			t.set(1, Math.max(tile, u));
+			t.set(2, tile);
+			result.add(t);
+		}
+		return result;
+	}
+
+	static int tile(long id, int numTiles) {
+
+		// ids are dense, so consecutive ids spread evenly over the tiles
+		return (int) (((id % numTiles) + numTiles) % numTiles);
+	}
+}
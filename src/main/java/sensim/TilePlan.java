@@ -0,0 +1,71 @@
+package sensim;
+
+import org.apache.pig.EvalFunc;
+import org.apache.pig.builtin.OutputSchema;
+import org.apache.pig.data.Tuple;
+
+import java.io.IOException;
+
+/**
+ * Picks the number of tiles for compute_distance_matrix_tiled.pig from the
+ * document frequencies of the features in a sample of the vectors.
+ * <p/>
+ * Computing all pairs costs about sum( df * df ) / 2 multiply-adds, df being the
+ * number of vectors a feature occurs in. With T tiles a task of two different
+ * tiles compares each of the df / T vectors of a feature in one tile with each of
+ * those in the other, ie. about df^2 / T^2 multiply-adds per feature, hubs
+ * included ( a diagonal task does half that ), so T = sqrt( sum( df * df ) /
+ * targetCost ) bounds the work per task. The tiles also have to
+ * fit into memory: a task holds two tiles, 2 / T of all entries, which gives
+ * a second lower bound from maxEntries.
+ * <p/>
+ * Takes ( sum( df_s * df_s ), sum( df_s )) of the sample, s. the macro; the
+ * arguments are the sampling rate, the target cost per task and the maximal
+ * number of vector entries per task.
+ */
+@OutputSchema("numTiles:int")
+public class TilePlan extends EvalFunc<Integer> {
+
+	// each vector is sent to numTiles tasks, more tiles only pay off up to here
+	static final int MAX_TILES = 1024;
+
+	private final double sampleRate;
+	private final double targetCost;
+	private final double maxEntries;
+
+	public TilePlan() {
+
+		this("0.01", "1e9", "1e7");
+	}
+
+	public TilePlan(String sampleRate, String targetCost, String maxEntries) {
+
+		this.sampleRate = Double.parseDouble(sampleRate);
+		this.targetCost = Double.parseDouble(targetCost);
+		this.maxEntries = Double.parseDouble(maxEntries);
+		if (this.sampleRate <= 0 || this.sampleRate > 1) {
+			throw new IllegalArgumentException("Sample rate must be in (0, 1]: " + sampleRate);
+		}
+	}
+
+	@Override
+	public Integer exec(Tuple input) throws IOException {
+
+		if (input == null || input.size() < 2 || input.get(0) == null || input.get(1) == null) {
+			return 1;
+		}
+		return numTiles(((Number) input.get(0)).doubleValue(), ((Number) input.get(1)).doubleValue());
+	}
+
+	int numTiles(double sampledSquares, double sampledEntries) {
+
+		double p = sampleRate;
+		// E[ df_s^2 ] = p^2 df^2 + p ( 1 - p ) df for a Bernoulli sample
+		double cost = Math.max(0, sampledSquares - (1 - p) * sampledEntries) / (p * p);
+		double entries = sampledEntries / p;
+
+		double tilesForCost = Math.ceil(Math.sqrt(cost / targetCost));
+		double tilesForMemory = Math.ceil(2 * entries / maxEntries);
+		return (int) Math.min(MAX_TILES, Math.max(1, Math.max(tilesForCost, tilesForMemory)));
+	}
+}
@@ -0,0 +1,471 @@
+package sensim;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.pig.data.BagFactory;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary encoding of Pig tuples for {@link BlockFile}s. Each value is a type
+ * tag followed by its data:
+ * <pre>
+ * int, long:        zig-zag varint
+ * float, double:    IEEE 754 bits ( 4 or 8 bytes ), doubles optionally as floats
+ * chararray:        varint byte length and UTF-8, or the varint id of an equal
+ *                   string earlier in the block ( short strings only )
+ * bytearray:        varint length and bytes
+ * tuple, bag, map:  varint size and the values ( map keys as chararrays )
+ * </pre>
+ * Within a bag, an int or long first field is stored as the difference to
+ * the first field of the previous tuple, so the sorted indices of a vector
+ * bag, eg. {(3,0.5),(17,1.2)}, take a byte or two each.
+ * <p/>
+ * The dictionary of strings lives as long as a block, an encoder and a decoder
+ * are reset at the same records.
+ */
+final class TupleCodec {
+
+	private static final TupleFactory tupleFactory = TupleFactory.getInstance();
+	private static final BagFactory bagFactory = BagFactory.getInstance();
+
+	static final byte NULL = 0;
+	static final byte FALSE = 1;
+	static final byte TRUE = 2;
+	static final byte INTEGER = 3;
+	static final byte LONG = 4;
+	static final byte FLOAT = 5;
+	static final byte DOUBLE = 6;
+	// a double, stored with float precision
+	static final byte DOUBLE_AS_FLOAT = 7;
+	static final byte STRING = 8;
+	static final byte STRING_ID = 9;
+	static final byte BYTES = 10;
+	static final byte TUPLE = 11;
+	static final byte BAG = 12;
+	static final byte MAP = 13;
+	// first fields of tuples in a bag, relative to the previous tuple
+	static final byte INTEGER_DELTA = 14;
+	static final byte LONG_DELTA = 15;
+
+	// longer strings ( eg. parses ) rarely repeat within a block
+	static final int MAX_DICTIONARY_LENGTH = 64;
+
+	private TupleCodec() {
+	}
+
+	static final class Encoder {
+
+		private final boolean floatPrecision;
+		private final Map<String, Integer> dictionary = Maps.newHashMap();
+		private byte[] buffer = new byte[1 << 16];
+		private int size = 0;
+
+		/**
+		 * @param floatPrecision whether to store doubles as floats
+		 */
+		Encoder(boolean floatPrecision) {
+
+			this.floatPrecision = floatPrecision;
+		}
+
+		/**
+		 * Forgets the records and the dictionary.
+		 */
+		void reset() {
+
+			size = 0;
+			dictionary.clear();
+		}
+
+		byte[] buffer() {
+
+			return buffer;
+		}
+
+		int size() {
+
+			return size;
+		}
+
+		void write(Tuple tuple) throws IOException {
+
+			writeTuple(tuple);
+		}
+
+		private void writeTuple(Tuple tuple) throws IOException {
+
+			writeVarLong(tuple.size());
+			for (int i = 0; i < tuple.size(); i++) {
+				writeValue(tuple.get(i));
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private void writeValue(Object value) throws IOException {
+
+			if (value == null) {
+				writeByte(NULL);
+			} else if (value instanceof String) {
+				writeString((String) value);
+			} else if (value instanceof Integer) {
+				writeByte(INTEGER);
+				writeVarLong(zigZag((Integer) value));
+			} else if (value instanceof Long) {
+				writeByte(LONG);
+				writeVarLong(zigZag((Long) value));
+			} else if (value instanceof Double) {
+				if (floatPrecision) {
+					writeByte(DOUBLE_AS_FLOAT);
+					writeInt(Float.floatToIntBits(((Double) value).floatValue()));
+				} else {
+					writeByte(DOUBLE);
+					writeLong(Double.doubleToLongBits((Double) value));
+				}
+			} else if (value instanceof Float) {
+				writeByte(FLOAT);
+				writeInt(Float.floatToIntBits((Float) value));
+			} else if (value instanceof Boolean) {
+				writeByte((Boolean) value ? TRUE : FALSE);
+			} else if (value instanceof Tuple) {
+				writeByte(TUPLE);
+				writeTuple((Tuple) value);
+			} else if (value instanceof DataBag) {
+				writeByte(BAG);
+				writeBag((DataBag) value);
+			} else if (value instanceof DataByteArray) {
+				byte[] bytes = ((DataByteArray) value).get();
+				writeByte(BYTES);
+				writeVarLong(bytes.length);
+				writeBytes(bytes, bytes.length);
+			} else if (value instanceof Map) {
+				Map<String, Object> map = (Map<String, Object>) value;
+				writeByte(MAP);
+				writeVarLong(map.size());
+				for (Map.Entry<String, Object> entry : map.entrySet()) {
+					writeString(entry.getKey());
+					writeValue(entry.getValue());
+				}
+			} else {
+				throw new IOException("Unsupported type: " + value.getClass().getName());
+			}
+		}
+
+		private void writeBag(DataBag bag) throws IOException {
+
+			writeVarLong(bag.size());
+			// type and value of the previous first field
+			byte previousType = NULL;
+			long previous = 0;
+			for (Tuple tuple : bag) {
+				if (tuple == null) {
+					writeByte(NULL);
+					previousType = NULL;
+					continue;
+				}
+				writeByte(TUPLE);
+				writeVarLong(tuple.size());
+				for (int i = 0; i < tuple.size(); i++) {
+					Object value = tuple.get(i);
+					if (i > 0) {
+						writeValue(value);
+					} else if (value instanceof Integer) {
+						int current = (Integer) value;
+						if (previousType == INTEGER) {
+							writeByte(INTEGER_DELTA);
+							writeVarLong(zigZag(current - previous));
+						} else {
+							writeValue(value);
+						}
+						previousType = INTEGER;
+						previous = current;
+					} else if (value instanceof Long) {
+						long current = (Long) value;
+						if (previousType == LONG) {
+							writeByte(LONG_DELTA);
+							writeVarLong(zigZag(current - previous));
+						} else {
+							writeValue(value);
+						}
+						previousType = LONG;
+						previous = current;
+					} else {
+						writeValue(value);
+						previousType = NULL;
+					}
+				}
+				if (tuple.size() == 0) {
+					previousType = NULL;
+				}
+			}
+		}
+
+		private void writeString(String value) {
+
+			if (value.length() <= MAX_DICTIONARY_LENGTH) {
+				Integer id = dictionary.get(value);
+				if (id != null) {
+					writeByte(STRING_ID);
+					writeVarLong(id);
+					return;
+				}
+				dictionary.put(value, dictionary.size());
+			}
+			byte[] bytes = value.getBytes(Charsets.UTF_8);
+			writeByte(STRING);
+			writeVarLong(bytes.length);
+			writeBytes(bytes, bytes.length);
+		}
+
+		private void writeByte(int b) {
+
+			ensure(1);
+			buffer[size++] = (byte) b;
+		}
+
+		private void writeBytes(byte[] bytes, int length) {
+
+			ensure(length);
+			System.arraycopy(bytes, 0, buffer, size, length);
+			size += length;
+		}
+
+		private void writeInt(int v) {
+
+			ensure(4);
+			buffer[size++] = (byte) (v >>> 24);
+			buffer[size++] = (byte) (v >>> 16);
+			buffer[size++] = (byte) (v >>> 8);
+			buffer[size++] = (byte) v;
+		}
+
+		private void writeLong(long v) {
+
+			writeInt((int) (v >>> 32));
+			writeInt((int) v);
+		}
+
+		private void writeVarLong(long v) {
+
+			ensure(10);
+			while ((v & ~0x7FL) != 0) {
+				buffer[size++] = (byte) ((v & 0x7F) | 0x80);
+				v >>>= 7;
+			}
+			buffer[size++] = (byte) v;
+		}
+
+		private void ensure(int length) {
+
+			if (size + length > buffer.length) {
+				buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + length));
+			}
+		}
+	}
+
+	static final class Decoder {
+
+		private final List<String> dictionary = Lists.newArrayList();
+		private byte[] buffer;
+		private int position;
+		private int limit;
+
+		/**
+		 * Decodes the records in buffer[0, limit), with an empty dictionary.
+		 */
+		void reset(byte[] buffer, int limit) {
+
+			this.buffer = buffer;
+			this.position = 0;
+			this.limit = limit;
+			dictionary.clear();
+		}
+
+		boolean hasNext() {
+
+			return position < limit;
+		}
+
+		Tuple next() throws IOException {
+
+			return readTuple();
+		}
+
+		private Tuple readTuple() throws IOException {
+
+			int size = (int) readVarLong();
+			Tuple tuple = tupleFactory.newTuple(size);
+			for (int i = 0; i < size; i++) {
+				tuple.set(i, readValue(readByte()));
+			}
+			return tuple;
+		}
+
+		private Object readValue(byte type) throws IOException {
+
+			switch (type) {
+				case NULL:
+					return null;
+				case FALSE:
+					return Boolean.FALSE;
+				case TRUE:
+					return Boolean.TRUE;
+				case INTEGER:
+					return (int) unZigZag(readVarLong());
+				case LONG:
+					return unZigZag(readVarLong());
+				case FLOAT:
+					return Float.intBitsToFloat(readInt());
+				case DOUBLE:
+					return Double.longBitsToDouble(readLong());
+				case DOUBLE_AS_FLOAT:
+					return (double) Float.intBitsToFloat(readInt());
+				case STRING:
+				case STRING_ID:
+					return readString(type);
+				case BYTES: {
+					int length = (int) readVarLong();
+					check(length);
+					DataByteArray bytes = new DataByteArray(Arrays.copyOfRange(buffer, position, position + length));
+					position += length;
+					return bytes;
+				}
+				case TUPLE:
+					return readTuple();
+				case BAG:
+					return readBag();
+				case MAP: {
+					int size = (int) readVarLong();
+					Map<String, Object> map = Maps.newHashMapWithExpectedSize(size);
+					for (int i = 0; i < size; i++) {
+						String key = readString(readByte());
+						map.put(key, readValue(readByte()));
+					}
+					return map;
+				}
+				default:
+					throw new IOException("Corrupt block, unknown type " + type);
+			}
+		}
+
+		private DataBag readBag() throws IOException {
+
+			long size = readVarLong();
+			List<Tuple> tuples = Lists.newArrayListWithCapacity((int) Math.min(size, 1 << 16));
+			long previous = 0;
+			for (long t = 0; t < size; t++) {
+				byte type = readByte();
+				if (type == NULL) {
+					tuples.add(null);
+					continue;
+				} else if (type != TUPLE) {
+					throw new IOException("Corrupt block, expected a tuple in a bag, found type " + type);
+				}
+				int tupleSize = (int) readVarLong();
+				Tuple tuple = tupleFactory.newTuple(tupleSize);
+				for (int i = 0; i < tupleSize; i++) {
+					byte fieldType = readByte();
+					if (i > 0) {
+						tuple.set(i, readValue(fieldType));
+					} else if (fieldType == INTEGER_DELTA) {
+						previous += unZigZag(readVarLong());
+						tuple.set(0, (int) previous);
+					} else if (fieldType == LONG_DELTA) {
+						previous += unZigZag(readVarLong());
+						tuple.set(0, previous);
+					} else {
+						Object value = readValue(fieldType);
+						if (value instanceof Integer) {
+							previous = (Integer) value;
+						} else if (value instanceof Long) {
+							previous = (Long) value;
+						}
+						tuple.set(0, value);
+					}
+				}
+				tuples.add(tuple);
+			}
+			return bagFactory.newDefaultBag(tuples);
+		}
+
+		private String readString(byte type) throws IOException {
+
+			if (type == STRING_ID) {
+				int id = (int) readVarLong();
+				if (id >= dictionary.size()) {
+					throw new IOException("Corrupt block, unknown string " + id);
+				}
+				return dictionary.get(id);
+			} else if (type != STRING) {
+				throw new IOException("Corrupt block, expected a string, found type " + type);
+			}
+			int length = (int) readVarLong();
+			check(length);
+			String value = new String(buffer, position, length, Charsets.UTF_8);
+			position += length;
+			if (value.length() <= MAX_DICTIONARY_LENGTH) {
+				dictionary.add(value);
+			}
+			return value;
+		}
+
+		private byte readByte() throws IOException {
+
+			check(1);
+			return buffer[position++];
+		}
+
+		private int readInt() throws IOException {
+
+			check(4);
+			int v = ((buffer[position] & 0xFF) << 24) | ((buffer[position + 1] & 0xFF) << 16)
+					| ((buffer[position + 2] & 0xFF) << 8) | (buffer[position + 3] & 0xFF);
+			position += 4;
+			return v;
+		}
+
+		private long readLong() throws IOException {
+
+			long high = readInt() & 0xFFFFFFFFL;
+			return (high << 32) | (readInt() & 0xFFFFFFFFL);
+		}
+
+		private long readVarLong() throws IOException {
+
+			long v = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				byte b = readByte();
+				v |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return v;
+				}
+			}
+			throw new IOException("Corrupt block, varint too long");
+		}
+
+		private void check(int length) throws IOException {
+
+			if (length < 0 || position + length > limit) {
+				throw new IOException("Corrupt block, record exceeds the block");
+			}
+		}
+	}
+
+	static long zigZag(long v) {
+
+		return (v << 1) ^ (v >> 63);
+	}
+
+	static long unZigZag(long v) {
+
+		return (v >>> 1) ^ -(v & 1);
+	}
+}
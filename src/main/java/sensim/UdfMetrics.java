@@ -0,0 +1,288 @@
+package sensim;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.util.UDFContext;
+import org.apache.pig.tools.pigstats.PigStatusReporter;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Instrumentation shared by the UDFs: rows in and out, errors by type, skipped
+ * rows by reason, a latency histogram, bytes allocated and the slowest rows.
+ * <p/>
+ * Counts are kept locally and published as Hadoop counters of the group
+ * "sensim.&lt;UDF&gt;" through the {@link PigStatusReporter} every FLUSH_INTERVAL
+ * rows and in {@link #finish()}, which the UDF calls from EvalFunc.finish().
+ * Then the summary of the task, including the slowest rows, goes to the task
+ * log and, if the job property sensim.metrics.dir is set ( eg. by
+ * "set sensim.metrics.dir '/tmp/metrics' ;" ), to &lt;dir&gt;/&lt;UDF&gt;-&lt;task id&gt;.tsv.
+ * <p/>
+ * Usage in exec: begin() first, then skip( reason ) or error( e ) where a row
+ * is dropped, and end( input, rows out ) in a finally block.
+ * <p/>
+ * One instance per UDF instance; not thread-safe, neither are the UDFs.
+ */
+public class UdfMetrics {
+
+	private static final Log log = LogFactory.getLog(UdfMetrics.class);
+
+	public static final String METRICS_DIR = "sensim.metrics.dir";
+
+	public static final String ROWS_IN = "ROWS_IN";
+	public static final String ROWS_OUT = "ROWS_OUT";
+	public static final String LATENCY_MICROS = "LATENCY_MICROS";
+	public static final String ALLOCATED_BYTES = "ALLOCATED_BYTES";
+
+	private static final int FLUSH_INTERVAL = 1000;
+	private static final int NUM_SLOWEST_ROWS = 10;
+	private static final int MAX_ROW_LENGTH = 256;
+
+	// decades from 10us to 10s; jobs are limited to 120 counters by default,
+	// so the histogram is coarse and only buckets that were hit become counters
+	private static final long[] LATENCY_BOUNDS = {10, 100, 1000, 10000, 100000, 1000000, 10000000};
+	private static final String[] LATENCY_BUCKETS = {
+			"LATENCY_LT_10US", "LATENCY_LT_100US", "LATENCY_LT_1MS", "LATENCY_LT_10MS",
+			"LATENCY_LT_100MS", "LATENCY_LT_1S", "LATENCY_LT_10S", "LATENCY_GE_10S"};
+
+	private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+	private final String udf;
+	private final String group;
+
+	// counter name -> { total, published }
+	private final Map<String, long[]> counts = Maps.newTreeMap();
+	private final PriorityQueue<SlowRow> slowestRows = new PriorityQueue<SlowRow>(NUM_SLOWEST_ROWS + 1);
+
+	private final boolean measureAllocation;
+	private long numRows = 0;
+	private long startNanos;
+	private long startBytes;
+
+	private static final class SlowRow implements Comparable<SlowRow> {
+
+		private final long micros;
+		private final long bytes;
+		private final String row;
+
+		SlowRow(long micros, long bytes, String row) {
+
+			this.micros = micros;
+			this.bytes = bytes;
+			this.row = row;
+		}
+
+		@Override
+		public int compareTo(SlowRow other) {
+
+			return micros < other.micros ? -1 : (micros == other.micros ? 0 : 1);
+		}
+	}
+
+	public UdfMetrics(Class<?> udf) {
+
+		this.udf = udf.getSimpleName();
+		this.group = "sensim." + this.udf;
+		this.measureAllocation = threads instanceof com.sun.management.ThreadMXBean
+				&& ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()
+				&& ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemoryEnabled();
+	}
+
+	/**
+	 * Starts the measurement of a row.
+	 */
+	public void begin() {
+
+		increment(ROWS_IN, 1);
+		startBytes = allocatedBytes();
+		startNanos = System.nanoTime();
+	}
+
+	/**
+	 * Counts a row that is dropped for the given reason, eg. FEWER_THAN_2_NOUNS.
+	 */
+	public void skip(String reason) {
+
+		increment("SKIPPED_" + reason, 1);
+	}
+
+	/**
+	 * Counts a row that is dropped because of the given exception.
+	 */
+	public void error(Throwable e) {
+
+		increment("ERROR_" + e.getClass().getSimpleName(), 1);
+	}
+
+	/**
+	 * Ends the measurement of the given row, which produced numRowsOut rows.
+	 */
+	public void end(Tuple input, long numRowsOut) {
+
+		long micros = (System.nanoTime() - startNanos) / 1000;
+		long bytes = measureAllocation ? allocatedBytes() - startBytes : 0;
+
+		increment(ROWS_OUT, numRowsOut);
+		increment(LATENCY_MICROS, micros);
+		increment(latencyBucket(micros), 1);
+		if (measureAllocation) {
+			increment(ALLOCATED_BYTES, bytes);
+		}
+
+		// only describe the row if it makes it into the sample
+		if (slowestRows.size() < NUM_SLOWEST_ROWS || micros > slowestRows.peek().micros) {
+			slowestRows.add(new SlowRow(micros, bytes, describe(input)));
+			if (slowestRows.size() > NUM_SLOWEST_ROWS) {
+				slowestRows.poll();
+			}
+		}
+
+		if (++numRows % FLUSH_INTERVAL == 0) {
+			flush();
+		}
+	}
+
+	/**
+	 * Publishes the remaining counts and writes the summary of this task.
+	 */
+	public void finish() {
+
+		flush();
+		if (numRows == 0) {
+			return;
+		}
+
+		String summary = summary();
+		log.info(summary);
+
+		Configuration conf = jobConf();
+		String dir = conf == null ? null : conf.get(METRICS_DIR);
+		if (dir == null) {
+			return;
+		}
+		String task = conf.get("mapred.task.id", String.valueOf(System.currentTimeMillis()));
+		Path file = new Path(dir, udf + "-" + task + ".tsv");
+		try {
+			FileSystem fs = file.getFileSystem(conf);
+			Writer out = new OutputStreamWriter(fs.create(file, true), Charsets.UTF_8);
+			try {
+				out.write(summary);
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			// metrics must not fail the task
+			log.warn("Can't write " + file, e);
+		}
+	}
+
+	/**
+	 * @return total count of the given counter in this task so far
+	 */
+	public long get(String counter) {
+
+		long[] count = counts.get(counter);
+		return count == null ? 0 : count[0];
+	}
+
+	/**
+	 * counter \t value, then: latency in us \t allocated bytes \t row, slowest first
+	 */
+	String summary() {
+
+		StringBuilder summary = new StringBuilder();
+		summary.append("# ").append(group).append('\n');
+		for (Map.Entry<String, long[]> count : counts.entrySet()) {
+			summary.append(count.getKey()).append('\t').append(count.getValue()[0]).append('\n');
+		}
+		summary.append("# slowest rows: latency in us, allocated bytes, row\n");
+		List<SlowRow> rows = new ArrayList<SlowRow>(slowestRows);
+		Collections.sort(rows, Collections.reverseOrder());
+		for (SlowRow row : rows) {
+			summary.append(row.micros).append('\t').append(row.bytes).append('\t').append(row.row).append('\n');
+		}
+		return summary.toString();
+	}
+
+	private void increment(String counter, long delta) {
+
+		long[] count = counts.get(counter);
+		if (count == null) {
+			count = new long[2];
+			counts.put(counter, count);
+		}
+		count[0] += delta;
+	}
+
+	private void flush() {
+
+		// there are no counters outside of Pig, eg. in LocalPipelineRunner
+		PigStatusReporter reporter = PigStatusReporter.getInstance();
+		if (reporter == null) {
+			return;
+		}
+		for (Map.Entry<String, long[]> count : counts.entrySet()) {
+			long[] value = count.getValue();
+			if (value[0] == value[1]) {
+				continue;
+			}
+			Counter counter = reporter.getCounter(group, count.getKey());
+			if (counter == null) {
+				return;
+			}
+			counter.increment(value[0] - value[1]);
+			value[1] = value[0];
+		}
+	}
+
+	private long allocatedBytes() {
+
+		return measureAllocation
+				? ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId())
+				: 0;
+	}
+
+	private static String latencyBucket(long micros) {
+
+		for (int i = 0; i < LATENCY_BOUNDS.length; i++) {
+			if (micros < LATENCY_BOUNDS[i]) {
+				return LATENCY_BUCKETS[i];
+			}
+		}
+		return LATENCY_BUCKETS[LATENCY_BUCKETS.length - 1];
+	}
+
+	private static String describe(Tuple input) {
+
+		if (input == null) {
+			return "null";
+		}
+		String row = input.toString();
+		if (row.length() > MAX_ROW_LENGTH) {
+			row = row.substring(0, MAX_ROW_LENGTH) + "...";
+		}
+		return row.replace('\t', ' ').replace('\n', ' ');
+	}
+
+	private static Configuration jobConf() {
+
+		UDFContext context = UDFContext.getUDFContext();
+		return context == null ? null : context.getJobConf();
+	}
+}
@@ -0,0 +1,169 @@
+package sensim;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.cas.TypeSystem;
+import org.apache.uima.fit.factory.FsIndexFactory;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.fit.factory.TypePrioritiesFactory;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.CasCreationUtils;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * JVM-wide registry of UIMA resources shared by the UDFs: the type system,
+ * a pool of JCas instances and pools of analysis engines.
+ * <p/>
+ * Pig creates several instances of a UDF per task ( and some more in the
+ * frontend ), and with JVM reuse many tasks run in the same JVM. Without the
+ * registry, each instance detects and builds the type system anew, and each
+ * CoreNLPAnnotator loads the tagger and parser models. With it, the type system
+ * is built once per JVM, and engines ( with their models ) as well as JCas
+ * instances that are released in EvalFunc.finish() are reused by the next
+ * instance, eg. in the next task.
+ * <p/>
+ * Neither JCas nor engines are thread-safe, so each is lent to one borrower at
+ * a time; the registry itself is thread-safe, eg. for LocalPipelineRunner.
+ */
+public final class UimaResources {
+
+	// released JCas beyond this are left to the garbage collector
+	private static final int MAX_POOLED_JCAS = 16;
+
+	private static volatile TypeSystem typeSystem;
+
+	private static final Queue<JCas> jCases = new ConcurrentLinkedQueue<JCas>();
+	private static final ConcurrentMap<String, Queue<Engine>> engines = new ConcurrentHashMap<String, Queue<Engine>>();
+
+	private UimaResources() {
+	}
+
+	/**
+	 * An analysis engine along with the JCas it processes.
+	 */
+	public static final class Engine {
+
+		private final AnalysisEngine engine;
+		private final JCas jCas;
+
+		Engine(AnalysisEngine engine) throws ResourceInitializationException {
+
+			this.engine = engine;
+			this.jCas = engine.newJCas();
+		}
+
+		public AnalysisEngine getEngine() {
+
+			return engine;
+		}
+
+		public JCas getJCas() {
+
+			return jCas;
+		}
+	}
+
+	/**
+	 * Creates engines of one kind, s. {@link #borrowEngine}.
+	 */
+	public interface EngineFactory {
+
+		AnalysisEngine newEngine() throws UIMAException;
+	}
+
+	/**
+	 * @return the type system of all types on the classpath, as detected by uimaFIT
+	 */
+	public static TypeSystem typeSystem() throws UIMAException {
+
+		TypeSystem result = typeSystem;
+		if (result == null) {
+			synchronized (UimaResources.class) {
+				result = typeSystem;
+				if (result == null) {
+					JCas jCas = JCasFactory.createJCas();
+					result = jCas.getTypeSystem();
+					typeSystem = result;
+					jCases.offer(jCas);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return an empty JCas of the shared type system, to be released when done
+	 */
+	public static JCas borrowJCas() throws UIMAException {
+
+		JCas jCas = jCases.poll();
+		if (jCas == null) {
+			jCas = newJCas(typeSystem());
+		}
+		return jCas;
+	}
+
+	/**
+	 * Creates a JCas like JCasFactory.createJCas() does, ie. with the detected type
+	 * priorities and indexes, but without detecting the type system once more.
+	 */
+	private static JCas newJCas(TypeSystem typeSystem) throws UIMAException {
+
+		return CasCreationUtils.createCas(typeSystem,
+				TypePrioritiesFactory.createTypePriorities(),
+				FsIndexFactory.createFsIndexCollection().getFsIndexes(), null).getJCas();
+	}
+
+	public static void release(JCas jCas) {
+
+		if (jCas == null) {
+			return;
+		}
+		jCas.reset();
+		if (jCases.size() < MAX_POOLED_JCAS) {
+			jCases.offer(jCas);
+		}
+	}
+
+	/**
+	 * @param key     identifies the kind of engine, including everything its
+	 *                configuration depends on, eg. language and model variants
+	 * @param factory creates a new engine if none of this kind is available
+	 * @return an engine of the given kind, to be released when done
+	 */
+	public static Engine borrowEngine(String key, EngineFactory factory) throws UIMAException {
+
+		Engine engine = pool(key).poll();
+		if (engine == null) {
+			engine = new Engine(factory.newEngine());
+		}
+		return engine;
+	}
+
+	public static void release(String key, Engine engine) {
+
+		if (engine == null) {
+			return;
+		}
+		engine.getJCas().reset();
+		pool(key).offer(engine);
+	}
+
+	private static Queue<Engine> pool(String key) {
+
+		Queue<Engine> pool = engines.get(key);
+		if (pool == null) {
+			Queue<Engine> newPool = new ConcurrentLinkedQueue<Engine>();
+			pool = engines.putIfAbsent(key, newPool);
+			if (pool == null) {
+				pool = newPool;
+			}
+		}
+		return pool;
+	}
+}
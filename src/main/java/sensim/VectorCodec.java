@@ -0,0 +1,365 @@
+package sensim;
+
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.Tuple;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Compact binary form of sparse vectors, eg. the LMI vectors of
+ * make_vectors_from_ctxs.pig or the count vectors of make_feature_vectors.pig:
+ * <pre>
+ * precision ( byte ), number of entries ( varint )
+ * indices:  ascending, the first as zig-zag varint, then the differences as varints
+ * scale:    the largest absolute value ( float, quantized precisions only )
+ * values:   as doubles, floats, or quantized to 16 or 8 bits relative to the scale
+ * </pre>
+ * Quantized values are off by at most scale / 65534 ( 16 bits ) or scale / 254
+ * ( 8 bits ), which barely moves a cosine, but a vector of 1000 contexts takes
+ * about 4KB at 16 bits instead of 10KB as doubles ( and some 20KB as text ).
+ * <p/>
+ * Vectors are decoded into the primitive arrays of a {@link SparseVector},
+ * which can be reused from vector to vector.
+ */
+public final class VectorCodec {
+
+	public enum Precision {
+
+		DOUBLE(8), FLOAT(4), SHORT(2), BYTE(1);
+
+		private final int bytes;
+
+		private Precision(int bytes) {
+
+			this.bytes = bytes;
+		}
+
+		/**
+		 * @param name 'double', 'float', '16' or '8'
+		 */
+		public static Precision of(String name) {
+
+			if ("double".equals(name)) {
+				return DOUBLE;
+			} else if ("float".equals(name)) {
+				return FLOAT;
+			} else if ("16".equals(name)) {
+				return SHORT;
+			} else if ("8".equals(name)) {
+				return BYTE;
+			}
+			throw new IllegalArgumentException("Unknown precision: " + name + ", expected double, float, 16 or 8");
+		}
+	}
+
+	/**
+	 * Entries [0, size) of a sparse vector, ascending by index.
+	 */
+	public static final class SparseVector {
+
+		public int size;
+		public int[] indices;
+		public double[] values;
+
+		public SparseVector() {
+
+			this(16);
+		}
+
+		public SparseVector(int capacity) {
+
+			indices = new int[capacity];
+			values = new double[capacity];
+		}
+
+		public void ensureCapacity(int capacity) {
+
+			if (indices.length < capacity) {
+				int length = Math.max(capacity, indices.length * 2);
+				indices = Arrays.copyOf(indices, length);
+				values = Arrays.copyOf(values, length);
+			}
+		}
+
+		public double norm() {
+
+			double sum = 0;
+			for (int k = 0; k < size; k++) {
+				sum += values[k] * values[k];
+			}
+			return Math.sqrt(sum);
+		}
+
+		public double dot(SparseVector other) {
+
+			double dot = 0;
+			int i = 0;
+			int j = 0;
+			while (i < size && j < other.size) {
+				if (indices[i] < other.indices[j]) {
+					i++;
+				} else if (indices[i] > other.indices[j]) {
+					j++;
+				} else {
+					dot += values[i++] * other.values[j++];
+				}
+			}
+			return dot;
+		}
+
+		/**
+		 * Sorts the entries by index, eg. after reading them from an unordered bag.
+		 */
+		void sort() {
+
+			for (int k = 1; k < size; k++) {
+				if (indices[k - 1] > indices[k]) {
+					long[] order = new long[size];
+					for (int e = 0; e < size; e++) {
+						// index in the upper half, position in the lower
+						order[e] = ((long) indices[e] << 32) | e;
+					}
+					Arrays.sort(order);
+					int[] sortedIndices = new int[indices.length];
+					double[] sortedValues = new double[values.length];
+					for (int e = 0; e < size; e++) {
+						sortedIndices[e] = (int) (order[e] >> 32);
+						sortedValues[e] = values[(int) order[e]];
+					}
+					indices = sortedIndices;
+					values = sortedValues;
+					return;
+				}
+			}
+		}
+	}
+
+	private VectorCodec() {
+	}
+
+	/**
+	 * Same as Mahout's CosineDistanceMeasure, s. {@link LocalDistanceMatrix#cosineDistance}.
+	 */
+	public static double cosineDistance(SparseVector a, SparseVector b) {
+
+		return LocalDistanceMatrix.cosineDistance(a.dot(b), a.norm(), b.norm());
+	}
+
+	/**
+	 * Reads a bag of ( index:int, value:number ) tuples, eg. {(3,0.5),(17,1.2)}.
+	 */
+	public static SparseVector fromBag(DataBag bag, SparseVector into) throws IOException {
+
+		into.size = 0;
+		into.ensureCapacity((int) bag.size());
+		for (Tuple entry : bag) {
+			if (entry == null || entry.get(0) == null || entry.get(1) == null) {
+				continue;
+			}
+			into.ensureCapacity(into.size + 1);
+			into.indices[into.size] = ((Number) entry.get(0)).intValue();
+			into.values[into.size] = ((Number) entry.get(1)).doubleValue();
+			into.size++;
+		}
+		into.sort();
+		return into;
+	}
+
+	public static byte[] encode(SparseVector vector, Precision precision) {
+
+		vector.sort();
+		int n = vector.size;
+		double scale = 0;
+		for (int k = 0; k < n; k++) {
+			scale = Math.max(scale, Math.abs(vector.values[k]));
+		}
+		// as stored, so encoder and decoder agree
+		float storedScale = (float) scale;
+
+		int length = 1 + varIntSize(n);
+		int previous = 0;
+		for (int k = 0; k < n; k++) {
+			length += k == 0 ? varIntSize(zigZag(vector.indices[0])) : varIntSize(vector.indices[k] - previous);
+			previous = vector.indices[k];
+		}
+		if (precision == Precision.SHORT || precision == Precision.BYTE) {
+			length += 4;
+		}
+		length += n * precision.bytes;
+
+		ByteBuffer out = ByteBuffer.allocate(length);
+		out.put((byte) precision.ordinal());
+		putVarInt(out, n);
+		for (int k = 0; k < n; k++) {
+			putVarInt(out, k == 0 ? zigZag(vector.indices[0]) : vector.indices[k] - vector.indices[k - 1]);
+		}
+		switch (precision) {
+			case DOUBLE:
+				for (int k = 0; k < n; k++) {
+					out.putDouble(vector.values[k]);
+				}
+				break;
+			case FLOAT:
+				for (int k = 0; k < n; k++) {
+					out.putFloat((float) vector.values[k]);
+				}
+				break;
+			case SHORT:
+				out.putFloat(storedScale);
+				for (int k = 0; k < n; k++) {
+					out.putShort((short) quantize(vector.values[k], storedScale, Short.MAX_VALUE));
+				}
+				break;
+			case BYTE:
+				out.putFloat(storedScale);
+				for (int k = 0; k < n; k++) {
+					out.put((byte) quantize(vector.values[k], storedScale, Byte.MAX_VALUE));
+				}
+				break;
+		}
+		return out.array();
+	}
+
+	/**
+	 * Checks the layout of the bytes without decoding any values, ie. whether
+	 * the precision is known and the indices take up exactly the bytes the
+	 * precision and the number of entries leave for them. Tells encoded vectors
+	 * apart from other bytes, eg. an untyped number read by PigStorage.
+	 */
+	public static boolean isEncoded(byte[] bytes) {
+
+		if (bytes == null || bytes.length < 2) {
+			return false;
+		}
+		int ordinal = bytes[0];
+		if (ordinal < 0 || ordinal >= Precision.values().length) {
+			return false;
+		}
+		Precision precision = Precision.values()[ordinal];
+		ByteBuffer in = ByteBuffer.wrap(bytes, 1, bytes.length - 1);
+		try {
+			int n = getVarInt(in);
+			if (n < 0) {
+				return false;
+			}
+			for (int k = 0; k < n; k++) {
+				getVarInt(in);
+			}
+			long rest = (long) n * precision.bytes;
+			if (precision == Precision.SHORT || precision == Precision.BYTE) {
+				rest += 4;
+			}
+			return in.remaining() == rest;
+		} catch (IOException e) {
+			return false;
+		} catch (RuntimeException e) {
+			// buffer underflows of truncated or foreign bytes
+			return false;
+		}
+	}
+
+	public static SparseVector decode(byte[] bytes) throws IOException {
+
+		return decode(bytes, new SparseVector(0));
+	}
+
+	public static SparseVector decode(byte[] bytes, SparseVector into) throws IOException {
+
+		try {
+			ByteBuffer in = ByteBuffer.wrap(bytes);
+			int ordinal = in.get();
+			if (ordinal < 0 || ordinal >= Precision.values().length) {
+				throw new IOException("Not an encoded vector, unknown precision " + ordinal);
+			}
+			Precision precision = Precision.values()[ordinal];
+			int n = getVarInt(in);
+			into.size = 0;
+			into.ensureCapacity(n);
+			int index = 0;
+			for (int k = 0; k < n; k++) {
+				index = k == 0 ? unZigZag(getVarInt(in)) : index + getVarInt(in);
+				into.indices[k] = index;
+			}
+			switch (precision) {
+				case DOUBLE:
+					for (int k = 0; k < n; k++) {
+						into.values[k] = in.getDouble();
+					}
+					break;
+				case FLOAT:
+					for (int k = 0; k < n; k++) {
+						into.values[k] = in.getFloat();
+					}
+					break;
+				case SHORT: {
+					double step = in.getFloat() / Short.MAX_VALUE;
+					for (int k = 0; k < n; k++) {
+						into.values[k] = in.getShort() * step;
+					}
+					break;
+				}
+				case BYTE: {
+					double step = in.getFloat() / Byte.MAX_VALUE;
+					for (int k = 0; k < n; k++) {
+						into.values[k] = in.get() * step;
+					}
+					break;
+				}
+			}
+			into.size = n;
+			return into;
+		} catch (RuntimeException e) {
+			// buffer underflows of truncated or foreign bytes
+			throw new IOException("Not an encoded vector", e);
+		}
+	}
+
+	private static int quantize(double value, float scale, int max) {
+
+		return scale == 0 ? 0 : (int) Math.round(value / scale * max);
+	}
+
+	private static int zigZag(int v) {
+
+		return (v << 1) ^ (v >> 31);
+	}
+
+	private static int unZigZag(int v) {
+
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+	private static int varIntSize(int v) {
+
+		int size = 1;
+		while ((v & ~0x7F) != 0) {
+			v >>>= 7;
+			size++;
+		}
+		return size;
+	}
+
+	private static void putVarInt(ByteBuffer out, int v) {
+
+		while ((v & ~0x7F) != 0) {
+			out.put((byte) ((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		out.put((byte) v);
+	}
+
+	private static int getVarInt(ByteBuffer in) throws IOException {
+
+		int v = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			byte b = in.get();
+			v |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return v;
+			}
+		}
+		throw new IOException("Not an encoded vector, varint too long");
+	}
+}
@@ -0,0 +1,201 @@
+package sensim;
+
+import com.google.common.collect.Lists;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One stage of {@link LocalPipelineRunner}: a fixed pool of workers which take
+ * items from a bounded input {@link Pipe} and put their results on the bounded
+ * input pipe of the next stage. Every worker gets its own {@link Worker}
+ * instance, since the UDFs wrapped by them keep per-instance state ( eg. a JCas )
+ * and aren't thread-safe.
+ * <p/>
+ * If a worker fails, both pipes of its stage are aborted, which makes the
+ * stages up- and downstream wind down as well; {@link #awaitAll} then rethrows
+ * the first failure.
+ */
+public class WorkerStage<I, O> {
+
+	public interface Worker<I, O> {
+
+		void process(I item, Pipe<O> out) throws Exception;
+	}
+
+	public interface WorkerFactory<I, O> {
+
+		Worker<I, O> newWorker() throws Exception;
+	}
+
+	private final String name;
+	private final ExecutorService executor;
+	private final List<Future<?>> futures = Lists.newArrayList();
+	private final AtomicLong numItems = new AtomicLong();
+
+	private WorkerStage(String name, int numWorkers) {
+
+		this.name = name;
+		this.executor = Executors.newFixedThreadPool(numWorkers);
+	}
+
+	public static <I, O> WorkerStage<I, O> start(String name, int numWorkers, final Pipe<I> in,
+			final Pipe<O> out, final WorkerFactory<I, O> factory) {
+
+		final WorkerStage<I, O> stage = new WorkerStage<I, O>(name, numWorkers);
+		final AtomicInteger running = new AtomicInteger(numWorkers);
+		for (int i = 0; i < numWorkers; i++) {
+			stage.futures.add(stage.executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					try {
+						Worker<I, O> worker = factory.newWorker();
+						I item;
+						while ((item = in.take()) != null) {
+							worker.process(item, out);
+							stage.numItems.incrementAndGet();
+						}
+					} catch (Exception e) {
+						in.abort();
+						out.abort();
+						throw e;
+					} finally {
+						// the last worker to finish signals the end of the stream
+						if (running.decrementAndGet() == 0) {
+							out.close();
+						}
+					}
+					return null;
+				}
+			}));
+		}
+		stage.executor.shutdown();
+		return stage;
+	}
+
+	public String getName() {
+
+		return name;
+	}
+
+	/**
+	 * @return the number of input items processed so far
+	 */
+	public long getNumItems() {
+
+		return numItems.get();
+	}
+
+	/**
+	 * Waits for all stages to finish and rethrows the first failure, if any.
+	 * Aborted pipes make the other stages fail, too, so the failure that caused
+	 * the abort is preferred over the ensuing cancellations.
+	 */
+	public static void awaitAll(List<? extends WorkerStage<?, ?>> stages) throws IOException {
+
+		Throwable failure = null;
+		String failedStage = null;
+		for (WorkerStage<?, ?> stage : stages) {
+			for (Future<?> future : stage.futures) {
+				try {
+					future.get();
+				} catch (InterruptedException e) {
+					for (WorkerStage<?, ?> s : stages) {
+						s.executor.shutdownNow();
+					}
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while waiting for stage " + stage.name, e);
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (failure == null || (failure instanceof CancellationException
+							&& !(cause instanceof CancellationException))) {
+						failure = cause;
+						failedStage = stage.name;
+					}
+				}
+			}
+		}
+		if (failure != null) {
+			throw new IOException("Stage " + failedStage + " failed", failure);
+		}
+	}
+
+	/**
+	 * A bounded queue between two stages, with an explicit end of stream.
+	 */
+	public static final class Pipe<T> {
+
+		private static final Object END = new Object();
+
+		private final BlockingQueue<Object> queue;
+		private volatile boolean aborted = false;
+
+		public Pipe(int capacity) {
+
+			this.queue = new ArrayBlockingQueue<Object>(capacity);
+		}
+
+		/**
+		 * Blocks while the pipe is full.
+		 *
+		 * @throws CancellationException if the pipe has been aborted
+		 */
+		public void put(T item) throws InterruptedException {
+
+			while (!queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+				if (aborted) {
+					throw new CancellationException("Pipe aborted");
+				}
+			}
+		}
+
+		/**
+		 * Signals that no more items will be put.
+		 */
+		public void close() throws InterruptedException {
+
+			while (!aborted && !queue.offer(END, 100, TimeUnit.MILLISECONDS)) {
+				// wait for space
+			}
+		}
+
+		/**
+		 * Blocks while the pipe is empty.
+		 *
+		 * @return the next item, or null at the end of the stream or if the pipe has been aborted
+		 */
+		@SuppressWarnings("unchecked")
+		public T take() throws InterruptedException {
+
+			Object item;
+			while ((item = queue.poll(100, TimeUnit.MILLISECONDS)) == null) {
+				if (aborted) {
+					return null;
+				}
+			}
+			if (item == END) {
+				// leave the end marker for the other consumers
+				queue.put(END);
+				return null;
+			}
+			return (T) item;
+		}
+
+		public void abort() {
+
+			aborted = true;
+			queue.clear();
+		}
+	}
+}
@@ -14,6 +14,12 @@ format options and MatrixMarket header if needed. Possible options so far are
 
 Required file(s): ctx_lmi.gz or sensim_lmi_l200.gz
 
+Note: sensim.ChineseWhispers clusters sensim_lmi_l200.gz ( -format pairs ) or the 
+distance matrix of the pipeline directly, without --matrix=cw and the CW binary.
+
+Note: for scikit-learn, sensim.ArrayExport writes the feature vectors and the
+similarities as CSR arrays that sensim_arrays.load_csr maps without parsing.
+
 where ctx_lmi.gz can be produced with the sensim pipeline[4] and sensim_lmi_l200.gz
 is the output of the JoBimText pipeline[5].
 
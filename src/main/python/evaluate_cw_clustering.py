@@ -19,6 +19,9 @@ Usage:
 	
 	where the second argument specifies the pruning used or whatever comes at 
 	the end of the files clustering and id_pair. 
+
+	To evaluate a sweep of clusterings at once ( B-Cubed, MUC, pairwise, CEAF ), 
+	use sensim.EvaluateClusterings -labels bless_nouns_clust.tsv clustering_*
 """
 
 from config import *
@@ -16,6 +16,14 @@ __author__ = 'priska'
 
 	Usage:
 	python predict_sat.py
+
+	To look up similarities of pairs instead of recomputing them from features, 
+	build a sensim.SimilarityStore from the distance matrix and query it over 
+	HTTP, or map dmatrix_store.csr with sensim_arrays.load_csr.
+
+	To compare similarity measures and pruning settings over the whole SAT set,
+	run sensim.SatScorer on test.tsv and the pair vectors ( vectors_lmi_flipped.gz ) 
+	instead; it writes the same predictions.tsv format and the loss of every setting.
 """
 
 from config import *
@@ -0,0 +1,155 @@
+from __future__ import division, print_function
+
+"""
+Map the matrices and dictionaries written by sensim.ArrayExport ( or
+sensim.LocalPipelineRunner -export ) into memory, without parsing them.
+
+The arrays are numpy.memmap views of the files, so only the pages that are
+touched get read, and several processes share them through the page cache.
+
+Usage:
+
+	from sensim_arrays import load_csr, load_dict, top_n
+
+	X = load_csr( 'export/vectors.csr' )		# scipy.sparse.csr_matrix
+	pairs = load_dict( 'export/vectors.rows.dict' )
+	print( pairs[ 0 ], X[ 0 ] )					# row i is the vector with id i + 1
+	row = pairs.index()[ 'dog:cat' ]
+	neighbours, similarities = top_n( load_csr( 'dmatrix_store.csr' ), row, 10 )
+
+	python sensim_arrays.py export/vectors.csr export/vectors.rows.dict
+"""
+
+import sys
+
+import numpy as np
+
+HEADER_BYTES = 64
+CSR_MAGIC = b'SCSR'
+DICT_MAGIC = b'SDCT'
+
+# row order: by column, or by value, descending ( sensim.SimilarityStore )
+BY_COLUMN = 0
+BY_VALUE = 1
+
+# magic, version, bytes per value, row order, rows, columns, entries
+HEADER = np.dtype([ ( 'magic', 'S4' ), ( 'version', '<i4' ), ( 'value_bytes', '<i4' ),
+	( 'order', '<i4' ), ( 'rows', '<i8' ), ( 'columns', '<i8' ), ( 'entries', '<i8' ) ])
+
+
+def read_header( path, magic ):
+
+	header = np.fromfile( path, dtype=HEADER, count=1 )[0]
+	if header[ 'magic' ] != magic:
+		raise ValueError( "%s is not a %s file" % ( path, magic.decode( 'ascii' )))
+	if header[ 'version' ] != 1:
+		raise ValueError( "%s has unsupported version %d" % ( path, header[ 'version' ]))
+	return header
+
+
+def load_csr_arrays( path ):
+	"""
+	Returns ( indptr, indices, data, shape ), the arrays as read-only memmaps.
+	"""
+	header = read_header( path, CSR_MAGIC )
+	rows, columns, entries = int( header[ 'rows' ]), int( header[ 'columns' ]), int( header[ 'entries' ])
+	value_type = '<f8' if header[ 'value_bytes' ] == 8 else '<f4'
+
+	indices_start = HEADER_BYTES + 8 * ( rows + 1 )
+	data_start = ( indices_start + 4 * entries + 7 ) // 8 * 8
+
+	indptr = np.memmap( path, dtype='<i8', mode='r', offset=HEADER_BYTES, shape=( rows + 1, ))
+	if entries == 0:
+		# memmap can't map zero bytes
+		indices = np.zeros( 0, dtype='<i4' )
+		data = np.zeros( 0, dtype=value_type )
+	else:
+		indices = np.memmap( path, dtype='<i4', mode='r', offset=indices_start, shape=( entries, ))
+		data = np.memmap( path, dtype=value_type, mode='r', offset=data_start, shape=( entries, ))
+	return indptr, indices, data, ( rows, columns )
+
+
+def load_csr( path ):
+	"""
+	Returns the matrix as scipy.sparse.csr_matrix on top of the memmaps.
+	Only indptr may be copied, if scipy picks 32-bit indices.
+	"""
+	from scipy.sparse import csr_matrix
+
+	indptr, indices, data, shape = load_csr_arrays( path )
+	X = csr_matrix(( data, indices, indptr ), shape=shape, copy=False )
+	X.has_sorted_indices = read_header( path, CSR_MAGIC )[ 'order' ] == BY_COLUMN
+	return X
+
+
+def top_n( X, row, n ):
+	"""
+	Returns the columns and values of the n largest entries of a row, largest
+	first, eg. the most similar pairs of a sensim.SimilarityStore matrix, whose
+	rows are sorted by value already.
+	"""
+	start, end = X.indptr[ row ], X.indptr[ row + 1 ]
+	columns, values = X.indices[ start:end ], X.data[ start:end ]
+	if X.has_sorted_indices:
+		order = np.argsort( -values, kind='mergesort' )[ :n ]
+		return columns[ order ], values[ order ]
+	return columns[ :n ], values[ :n ]
+
+
+class Dictionary( object ):
+	"""
+	Names by row, decoded on access.
+	"""
+
+	def __init__( self, path ):
+
+		header = read_header( path, DICT_MAGIC )
+		size, num_bytes = int( header[ 'rows' ]), int( header[ 'columns' ])
+		self.offsets = np.memmap( path, dtype='<i8', mode='r', offset=HEADER_BYTES, shape=( size + 1, ))
+		if num_bytes == 0:
+			self.names = np.zeros( 0, dtype=np.uint8 )
+		else:
+			self.names = np.memmap( path, dtype=np.uint8, mode='r',
+				offset=HEADER_BYTES + 8 * ( size + 1 ), shape=( num_bytes, ))
+		self._index = None
+
+	def __len__( self ):
+
+		return len( self.offsets ) - 1
+
+	def __getitem__( self, row ):
+
+		if row < 0:
+			row += len( self )
+		if not 0 <= row < len( self ):
+			raise IndexError( row )
+		return self.names[ self.offsets[ row ] : self.offsets[ row + 1 ]].tobytes().decode( 'utf-8' )
+
+	def __iter__( self ):
+
+		for row in range( len( self )):
+			yield self[ row ]
+
+	def index( self ):
+		"""
+		Returns a dict from name to row, built on first use.
+		"""
+		if self._index is None:
+			self._index = dict(( name, row ) for row, name in enumerate( self ) if name )
+		return self._index
+
+
+def load_dict( path ):
+
+	return Dictionary( path )
+
+
+if __name__ == "__main__":
+
+	# print the shape and the first rows of a matrix, with names if given
+	X = load_csr( sys.argv[1] )
+	names = load_dict( sys.argv[2] ) if len( sys.argv ) > 2 else None
+	print( "%d x %d, %d entries" % ( X.shape[0], X.shape[1], X.nnz ))
+	for row in range( min( 5, X.shape[0] )):
+		name = names[ row ] if names is not None else row + 1
+		print( "%s\t%s" % ( name, X[ row ].nnz ))